@@ -27,7 +27,6 @@ import alfio.manager.system.AdminJobManager;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.user.UserManager;
 import alfio.repository.system.AdminJobQueueRepository;
-import alfio.repository.system.ConfigurationRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.util.CustomResourceBundleMessageSource;
 import alfio.util.Json;
@@ -153,7 +152,7 @@ public class DataSourceConfiguration {
      }
 
     @Bean
-    public MessageSourceManager messageSourceManager(ConfigurationRepository configurationRepository) {
+    public MessageSourceManager messageSourceManager(ConfigurationManager configurationManager) {
 
         var source = new CustomResourceBundleMessageSource();
         source.setBasenames("alfio.i18n.public", "alfio.i18n.admin");
@@ -163,7 +162,7 @@ public class DataSourceConfiguration {
         source.setFallbackToSystemLocale(false);
         source.setAlwaysUseMessageFormat(true);
 
-        return new MessageSourceManager(source, configurationRepository);
+        return new MessageSourceManager(source, configurationManager);
     }
 
     @Bean
@@ -202,11 +201,15 @@ public class DataSourceConfiguration {
                      WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor,
                      TicketReservationManager ticketReservationManager,
                      AdminJobQueueRepository adminJobQueueRepository,
-                     PlatformTransactionManager platformTransactionManager
+                     PlatformTransactionManager platformTransactionManager,
+                     ReservationExpirationScheduler reservationExpirationScheduler,
+                     TicketStatisticsManager ticketStatisticsManager,
+                     TicketPdfCache ticketPdfCache
                      ) {
         return new Jobs(adminReservationRequestManager, configurationManager, environment, eventManager, fileUploadManager,
             notificationManager, specialPriceTokenGenerator, ticketReservationManager, userManager,
-            waitingQueueSubscriptionProcessor, adminJobManager(adminJobQueueRepository, platformTransactionManager, ticketReservationManager));
+            waitingQueueSubscriptionProcessor, adminJobManager(adminJobQueueRepository, platformTransactionManager, ticketReservationManager),
+            reservationExpirationScheduler, ticketStatisticsManager, ticketPdfCache);
 
     }
 
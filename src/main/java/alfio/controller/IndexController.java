@@ -18,11 +18,14 @@ package alfio.controller;
 
 import alfio.config.Initializer;
 import alfio.config.WebSecurityConfig;
+import alfio.controller.support.CompressedContent;
+import alfio.manager.EventVersionTracker;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.user.UserManager;
 import alfio.model.ContentLanguage;
+import alfio.model.Event;
 import alfio.model.EventDescription;
 import alfio.model.FileBlobMetadata;
 import alfio.model.system.ConfigurationKeys;
@@ -34,7 +37,10 @@ import alfio.util.MustacheCustomTag;
 import alfio.util.RequestUtils;
 import alfio.util.TemplateManager;
 import ch.digitalfondue.jfiveparse.*;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.AllArgsConstructor;
+import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
@@ -54,9 +60,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.time.Duration;
 import java.util.EnumSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import static alfio.model.system.ConfigurationKeys.ENABLE_CAPTCHA_FOR_LOGIN;
@@ -79,6 +88,17 @@ public class IndexController {
     private final MessageSourceManager messageSourceManager;
     private final EventDescriptionRepository eventDescriptionRepository;
     private final OrganizationRepository organizationRepository;
+    private final EventVersionTracker eventVersionTracker;
+    private final AtomicReference<CompressedContent> publicIndex = new AtomicReference<>();
+    // organization changes are not tracked, so the entries cannot be kept indefinitely
+    private final Cache<String, Versioned<Optional<Event>>> eventsByShortName = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .build();
+    private final Cache<Pair<Integer, Locale>, Versioned<byte[]>> openGraphPages = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .build();
 
 
     @RequestMapping(value = "/", method = RequestMethod.HEAD)
@@ -132,27 +152,62 @@ public class IndexController {
         response.setContentType(TEXT_HTML_CHARSET_UTF_8);
         response.setCharacterEncoding(UTF_8);
 
-        if (eventShortName != null && RequestUtils.isSocialMediaShareUA(userAgent) && eventRepository.existsByShortName(eventShortName)) {
-            try (var is = new ClassPathResource("alfio/web-templates/event-open-graph-page.html").getInputStream(); var os = response.getOutputStream()) {
-                var res = getOpenGraphPage(is, eventShortName, request, lang);
-                os.write(res);
+        var event = eventShortName != null && RequestUtils.isSocialMediaShareUA(userAgent) ? findEvent(eventShortName) : Optional.<Event>empty();
+        if (event.isPresent()) {
+            try (var os = response.getOutputStream()) {
+                os.write(getOpenGraphPage(event.get(), request, lang));
             }
         } else {
-            try (var is = new ClassPathResource("alfio-public-frontend-index.html").getInputStream(); var os = response.getOutputStream()) {
-                is.transferTo(os);
-            }
+            getPublicIndex().writeTo(request.getRequest(), response);
         }
     }
 
-    // see https://github.com/alfio-event/alf.io/issues/708
-    // use ngrok to test the preview
-    private byte[] getOpenGraphPage(InputStream is, String eventShortName, ServletWebRequest request, String lang) {
-        var event = eventRepository.findByShortName(eventShortName);
+    private CompressedContent getPublicIndex() throws IOException {
+        var index = publicIndex.get();
+        if (index == null) {
+            index = CompressedContent.load(new ClassPathResource("alfio-public-frontend-index.html"));
+            publicIndex.compareAndSet(null, index);
+        }
+        return index;
+    }
+
+    private Optional<Event> findEvent(String eventShortName) {
+        var cached = eventsByShortName.getIfPresent(eventShortName);
+        if (cached != null && cached.isCurrent(eventVersionTracker, cached.value.map(Event::getId))) {
+            return cached.value;
+        }
+        long sequence = eventVersionTracker.getGlobalVersion();
+        var event = eventRepository.findOptionalByShortName(eventShortName);
+        if (EventVersionTracker.canCache()) {
+            eventsByShortName.put(eventShortName, new Versioned<>(sequence, event));
+        }
+        return event;
+    }
+
+    private byte[] getOpenGraphPage(Event event, ServletWebRequest request, String lang) throws IOException {
         var locale = RequestUtils.getMatchingLocale(request, event);
         if (lang != null && event.getContentLanguages().stream().map(ContentLanguage::getLanguage).anyMatch(lang::equalsIgnoreCase)) {
             locale = Locale.forLanguageTag(lang);
         }
+        var key = Pair.of(event.getId(), locale);
+        var cached = openGraphPages.getIfPresent(key);
+        if (cached != null && cached.isCurrent(eventVersionTracker, Optional.of(event.getId()))) {
+            return cached.value;
+        }
+        long sequence = eventVersionTracker.getGlobalVersion();
+        byte[] page;
+        try (var is = new ClassPathResource("alfio/web-templates/event-open-graph-page.html").getInputStream()) {
+            page = renderOpenGraphPage(is, event, locale);
+        }
+        if (EventVersionTracker.canCache()) {
+            openGraphPages.put(key, new Versioned<>(sequence, page));
+        }
+        return page;
+    }
 
+    // see https://github.com/alfio-event/alf.io/issues/708
+    // use ngrok to test the preview
+    private byte[] renderOpenGraphPage(InputStream is, Event event, Locale locale) {
         var baseUrl = configurationManager.getForSystem(ConfigurationKeys.BASE_URL).getRequiredValue();
 
         var title = messageSourceManager.getMessageSourceForEvent(event).getMessage("event.get-your-ticket-for", new String[] {event.getDisplayName()}, locale);
@@ -191,6 +246,21 @@ public class IndexController {
         return eventOpenGraph.getOuterHTML().getBytes(StandardCharsets.UTF_8);
     }
 
+    @AllArgsConstructor
+    private static class Versioned<T> {
+        private final long sequence;
+        private final T value;
+
+        /**
+         * @param tracker the version tracker
+         * @param eventId the event the value depends on. If empty, any modification invalidates the value
+         * @return {@code true} if there have been no modifications since the value has been loaded
+         */
+        private boolean isCurrent(EventVersionTracker tracker, Optional<Integer> eventId) {
+            return eventId.map(id -> tracker.getVersion(id) <= sequence).orElseGet(() -> tracker.getGlobalVersion() == sequence);
+        }
+    }
+
     private static Element buildMetaTag(String propertyValue, String contentValue) {
         var meta = new Element("meta");
         meta.setAttribute("property", propertyValue);
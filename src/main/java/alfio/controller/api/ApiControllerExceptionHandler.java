@@ -16,6 +16,7 @@
  */
 package alfio.controller.api;
 
+import alfio.manager.support.PdfRenderingExecutor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageConversionException;
@@ -26,6 +27,7 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 @ControllerAdvice(basePackages = {
     "alfio.controller.api.admin",
@@ -59,4 +61,17 @@ public class ApiControllerExceptionHandler {
         return "bad request";
     }
 
+    @ExceptionHandler(PdfRenderingExecutor.PdfRenderingRejectedException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public String pdfRenderingRejected(PdfRenderingExecutor.PdfRenderingRejectedException e, HttpServletRequest request, HttpServletResponse response) {
+        log.warn("PDF rendering rejected for request {}: {}", request.getRequestURI(), e.getMessage());
+        if(!response.isCommitted()) {
+            // drop the headers of the document (content type, disposition) set by the controller
+            response.reset();
+        }
+        response.setHeader("Retry-After", "30");
+        return "service unavailable";
+    }
+
 }
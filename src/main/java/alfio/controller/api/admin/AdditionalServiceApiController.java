@@ -25,6 +25,7 @@ import alfio.repository.AdditionalServiceRepository;
 import alfio.repository.AdditionalServiceTextRepository;
 import alfio.repository.EventRepository;
 import alfio.util.MonetaryUtil;
+import alfio.util.MustacheCustomTag;
 import alfio.util.Validator;
 import ch.digitalfondue.npjt.AffectedRowCountAndKey;
 import lombok.extern.log4j.Log4j2;
@@ -113,6 +114,7 @@ public class AdditionalServiceApiController {
                             additionalServiceTextRepository.insert(additionalService.getId(), t.getLocale(), t.getType(), t.getValue());
                         }
                     });
+                additionalService.getDescription().forEach(t -> MustacheCustomTag.prerenderDescription(t.getValue()));
                 return ResponseEntity.ok(additionalService);
             }).orElseThrow(IllegalArgumentException::new);
     }
@@ -140,6 +142,7 @@ public class AdditionalServiceApiController {
                 int id = result.getKey();
                 Stream.concat(additionalService.getTitle().stream(), additionalService.getDescription().stream()).
                     forEach(t -> additionalServiceTextRepository.insert(id, t.getLocale(), t.getType(), t.getValue()));
+                additionalService.getDescription().forEach(t -> MustacheCustomTag.prerenderDescription(t.getValue()));
 
                 return ResponseEntity.ok(EventModification.AdditionalService.from(additionalServiceRepository.getById(result.getKey(), eventId))
                     .withText(additionalServiceTextRepository.findAllByAdditionalServiceId(result.getKey()))
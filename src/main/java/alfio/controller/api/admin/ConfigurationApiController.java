@@ -17,6 +17,7 @@
 package alfio.controller.api.admin;
 
 import alfio.controller.api.support.TicketHelper;
+import alfio.manager.system.ConfigurationCache;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.modification.ConfigurationModification;
@@ -151,6 +152,11 @@ public class ConfigurationApiController {
         return EnumSet.allOf(ConfigurationKeys.SettingCategory.class);
     }
 
+    @GetMapping("/cache-statistics")
+    public ConfigurationCache.Statistics getCacheStatistics() {
+        return configurationManager.getCacheStatistics();
+    }
+
     @Data
     static class OrganizationConfig {
         private final Organization organization;
@@ -22,6 +22,7 @@ import alfio.controller.api.support.TicketHelper;
 import alfio.controller.support.TemplateProcessor;
 import alfio.manager.*;
 import alfio.manager.i18n.I18nManager;
+import alfio.manager.support.PdfRenderingExecutor;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
@@ -103,6 +104,7 @@ public class EventApiController {
     private final FileUploadManager fileUploadManager;
     private final ConfigurationManager configurationManager;
     private final ExtensionManager extensionManager;
+    private final PdfRenderingExecutor pdfRenderingExecutor;
 
 
     private static final String ID = "ID";
@@ -669,7 +671,7 @@ public class EventApiController {
                 TicketReservation reservation = pair.getLeft();
                 BillingDocument document = pair.getRight();
                 Map<String, Object> reservationModel = document.getModel();
-                Optional<byte[]> pdf = TemplateProcessor.buildInvoicePdf(event, fileUploadManager, LocaleUtil.forLanguageTag(reservation.getUserLanguage()), templateManager, reservationModel, extensionManager);
+                Optional<byte[]> pdf = TemplateProcessor.buildInvoicePdf(event, fileUploadManager, LocaleUtil.forLanguageTag(reservation.getUserLanguage()), templateManager, reservationModel, extensionManager, pdfRenderingExecutor);
 
                 if(pdf.isPresent()) {
                     zipOS.putNextEntry(new ZipEntry("invoice-" + eventName + "-id-" + reservation.getId() + "-invoice-nr-" + document.getNumber() + ".pdf"));
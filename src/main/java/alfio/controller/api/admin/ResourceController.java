@@ -37,6 +37,7 @@ import alfio.manager.ExtensionManager;
 import alfio.manager.FileUploadManager;
 import alfio.manager.UploadedResourceManager;
 import alfio.manager.i18n.MessageSourceManager;
+import alfio.manager.support.PdfRenderingExecutor;
 import alfio.manager.user.UserManager;
 import alfio.model.ContentLanguage;
 import alfio.model.Event;
@@ -91,6 +92,7 @@ public class ResourceController {
     private final OrganizationRepository organizationRepository;
     private final FileUploadManager fileUploadManager;
     private final ExtensionManager extensionManager;
+    private final PdfRenderingExecutor pdfRenderingExecutor;
 
 
     @ExceptionHandler(Exception.class)
@@ -103,6 +105,16 @@ public class ResourceController {
         return cause.orElse("Something went wrong. Please check the syntax and retry");
     }
 
+    @GetMapping("/template-statistics")
+    public TemplateManager.Statistics getTemplateStatistics() {
+        return templateManager.getStatistics();
+    }
+
+    @GetMapping("/pdf-rendering-statistics")
+    public PdfRenderingExecutor.Statistics getPdfRenderingStatistics() {
+        return pdfRenderingExecutor.getStatistics();
+    }
+
     @GetMapping("/overridable-template/")
     public List<TemplateResource> getOverridableTemplates() {
         return Stream.of(TemplateResource.values()).filter(TemplateResource::overridable).collect(Collectors.toList());
@@ -160,7 +172,7 @@ public class ResourceController {
                 try (OutputStream os = response.getOutputStream()) {
                     response.setContentType(MediaType.APPLICATION_PDF_VALUE);
                     response.addHeader("Content-Disposition", "attachment; filename="+name.name()+".pdf");
-                    TemplateProcessor.renderToPdf(renderedTemplate, os, extensionManager, event);
+                    TemplateProcessor.renderToPdf(renderedTemplate, os, extensionManager, event, name, pdfRenderingExecutor);
                 }
             } else {
                 throw new IllegalStateException("cannot enter here!");
@@ -17,6 +17,7 @@
 package alfio.controller.api.admin;
 
 import alfio.config.Initializer;
+import alfio.controller.api.support.ConditionalResponses;
 import alfio.controller.api.support.CurrencyDescriptor;
 import alfio.controller.api.support.TicketHelper;
 import alfio.manager.EventNameManager;
@@ -48,12 +49,17 @@ public class UtilsApiController {
     private final EventNameManager eventNameManager;
     private final String version;
     private final Environment environment;
+    private final ConditionalResponses conditionalResponses;
 
     @Autowired
-    public UtilsApiController(EventNameManager eventNameManager, @Value("${alfio.version}") String version, Environment environment) {
+    public UtilsApiController(EventNameManager eventNameManager,
+                              @Value("${alfio.version}") String version,
+                              Environment environment,
+                              ConditionalResponses conditionalResponses) {
         this.eventNameManager = eventNameManager;
         this.version = version;
         this.environment = environment;
+        this.conditionalResponses = conditionalResponses;
     }
 
     @ExceptionHandler(MissingServletRequestParameterException.class)
@@ -90,6 +96,11 @@ public class UtilsApiController {
         return applicationInfo;
     }
 
+    @GetMapping("/conditional-requests/statistics")
+    public Map<String, ConditionalResponses.Statistics> getConditionalRequestsStatistics() {
+        return conditionalResponses.getStatistics();
+    }
+
     @GetMapping("/currencies")
     public List<CurrencyDescriptor> getCurrencies(Locale locale) {
         return CurrencyUnit.registeredCurrencies().stream()
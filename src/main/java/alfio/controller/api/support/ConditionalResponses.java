@@ -0,0 +1,140 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.support;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Answers the conditional GET requests (<code>If-None-Match</code>) of the public API without building the response
+ * body, when the version of the requested resource has not changed.
+ * <p>
+ * The ETags must be derived from persisted data (e.g. a hash of the rows and the persisted event versions, see
+ * {@link alfio.repository.PublicDataVersionRepository}) or from the content itself, so that they are still valid
+ * after a restart or when the next request is served by another instance.
+ */
+@Component
+public class ConditionalResponses {
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @param versions the versions of all the data used to build the response
+     * @return a strong ETag
+     */
+    public static String eTag(String... versions) {
+        return "\"" + DigestUtils.sha256Hex(String.join("|", versions)) + "\"";
+    }
+
+    /**
+     * Replies with <code>304 Not Modified</code> if the client already has the given ETag, otherwise builds the
+     * response and adds the ETag to it.
+     *
+     * @param endpoint the endpoint name, used for the statistics
+     * @param eTag the current ETag of the resource
+     * @param headers additional headers, returned also with the <code>304</code>
+     * @param cacheControl the <code>Cache-Control</code> directives
+     * @param builder builds the full response
+     * @param <T> the body type
+     * @return the response
+     */
+    public <T> ResponseEntity<T> respond(String endpoint,
+                                         String eTag,
+                                         HttpHeaders headers,
+                                         CacheControl cacheControl,
+                                         Supplier<ResponseEntity<T>> builder) {
+        var endpointCounters = counters.computeIfAbsent(endpoint, k -> new Counters());
+        endpointCounters.requests.increment();
+        if(matches(currentIfNoneMatch(), eTag)) {
+            endpointCounters.notModified.increment();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .headers(headers)
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .build();
+        }
+        var response = builder.get();
+        if(!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        var responseHeaders = new HttpHeaders();
+        responseHeaders.addAll(response.getHeaders());
+        responseHeaders.setETag(eTag);
+        responseHeaders.setCacheControl(cacheControl);
+        return new ResponseEntity<>(response.getBody(), responseHeaders, response.getStatusCode());
+    }
+
+    /**
+     * @return the number of requests and of <code>304 Not Modified</code> replies, by endpoint
+     */
+    public Map<String, Statistics> getStatistics() {
+        var result = new TreeMap<String, Statistics>();
+        counters.forEach((endpoint, c) -> {
+            long requests = c.requests.sum();
+            long notModified = c.notModified.sum();
+            result.put(endpoint, new Statistics(requests, notModified, requests > 0 ? (double) notModified / requests : 0D));
+        });
+        return result;
+    }
+
+    static boolean matches(String ifNoneMatch, String eTag) {
+        if(StringUtils.isBlank(ifNoneMatch) || eTag == null) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+            .map(String::trim)
+            .map(t -> StringUtils.removeStart(t, "W/"))
+            .anyMatch(t -> t.equals("*") || t.equals(eTag));
+    }
+
+    private static String currentIfNoneMatch() {
+        var attributes = RequestContextHolder.getRequestAttributes();
+        if(attributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) attributes).getRequest().getHeader(HttpHeaders.IF_NONE_MATCH);
+        }
+        return null;
+    }
+
+    private static class Counters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder notModified = new LongAdder();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Statistics {
+        private final long requests;
+        private final long notModified;
+        private final double notModifiedRatio;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.support;
+
+import alfio.manager.EventVersionTracker;
+import alfio.util.Json;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Caches the payloads built from the public data of the events, until the version reported by
+ * {@link EventVersionTracker} changes or the maximum age is reached.
+ * <p>
+ * Each payload comes with a strong ETag, computed from its JSON representation: the same content always has the same
+ * ETag, even if it has been rebuilt or served by another instance.
+ *
+ * @param <K> the key type
+ * @param <V> the payload type
+ */
+public class VersionedPayloadCache<K, V> {
+
+    private final Cache<K, VersionedPayload<V>> cache;
+
+    public VersionedPayloadCache(long maximumSize, Duration maxAge) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(maxAge)
+            .build();
+    }
+
+    /**
+     * Returns the cached payload, if it has been built for the given version. Otherwise, the payload is built and
+     * (if possible) cached.
+     *
+     * @param key the key
+     * @param version the current version. It must be read <em>before</em> building the payload
+     * @param loader builds the payload
+     * @return the payload
+     */
+    public VersionedPayload<V> get(K key, long version, Supplier<V> loader) {
+        var cached = cache.getIfPresent(key);
+        if(cached != null && cached.version == version) {
+            return cached;
+        }
+        var loaded = VersionedPayload.of(version, loader.get());
+        if(EventVersionTracker.canCache()) {
+            // a concurrent request could have already cached a more recent version
+            cache.asMap().merge(key, loaded, (current, l) -> current.version > l.version ? current : l);
+        }
+        return loaded;
+    }
+
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class VersionedPayload<V> {
+        private final long version;
+        @Getter
+        private final V payload;
+        @Getter
+        private final String eTag;
+
+        private static <V> VersionedPayload<V> of(long version, V payload) {
+            return new VersionedPayload<>(version, payload, "\"" + DigestUtils.sha256Hex(Json.toJson(payload)) + "\"");
+        }
+    }
+}
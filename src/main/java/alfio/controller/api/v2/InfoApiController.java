@@ -17,14 +17,18 @@
 package alfio.controller.api.v2;
 
 import alfio.config.Initializer;
+import alfio.controller.api.support.ConditionalResponses;
 import alfio.controller.api.v2.model.AlfioInfo;
 import alfio.controller.api.v2.model.AnalyticsConfiguration;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.system.ConfigurationKeys;
+import alfio.util.Json;
 import lombok.AllArgsConstructor;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -39,9 +43,10 @@ public class InfoApiController {
 
     private final Environment environment;
     private final ConfigurationManager configurationManager;
+    private final ConditionalResponses conditionalResponses;
 
     @GetMapping("info")
-    public AlfioInfo getInfo(HttpSession session) {
+    public ResponseEntity<AlfioInfo> getInfo(HttpSession session) {
 
         var demoMode = environment.acceptsProfiles(Profiles.of(Initializer.PROFILE_DEMO));
         var devMode = environment.acceptsProfiles(Profiles.of(Initializer.PROFILE_DEV));
@@ -52,6 +57,9 @@ public class InfoApiController {
 
         var analyticsConf = AnalyticsConfiguration.build(conf, session);
 
-        return new AlfioInfo(demoMode, devMode, prodMode, analyticsConf);
+        // the payload is cheap to build, so the ETag is derived from its content
+        var info = new AlfioInfo(demoMode, devMode, prodMode, analyticsConf);
+        return conditionalResponses.respond("info", ConditionalResponses.eTag(Json.toJson(info)), null, CacheControl.noCache().cachePrivate(),
+            () -> ResponseEntity.ok(info));
     }
 }
@@ -38,11 +38,27 @@ public class AnalyticsConfiguration {
 
 
     public static AnalyticsConfiguration build(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> conf, HttpSession session) {
+        return build(conf).forSession(session);
+    }
+
+    /**
+     * Builds the configuration shared by all the sessions, without the client ID.
+     */
+    public static AnalyticsConfiguration build(Map<ConfigurationKeys, ConfigurationManager.MaybeConfiguration> conf) {
         var googAnalyticsKey = StringUtils.trimToNull(conf.get(GOOGLE_ANALYTICS_KEY).getValueOrDefault(null));
         var googAnalyticsScrambled = conf.get(GOOGLE_ANALYTICS_ANONYMOUS_MODE).getValueAsBooleanOrDefault(true);
+        return new AnalyticsConfiguration(googAnalyticsKey, googAnalyticsScrambled, null);
+    }
+
+    boolean needsClientId() {
+        return googleAnalyticsKey != null && googleAnalyticsScrambledInfo;
+    }
 
+    public AnalyticsConfiguration forSession(HttpSession session) {
         var sessionId = session.getId();
-        var clientId = googAnalyticsKey != null && googAnalyticsScrambled && sessionId != null ? DigestUtils.sha256Hex(sessionId) : null;
-        return new AnalyticsConfiguration(googAnalyticsKey, googAnalyticsScrambled, clientId);
+        if(!needsClientId() || sessionId == null) {
+            return this;
+        }
+        return new AnalyticsConfiguration(googleAnalyticsKey, googleAnalyticsScrambledInfo, DigestUtils.sha256Hex(sessionId));
     }
 }
@@ -204,6 +204,15 @@ public class EventWithAdditionalInfo implements DateValidity {
         return analyticsConfiguration;
     }
 
+    public EventWithAdditionalInfo withAnalyticsConfiguration(AnalyticsConfiguration analyticsConfiguration) {
+        return new EventWithAdditionalInfo(event, mapUrl, organization, description, activePaymentMethods,
+            bankAccount, bankAccountOwner,
+            formattedBeginDate, formattedBeginTime,
+            formattedEndDate, formattedEndTime,
+            invoicingConfiguration, captchaConfiguration, assignmentConfiguration, promotionsConfiguration, analyticsConfiguration,
+            i18nOverride);
+    }
+
     public Map<String, Map<String, String>> getI18nOverride() {
         return i18nOverride;
     }
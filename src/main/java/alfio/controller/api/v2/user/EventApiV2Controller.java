@@ -16,6 +16,8 @@
  */
 package alfio.controller.api.v2.user;
 
+import alfio.controller.api.support.ConditionalResponses;
+import alfio.controller.api.support.VersionedPayloadCache;
 import alfio.controller.api.v2.model.AdditionalService;
 import alfio.controller.api.v2.model.EventWithAdditionalInfo;
 import alfio.controller.api.v2.model.*;
@@ -46,6 +48,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -59,6 +62,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
@@ -76,6 +80,12 @@ import static java.util.stream.Collectors.toList;
 @AllArgsConstructor
 public class EventApiV2Controller {
 
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    // the key is the only proof that a retried request comes from the same client, therefore it must not be guessable
+    private static final int MIN_IDEMPOTENCY_KEY_LENGTH = 16;
+    private static final int MIN_IDEMPOTENCY_KEY_DISTINCT_CHARS = 8;
+
     private final EventManager eventManager;
     private final EventRepository eventRepository;
     private final ConfigurationManager configurationManager;
@@ -96,14 +106,28 @@ public class EventApiV2Controller {
     private final RecaptchaService recaptchaService;
     private final PromoCodeDiscountRepository promoCodeDiscountRepository;
     private final SpecialPriceRepository specialPriceRepository;
+    private final TicketAvailabilityManager ticketAvailabilityManager;
+    private final ReservationAdmissionManager reservationAdmissionManager;
+    private final EventVersionTracker eventVersionTracker;
+    private final ConditionalResponses conditionalResponses;
+    // the payload depends also on the current time (e.g. offline payment availability), so it cannot be cached indefinitely
+    private final VersionedPayloadCache<Integer, EventWithAdditionalInfo> eventPayloads = new VersionedPayloadCache<>(1000, Duration.ofMinutes(1));
+    // events disappear from the list once they are over
+    private final VersionedPayloadCache<Boolean, List<BasicEventInfo>> publishedEvents = new VersionedPayloadCache<>(1, Duration.ofMinutes(1));
 
 
     @GetMapping("events")
     public ResponseEntity<List<BasicEventInfo>> listEvents() {
+        var cached = publishedEvents.get(Boolean.TRUE, eventVersionTracker.getGlobalVersion(), this::buildPublishedEvents);
+        return conditionalResponses.respond("events", cached.getETag(), getCorsHeaders(), CacheControl.noCache().cachePublic(),
+            () -> ResponseEntity.ok().headers(getCorsHeaders()).body(cached.getPayload()));
+    }
+
+    private List<BasicEventInfo> buildPublishedEvents() {
 
         var langs = i18nManager.getSupportedLanguages();
 
-        var events = eventManager.getPublishedEvents()
+        return eventManager.getPublishedEvents()
             .stream()
             .map(e -> {
 
@@ -116,136 +140,150 @@ public class EventApiV2Controller {
                 return new BasicEventInfo(e.getShortName(), e.getFileBlobId(), e.getDisplayName(), e.getLocation(),
                     e.getTimeZone(), e.getSameDay(), formattedBeginDate, formattedBeginTime, formattedEndDate, formattedEndTime);
             })
-            .collect(Collectors.toList());
-        return new ResponseEntity<>(events, getCorsHeaders(), HttpStatus.OK);
+            .collect(Collectors.toUnmodifiableList());
     }
 
     @GetMapping("event/{eventName}")
     public ResponseEntity<EventWithAdditionalInfo> getEvent(@PathVariable("eventName") String eventName, HttpSession session) {
         return eventRepository.findOptionalByShortName(eventName).filter(e -> e.getStatus() != Event.Status.DISABLED)//
             .map(event -> {
-                //
-                var messageSourceAndOverride = messageSourceManager.getMessageSourceForEventAndOverride(event);
-                var messageSource = messageSourceAndOverride.getLeft();
-                var i18nOverride = messageSourceAndOverride.getRight();
-
-                var descriptions = applyCommonMark(eventDescriptionRepository.findDescriptionByEventIdAsMap(event.getId()));
-
-                var organization = organizationRepository.getContactById(event.getOrganizationId());
-
-                var configurationsValues = configurationManager.getFor(List.of(
-                    MAPS_PROVIDER,
-                    MAPS_CLIENT_API_KEY,
-                    MAPS_HERE_APP_ID,
-                    MAPS_HERE_APP_CODE,
-                    RECAPTCHA_API_KEY,
-                    BANK_ACCOUNT_NR,
-                    BANK_ACCOUNT_OWNER,
-                    ENABLE_CUSTOMER_REFERENCE,
-                    ENABLE_ITALY_E_INVOICING,
-                    VAT_NUMBER_IS_REQUIRED,
-                    FORCE_TICKET_OWNER_ASSIGNMENT_AT_RESERVATION,
-                    ENABLE_ATTENDEE_AUTOCOMPLETE,
-                    ENABLE_TICKET_TRANSFER,
-                    DISPLAY_DISCOUNT_CODE_BOX,
-                    USE_PARTNER_CODE_INSTEAD_OF_PROMOTIONAL,
-                    GOOGLE_ANALYTICS_KEY,
-                    GOOGLE_ANALYTICS_ANONYMOUS_MODE,
-                    // captcha
-                    ENABLE_CAPTCHA_FOR_TICKET_SELECTION,
-                    RECAPTCHA_API_KEY,
-                    ENABLE_CAPTCHA_FOR_OFFLINE_PAYMENTS,
-                    //
-                    GENERATE_ONLY_INVOICE,
-                    //
-                    INVOICE_ADDRESS,
-                    VAT_NR,
-                    // required by EuVatChecker.reverseChargeEnabled
-                    ENABLE_EU_VAT_DIRECTIVE,
-                    COUNTRY_OF_BUSINESS
-                ), ConfigurationLevel.event(event));
-
-                var geoInfoConfiguration = Map.of(
-                    MAPS_PROVIDER, configurationsValues.get(MAPS_PROVIDER).getValue(),
-                    MAPS_CLIENT_API_KEY, configurationsValues.get(MAPS_CLIENT_API_KEY).getValue(),
-                    MAPS_HERE_APP_ID, configurationsValues.get(MAPS_HERE_APP_ID).getValue(),
-                    MAPS_HERE_APP_CODE, configurationsValues.get(MAPS_HERE_APP_CODE).getValue());
-
-                var ld = LocationDescriptor.fromGeoData(event.getLatLong(), TimeZone.getTimeZone(event.getTimeZone()), geoInfoConfiguration);
-
-                Map<PaymentMethod, PaymentProxyWithParameters> availablePaymentMethods = new EnumMap<>(PaymentMethod.class);
-
-                var activePaymentMethods = getActivePaymentMethods(event);
-
-                activePaymentMethods.forEach(apm -> {
-                    availablePaymentMethods.put(apm.getPaymentMethod(), new PaymentProxyWithParameters(apm, paymentManager.loadModelOptionsFor(Collections.singletonList(apm), event)));
+                int eventId = event.getId();
+                var cached = eventPayloads.get(eventId, eventVersionTracker.getVersion(eventId), () -> buildEventWithAdditionalInfo(eventRepository.findById(eventId)));
+                var analyticsConf = cached.getPayload().getAnalyticsConfiguration().forSession(session);
+                // the client ID is derived from the session, therefore it cannot be shared
+                var eTag = analyticsConf.getClientId() != null ? ConditionalResponses.eTag(cached.getETag(), analyticsConf.getClientId()) : cached.getETag();
+                return conditionalResponses.respond("event", eTag, getCorsHeaders(), CacheControl.noCache(), () -> {
+                    var payload = cached.getPayload();
+                    if(analyticsConf.getClientId() != null) {
+                        payload = payload.withAnalyticsConfiguration(analyticsConf);
+                    }
+                    return ResponseEntity.ok().headers(getCorsHeaders()).body(payload);
                 });
-
-                //
-                boolean captchaForTicketSelection = isRecaptchaForTicketSelectionEnabled(configurationsValues);
-                String recaptchaApiKey = null;
-                if (captchaForTicketSelection) {
-                    recaptchaApiKey = configurationsValues.get(RECAPTCHA_API_KEY).getValueOrDefault(null);
-                }
-                //
-                boolean captchaForOfflinePaymentAndFreeEnabled = configurationManager.isRecaptchaForOfflinePaymentAndFreeEnabled(configurationsValues);
-                var captchaConf = new EventWithAdditionalInfo.CaptchaConfiguration(captchaForTicketSelection, captchaForOfflinePaymentAndFreeEnabled, recaptchaApiKey);
-
-
-                //
-                String bankAccount = configurationsValues.get(BANK_ACCOUNT_NR).getValueOrDefault("");
-                List<String> bankAccountOwner = Arrays.asList(configurationsValues.get(BANK_ACCOUNT_OWNER).getValueOrDefault("").split("\n"));
-                //
-
-                var formattedBeginDate = Formatters.getFormattedDate(event, event.getBegin(), "common.event.date-format", messageSource);
-                var formattedBeginTime = Formatters.getFormattedDate(event, event.getBegin(), "common.event.time-format", messageSource);
-                var formattedEndDate = Formatters.getFormattedDate(event, event.getEnd(), "common.event.date-format", messageSource);
-                var formattedEndTime = Formatters.getFormattedDate(event, event.getEnd(), "common.event.time-format", messageSource);
-
-                //invoicing information
-                boolean canGenerateReceiptOrInvoiceToCustomer = configurationManager.canGenerateReceiptOrInvoiceToCustomer(configurationsValues);
-                boolean euVatCheckingEnabled = EuVatChecker.reverseChargeEnabled(configurationsValues);
-                boolean invoiceAllowed = configurationManager.hasAllConfigurationsForInvoice(configurationsValues) || euVatCheckingEnabled;
-                boolean onlyInvoice = invoiceAllowed && configurationManager.isInvoiceOnly(configurationsValues);
-                boolean customerReferenceEnabled = configurationsValues.get(ENABLE_CUSTOMER_REFERENCE).getValueAsBooleanOrDefault(false);
-                boolean enabledItalyEInvoicing = configurationsValues.get(ENABLE_ITALY_E_INVOICING).getValueAsBooleanOrDefault(false);
-                boolean vatNumberStrictlyRequired = configurationsValues.get(VAT_NUMBER_IS_REQUIRED).getValueAsBooleanOrDefault(false);
-
-                var invoicingConf = new EventWithAdditionalInfo.InvoicingConfiguration(canGenerateReceiptOrInvoiceToCustomer,
-                    euVatCheckingEnabled, invoiceAllowed, onlyInvoice,
-                    customerReferenceEnabled, enabledItalyEInvoicing, vatNumberStrictlyRequired);
-                //
-
-                //
-                boolean forceAssignment = configurationsValues.get(FORCE_TICKET_OWNER_ASSIGNMENT_AT_RESERVATION).getValueAsBooleanOrDefault(false);
-                boolean enableAttendeeAutocomplete = configurationsValues.get(ENABLE_ATTENDEE_AUTOCOMPLETE).getValueAsBooleanOrDefault(true);
-                boolean enableTicketTransfer = configurationsValues.get(ENABLE_TICKET_TRANSFER).getValueAsBooleanOrDefault(true);
-                var assignmentConf = new EventWithAdditionalInfo.AssignmentConfiguration(forceAssignment, enableAttendeeAutocomplete, enableTicketTransfer);
-                //
-
-
-                //promotion codes
-                boolean hasAccessPromotions = configurationsValues.get(DISPLAY_DISCOUNT_CODE_BOX).getValueAsBooleanOrDefault(true) &&
-                    (ticketCategoryRepository.countAccessRestrictedRepositoryByEventId(event.getId()) > 0 ||
-                        promoCodeDiscountRepository.countByEventAndOrganizationId(event.getId(), event.getOrganizationId()) > 0);
-                boolean usePartnerCode = configurationsValues.get(USE_PARTNER_CODE_INSTEAD_OF_PROMOTIONAL).getValueAsBooleanOrDefault(false);
-                var promoConf = new EventWithAdditionalInfo.PromotionsConfiguration(hasAccessPromotions, usePartnerCode);
-                //
-
-                //analytics configuration
-                var analyticsConf = AnalyticsConfiguration.build(configurationsValues, session);
-                //
-
-                return new ResponseEntity<>(new EventWithAdditionalInfo(event, ld.getMapUrl(), organization, descriptions, availablePaymentMethods,
-                    bankAccount, bankAccountOwner,
-                    formattedBeginDate, formattedBeginTime,
-                    formattedEndDate, formattedEndTime,
-                    invoicingConf, captchaConf, assignmentConf, promoConf, analyticsConf,
-                    i18nOverride), getCorsHeaders(), HttpStatus.OK);
             })
             .orElseGet(() -> ResponseEntity.notFound().headers(getCorsHeaders()).build());
     }
 
+    private EventWithAdditionalInfo buildEventWithAdditionalInfo(Event event) {
+        //
+        var messageSourceAndOverride = messageSourceManager.getMessageSourceForEventAndOverride(event);
+        var messageSource = messageSourceAndOverride.getLeft();
+        var i18nOverride = messageSourceAndOverride.getRight();
+
+        var descriptions = applyCommonMark(eventDescriptionRepository.findDescriptionByEventIdAsMap(event.getId()));
+
+        var organization = organizationRepository.getContactById(event.getOrganizationId());
+
+        var configurationsValues = configurationManager.getEventConfiguration(event).getAll(List.of(
+            MAPS_PROVIDER,
+            MAPS_CLIENT_API_KEY,
+            MAPS_HERE_APP_ID,
+            MAPS_HERE_APP_CODE,
+            RECAPTCHA_API_KEY,
+            BANK_ACCOUNT_NR,
+            BANK_ACCOUNT_OWNER,
+            ENABLE_CUSTOMER_REFERENCE,
+            ENABLE_ITALY_E_INVOICING,
+            VAT_NUMBER_IS_REQUIRED,
+            FORCE_TICKET_OWNER_ASSIGNMENT_AT_RESERVATION,
+            ENABLE_ATTENDEE_AUTOCOMPLETE,
+            ENABLE_TICKET_TRANSFER,
+            DISPLAY_DISCOUNT_CODE_BOX,
+            USE_PARTNER_CODE_INSTEAD_OF_PROMOTIONAL,
+            GOOGLE_ANALYTICS_KEY,
+            GOOGLE_ANALYTICS_ANONYMOUS_MODE,
+            // captcha
+            ENABLE_CAPTCHA_FOR_TICKET_SELECTION,
+            RECAPTCHA_API_KEY,
+            ENABLE_CAPTCHA_FOR_OFFLINE_PAYMENTS,
+            //
+            GENERATE_ONLY_INVOICE,
+            //
+            INVOICE_ADDRESS,
+            VAT_NR,
+            // required by EuVatChecker.reverseChargeEnabled
+            ENABLE_EU_VAT_DIRECTIVE,
+            COUNTRY_OF_BUSINESS
+        ));
+
+        var geoInfoConfiguration = Map.of(
+            MAPS_PROVIDER, configurationsValues.get(MAPS_PROVIDER).getValue(),
+            MAPS_CLIENT_API_KEY, configurationsValues.get(MAPS_CLIENT_API_KEY).getValue(),
+            MAPS_HERE_APP_ID, configurationsValues.get(MAPS_HERE_APP_ID).getValue(),
+            MAPS_HERE_APP_CODE, configurationsValues.get(MAPS_HERE_APP_CODE).getValue());
+
+        var ld = LocationDescriptor.fromGeoData(event.getLatLong(), TimeZone.getTimeZone(event.getTimeZone()), geoInfoConfiguration);
+
+        Map<PaymentMethod, PaymentProxyWithParameters> availablePaymentMethods = new EnumMap<>(PaymentMethod.class);
+
+        var activePaymentMethods = getActivePaymentMethods(event);
+
+        activePaymentMethods.forEach(apm -> {
+            availablePaymentMethods.put(apm.getPaymentMethod(), new PaymentProxyWithParameters(apm, paymentManager.loadModelOptionsFor(Collections.singletonList(apm), event)));
+        });
+
+        //
+        boolean captchaForTicketSelection = isRecaptchaForTicketSelectionEnabled(configurationsValues);
+        String recaptchaApiKey = null;
+        if (captchaForTicketSelection) {
+            recaptchaApiKey = configurationsValues.get(RECAPTCHA_API_KEY).getValueOrDefault(null);
+        }
+        //
+        boolean captchaForOfflinePaymentAndFreeEnabled = configurationManager.isRecaptchaForOfflinePaymentAndFreeEnabled(configurationsValues);
+        var captchaConf = new EventWithAdditionalInfo.CaptchaConfiguration(captchaForTicketSelection, captchaForOfflinePaymentAndFreeEnabled, recaptchaApiKey);
+
+
+        //
+        String bankAccount = configurationsValues.get(BANK_ACCOUNT_NR).getValueOrDefault("");
+        List<String> bankAccountOwner = Arrays.asList(configurationsValues.get(BANK_ACCOUNT_OWNER).getValueOrDefault("").split("\n"));
+        //
+
+        var formattedBeginDate = Formatters.getFormattedDate(event, event.getBegin(), "common.event.date-format", messageSource);
+        var formattedBeginTime = Formatters.getFormattedDate(event, event.getBegin(), "common.event.time-format", messageSource);
+        var formattedEndDate = Formatters.getFormattedDate(event, event.getEnd(), "common.event.date-format", messageSource);
+        var formattedEndTime = Formatters.getFormattedDate(event, event.getEnd(), "common.event.time-format", messageSource);
+
+        //invoicing information
+        boolean canGenerateReceiptOrInvoiceToCustomer = configurationManager.canGenerateReceiptOrInvoiceToCustomer(configurationsValues);
+        boolean euVatCheckingEnabled = EuVatChecker.reverseChargeEnabled(configurationsValues);
+        boolean invoiceAllowed = configurationManager.hasAllConfigurationsForInvoice(configurationsValues) || euVatCheckingEnabled;
+        boolean onlyInvoice = invoiceAllowed && configurationManager.isInvoiceOnly(configurationsValues);
+        boolean customerReferenceEnabled = configurationsValues.get(ENABLE_CUSTOMER_REFERENCE).getValueAsBooleanOrDefault(false);
+        boolean enabledItalyEInvoicing = configurationsValues.get(ENABLE_ITALY_E_INVOICING).getValueAsBooleanOrDefault(false);
+        boolean vatNumberStrictlyRequired = configurationsValues.get(VAT_NUMBER_IS_REQUIRED).getValueAsBooleanOrDefault(false);
+
+        var invoicingConf = new EventWithAdditionalInfo.InvoicingConfiguration(canGenerateReceiptOrInvoiceToCustomer,
+            euVatCheckingEnabled, invoiceAllowed, onlyInvoice,
+            customerReferenceEnabled, enabledItalyEInvoicing, vatNumberStrictlyRequired);
+        //
+
+        //
+        boolean forceAssignment = configurationsValues.get(FORCE_TICKET_OWNER_ASSIGNMENT_AT_RESERVATION).getValueAsBooleanOrDefault(false);
+        boolean enableAttendeeAutocomplete = configurationsValues.get(ENABLE_ATTENDEE_AUTOCOMPLETE).getValueAsBooleanOrDefault(true);
+        boolean enableTicketTransfer = configurationsValues.get(ENABLE_TICKET_TRANSFER).getValueAsBooleanOrDefault(true);
+        var assignmentConf = new EventWithAdditionalInfo.AssignmentConfiguration(forceAssignment, enableAttendeeAutocomplete, enableTicketTransfer);
+        //
+
+
+        //promotion codes
+        boolean hasAccessPromotions = configurationsValues.get(DISPLAY_DISCOUNT_CODE_BOX).getValueAsBooleanOrDefault(true) &&
+            (ticketCategoryRepository.countAccessRestrictedRepositoryByEventId(event.getId()) > 0 ||
+                promoCodeDiscountRepository.countByEventAndOrganizationId(event.getId(), event.getOrganizationId()) > 0);
+        boolean usePartnerCode = configurationsValues.get(USE_PARTNER_CODE_INSTEAD_OF_PROMOTIONAL).getValueAsBooleanOrDefault(false);
+        var promoConf = new EventWithAdditionalInfo.PromotionsConfiguration(hasAccessPromotions, usePartnerCode);
+        //
+
+        //analytics configuration
+        var analyticsConf = AnalyticsConfiguration.build(configurationsValues);
+        //
+
+        return new EventWithAdditionalInfo(event, ld.getMapUrl(), organization, descriptions, availablePaymentMethods,
+            bankAccount, bankAccountOwner,
+            formattedBeginDate, formattedBeginTime,
+            formattedEndDate, formattedEndTime,
+            invoicingConf, captchaConf, assignmentConf, promoConf, analyticsConf,
+            i18nOverride);
+    }
+
     private List<PaymentProxy> getActivePaymentMethods(Event event) {
         if(!event.isFreeOfCharge()) {
             return paymentManager.getPaymentMethods(event)
@@ -303,20 +341,29 @@ public class EventApiV2Controller {
 
             final ZonedDateTime now = ZonedDateTime.now(event.getZoneId());
             //hide access restricted ticket categories
-            var ticketCategories = ticketCategoryRepository.findAllTicketCategories(event.getId());
+            var ticketCategories = ticketCategoryRepository.findAllTicketCategories(event.getId()).stream()
+                .filter((c) -> !c.isAccessRestricted() || shouldDisplayRestrictedCategory(specialCode, c, promoCodeDiscount))
+                .collect(Collectors.toList());
+            var categoryIds = ticketCategories.stream().map(alfio.model.TicketCategory::getId).collect(Collectors.toList());
+            // configuration and availability are resolved once for all the categories
+            var maxTicketsByCategory = configurationManager.getEventConfiguration(event).getForCategories(ConfigurationKeys.MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, categoryIds);
+            var availableTicketsByCategory = ticketAvailabilityManager.getAvailableTickets(event, ticketCategories);
+            // the confirmed usages of a promo code don't depend on the category
+            var remainingPromoCodeUsages = promoCodeDiscount.filter(promoCode -> specialCode.isEmpty() && promoCode.getMaxUsage() != null)
+                .filter(promoCode -> ticketCategories.stream().anyMatch(c -> shouldApplyDiscount(promoCode, c)))
+                .map(promoCode -> promoCode.getMaxUsage() - promoCodeRepository.countConfirmedPromoCode(promoCode.getId(), categoriesOrNull(promoCode), null, categoriesOrNull(promoCode) != null ? "X" : null));
 
             List<SaleableTicketCategory> saleableTicketCategories = ticketCategories.stream()
-                .filter((c) -> !c.isAccessRestricted() || shouldDisplayRestrictedCategory(specialCode, c, promoCodeDiscount))
                 .map((m) -> {
-                    int maxTickets = configurationManager.getFor(ConfigurationKeys.MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, ConfigurationLevel.ticketCategory(event, m.getId())).getValueAsIntOrDefault(5);
+                    int maxTickets = maxTicketsByCategory.get(m.getId()).getValueAsIntOrDefault(5);
                     PromoCodeDiscount filteredPromoCode = promoCodeDiscount.filter(promoCode -> shouldApplyDiscount(promoCode, m)).orElse(null);
                     if (specialCode.isPresent()) {
                         maxTickets = Math.min(1, maxTickets);
                     } else if (filteredPromoCode != null && filteredPromoCode.getMaxUsage() != null) {
-                        maxTickets = filteredPromoCode.getMaxUsage() - promoCodeRepository.countConfirmedPromoCode(filteredPromoCode.getId(), categoriesOrNull(filteredPromoCode), null, categoriesOrNull(filteredPromoCode) != null ? "X" : null);
+                        maxTickets = remainingPromoCodeUsages.orElseThrow();
                     }
                     return new SaleableTicketCategory(m,
-                        now, event, ticketReservationManager.countAvailableTickets(event, m), maxTickets,
+                        now, event, availableTicketsByCategory.get(m.getId()), maxTickets,
                         filteredPromoCode);
                 })
                 .collect(Collectors.toList());
@@ -433,42 +480,116 @@ public class EventApiV2Controller {
                                                                     BindingResult bindingResult,
                                                                     ServletWebRequest request) {
 
+        return eventRepository.findOptionalByShortName(eventName).map(event -> {
+            try (var admission = reservationAdmissionManager.tryAdmit(event, request.getHeader(ReservationAdmissionManager.QUEUE_TOKEN_HEADER))) {
+                if(!admission.isAdmitted()) {
+                    return EventApiV2Controller.<ValidatedResponse<String>>admissionDenied(admission);
+                }
+                return doReserveTickets(event, lang, reservation, bindingResult, request);
+            }
+        }).orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
+    /**
+     * Returns the position of a queued reservation request. See {@link ReservationAdmissionManager}.
+     * Tokens are valid only on the node which issued them: the client must repeat the reservation request without
+     * the token if this endpoint replies with <code>404</code>.
+     *
+     * @param eventName
+     * @param token
+     * @return
+     */
+    @GetMapping("event/{eventName}/reserve-tickets/queue/{token}")
+    public ResponseEntity<ReservationQueueStatus> getReservationQueueStatus(@PathVariable("eventName") String eventName,
+                                                                            @PathVariable("token") String token) {
+        return eventRepository.findOptionalByShortName(eventName)
+            .flatMap(event -> reservationAdmissionManager.getQueuePosition(event, token))
+            .map(a -> ResponseEntity.ok().headers(getCorsHeaders()).body(new ReservationQueueStatus(a.getToken(), a.getPosition(), a.getRetryAfterSeconds())))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
-        Optional<ResponseEntity<ValidatedResponse<String>>> r = eventRepository.findOptionalByShortName(eventName).map(event -> {
+    private static <T> ResponseEntity<T> admissionDenied(ReservationAdmissionManager.Admission admission) {
+        var headers = getCorsHeaders();
+        headers.add(HttpHeaders.RETRY_AFTER, String.valueOf(admission.getRetryAfterSeconds()));
+        if(admission.getStatus() == ReservationAdmissionManager.Admission.Status.QUEUED) {
+            headers.add(ReservationAdmissionManager.QUEUE_TOKEN_HEADER, admission.getToken());
+            headers.add("Access-Control-Expose-Headers", ReservationAdmissionManager.QUEUE_TOKEN_HEADER + ", " + HttpHeaders.RETRY_AFTER);
+            return new ResponseEntity<>(headers, HttpStatus.ACCEPTED);
+        }
+        return new ResponseEntity<>(headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
 
-            Locale locale = LocaleUtil.forLanguageTag(lang, event);
+    private ResponseEntity<ValidatedResponse<String>> doReserveTickets(Event event,
+                                                                       String lang,
+                                                                       ReservationForm reservation,
+                                                                       BindingResult bindingResult,
+                                                                       ServletWebRequest request) {
 
-            Optional<ValidatedResponse<Pair<Optional<SpecialPrice>, Optional<PromoCodeDiscount>>>> codeCheck = Optional.empty();
+        Locale locale = LocaleUtil.forLanguageTag(lang, event);
 
-            if(StringUtils.trimToNull(reservation.getPromoCode()) != null) {
-                var resCheck = checkCode(event, reservation.getPromoCode());
-                if(!resCheck.isSuccess()) {
-                    bindingResult.reject(ErrorsCode.STEP_1_CODE_NOT_FOUND, ErrorsCode.STEP_1_CODE_NOT_FOUND);
-                }
-                codeCheck = Optional.of(resCheck);
+        String idempotencyKey = StringUtils.trimToNull(request.getHeader(IDEMPOTENCY_KEY_HEADER));
+        String payloadHash = null;
+        if(idempotencyKey != null) {
+            if(!isValidIdempotencyKey(idempotencyKey)) {
+                return ResponseEntity.badRequest().headers(getCorsHeaders()).build();
+            }
+            // a retried request must not be rejected because of the (already used) captcha
+            payloadHash = reservation.payloadHash();
+            var existing = findReservationByIdempotencyKey(event, idempotencyKey, payloadHash, bindingResult);
+            if(existing.isPresent() || bindingResult.hasErrors()) {
+                return reservationResponse(bindingResult, existing);
             }
+        }
 
-            Optional<String> promoCodeDiscount = codeCheck.map(ValidatedResponse::getValue).flatMap(Pair::getRight).map(PromoCodeDiscount::getPromoCode);
-            var configurationValues = configurationManager.getFor(List.of(
-                ENABLE_CAPTCHA_FOR_TICKET_SELECTION,
-                RECAPTCHA_API_KEY), ConfigurationLevel.event(event));
+        Optional<ValidatedResponse<Pair<Optional<SpecialPrice>, Optional<PromoCodeDiscount>>>> codeCheck = Optional.empty();
 
-            if (isCaptchaInvalid(reservation.getCaptcha(), request.getRequest(), configurationValues)) {
-                bindingResult.reject(ErrorsCode.STEP_2_CAPTCHA_VALIDATION_FAILED);
+        if(StringUtils.trimToNull(reservation.getPromoCode()) != null) {
+            var resCheck = checkCode(event, reservation.getPromoCode());
+            if(!resCheck.isSuccess()) {
+                bindingResult.reject(ErrorsCode.STEP_1_CODE_NOT_FOUND, ErrorsCode.STEP_1_CODE_NOT_FOUND);
             }
+            codeCheck = Optional.of(resCheck);
+        }
 
-            Optional<String> reservationIdRes = createTicketReservation(reservation, bindingResult, request, event, locale, promoCodeDiscount);
+        Optional<String> promoCodeDiscount = codeCheck.map(ValidatedResponse::getValue).flatMap(Pair::getRight).map(PromoCodeDiscount::getPromoCode);
+        var configurationValues = configurationManager.getEventConfiguration(event).getAll(List.of(
+            ENABLE_CAPTCHA_FOR_TICKET_SELECTION,
+            RECAPTCHA_API_KEY));
 
-            if (bindingResult.hasErrors()) {
-                return new ResponseEntity<>(ValidatedResponse.toResponse(bindingResult, (String) null), getCorsHeaders(), HttpStatus.UNPROCESSABLE_ENTITY);
-            } else {
-                var reservationIdentifier = reservationIdRes.orElseThrow(IllegalStateException::new);
-                return ResponseEntity.ok(new ValidatedResponse<>(ValidationResult.success(), reservationIdentifier));
-            }
-        });
+        if (isCaptchaInvalid(reservation.getCaptcha(), request.getRequest(), configurationValues)) {
+            bindingResult.reject(ErrorsCode.STEP_2_CAPTCHA_VALIDATION_FAILED);
+        }
+
+        Optional<String> reservationIdRes = createTicketReservation(reservation, bindingResult, request, event, locale, promoCodeDiscount, idempotencyKey, payloadHash);
+        return reservationResponse(bindingResult, reservationIdRes);
+    }
+
+    private static ResponseEntity<ValidatedResponse<String>> reservationResponse(BindingResult bindingResult, Optional<String> reservationIdRes) {
+        if (bindingResult.hasErrors()) {
+            return new ResponseEntity<>(ValidatedResponse.toResponse(bindingResult, (String) null), getCorsHeaders(), HttpStatus.UNPROCESSABLE_ENTITY);
+        } else {
+            var reservationIdentifier = reservationIdRes.orElseThrow(IllegalStateException::new);
+            return ResponseEntity.ok(new ValidatedResponse<>(ValidationResult.success(), reservationIdentifier));
+        }
+    }
 
-        return r.orElseGet(() -> ResponseEntity.notFound().build());
+    /**
+     * The key must be random, e.g. a UUID: a key that is too short or too repetitive is rejected, since another client
+     * could use it to obtain the ID of the reservation.
+     */
+    static boolean isValidIdempotencyKey(String idempotencyKey) {
+        return idempotencyKey.length() >= MIN_IDEMPOTENCY_KEY_LENGTH
+            && idempotencyKey.length() <= MAX_IDEMPOTENCY_KEY_LENGTH
+            && idempotencyKey.chars().distinct().count() >= MIN_IDEMPOTENCY_KEY_DISTINCT_CHARS;
+    }
+
+    private Optional<String> findReservationByIdempotencyKey(Event event, String idempotencyKey, String payloadHash, BindingResult bindingResult) {
+        try {
+            return ticketReservationManager.findReservationByIdempotencyKey(event, idempotencyKey, payloadHash);
+        } catch (TicketReservationManager.IdempotencyKeyConflictException e) {
+            bindingResult.reject(ErrorsCode.STEP_1_IDEMPOTENCY_KEY_CONFLICT);
+            return Optional.empty();
+        }
     }
 
     private Optional<String> createTicketReservation(ReservationForm reservation,
@@ -476,15 +597,24 @@ public class EventApiV2Controller {
                                                      ServletWebRequest request,
                                                      Event event,
                                                      Locale locale,
-                                                     Optional<String> promoCodeDiscount) {
+                                                     Optional<String> promoCodeDiscount,
+                                                     String idempotencyKey,
+                                                     String payloadHash) {
         return reservation.validate(bindingResult, ticketReservationManager, eventManager, event).flatMap(selected -> {
             Date expiration = DateUtils.addMinutes(new Date(), ticketReservationManager.getReservationTimeout(event));
             try {
                 String reservationId = ticketReservationManager.createTicketReservation(event,
                     selected.getLeft(), selected.getRight(), expiration,
                     promoCodeDiscount,
-                    locale, false);
+                    locale, false, idempotencyKey, payloadHash);
                 return Optional.of(reservationId);
+            } catch (TicketReservationManager.IdempotencyKeyConflictException conflict) {
+                // a concurrent request with the same key might have been completed in the meantime
+                var existing = findReservationByIdempotencyKey(event, idempotencyKey, payloadHash, bindingResult);
+                if(existing.isEmpty() && !bindingResult.hasErrors()) {
+                    bindingResult.reject(ErrorsCode.STEP_1_IDEMPOTENCY_KEY_CONFLICT);
+                }
+                return existing;
             } catch (TicketReservationManager.NotEnoughTicketsException nete) {
                 bindingResult.reject(ErrorsCode.STEP_1_NOT_ENOUGH_TICKETS);
             } catch (TicketReservationManager.MissingSpecialPriceTokenException missing) {
@@ -598,7 +728,7 @@ public class EventApiV2Controller {
         reservation.setTicketCategoryId(ticketCategoryId);
         form.setReservation(Collections.singletonList(reservation));
         var bindingRes = new BeanPropertyBindingResult(form, "reservationForm");
-        return Pair.of(createTicketReservation(form, bindingRes, request, event, locale, promoCodeDiscount.map(PromoCodeDiscount::getPromoCode)), bindingRes);
+        return Pair.of(createTicketReservation(form, bindingRes, request, event, locale, promoCodeDiscount.map(PromoCodeDiscount::getPromoCode), null, null), bindingRes);
     }
 
     private boolean shouldDisplayRestrictedCategory(Optional<SpecialPrice> specialCode, alfio.model.TicketCategory c, Optional<PromoCodeDiscount> optionalPromoCode) {
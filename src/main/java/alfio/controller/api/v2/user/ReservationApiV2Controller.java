@@ -16,6 +16,7 @@
  */
 package alfio.controller.api.v2.user;
 
+import alfio.controller.api.support.ConditionalResponses;
 import alfio.controller.api.support.TicketHelper;
 import alfio.controller.api.v2.model.ReservationInfo;
 import alfio.controller.api.v2.model.ReservationInfo.TicketsByTicketCategory;
@@ -30,6 +31,7 @@ import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.payment.PaymentSpecification;
 import alfio.manager.payment.StripeCreditCardManager;
 import alfio.manager.support.PaymentResult;
+import alfio.manager.support.PdfRenderingExecutor;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.manager.system.ReservationPriceCalculator;
@@ -47,6 +49,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.context.MessageSourceResolvable;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -88,10 +91,12 @@ public class ReservationApiV2Controller {
     private final FileUploadManager fileUploadManager;
     private final TemplateManager templateManager;
     private final ExtensionManager extensionManager;
+    private final PdfRenderingExecutor pdfRenderingExecutor;
     private final TicketHelper ticketHelper;
     private final EuVatChecker vatChecker;
     private final RecaptchaService recaptchaService;
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
+    private final ConditionalResponses conditionalResponses;
 
     /**
      * Note: now it will return for any states of the reservation.
@@ -104,6 +109,15 @@ public class ReservationApiV2Controller {
     public ResponseEntity<ReservationInfo> getReservationInfo(@PathVariable("eventName") String eventName,
                                                               @PathVariable("reservationId") String reservationId) {
 
+        var reservationHash = ticketReservationRepository.findContentHash(eventName, reservationId);
+        if(reservationHash.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return conditionalResponses.respond("reservation", ConditionalResponses.eTag(reservationHash.get()),
+            null, CacheControl.noCache().cachePrivate(), () -> buildReservationInfo(eventName, reservationId));
+    }
+
+    private ResponseEntity<ReservationInfo> buildReservationInfo(String eventName, String reservationId) {
         Optional<ReservationInfo> res = eventRepository.findOptionalByShortName(eventName).flatMap(event -> ticketReservationManager.findById(reservationId).flatMap(reservation -> {
 
             var orderSummary = ticketReservationManager.orderSummaryForReservationId(reservationId, event);
@@ -541,7 +555,7 @@ public class ReservationApiV2Controller {
                 FileUtil.sendHeaders(response, event.getShortName(), reservation.getId(), forInvoice ? "invoice" : "receipt");
                 TemplateProcessor.buildReceiptOrInvoicePdf(event, fileUploadManager, LocaleUtil.forLanguageTag(reservation.getUserLanguage()),
                     templateManager, billingModel, forInvoice ? TemplateResource.INVOICE_PDF : TemplateResource.RECEIPT_PDF,
-                    extensionManager, response.getOutputStream());
+                    extensionManager, pdfRenderingExecutor, response.getOutputStream());
                 return ResponseEntity.ok(null);
             } catch (IOException ioe) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
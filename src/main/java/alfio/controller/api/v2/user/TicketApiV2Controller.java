@@ -16,6 +16,7 @@
  */
 package alfio.controller.api.v2.user;
 
+import alfio.controller.api.support.ConditionalResponses;
 import alfio.controller.api.support.TicketHelper;
 import alfio.controller.api.v2.model.TicketInfo;
 import alfio.controller.api.v2.model.ValidatedResponse;
@@ -25,8 +26,10 @@ import alfio.controller.support.TemplateProcessor;
 import alfio.manager.ExtensionManager;
 import alfio.manager.FileUploadManager;
 import alfio.manager.NotificationManager;
+import alfio.manager.TicketPdfCache;
 import alfio.manager.TicketReservationManager;
 import alfio.manager.i18n.MessageSourceManager;
+import alfio.manager.support.PdfRenderingExecutor;
 import alfio.model.Event;
 import alfio.model.Ticket;
 import alfio.model.TicketCategory;
@@ -34,11 +37,13 @@ import alfio.model.TicketReservation;
 import alfio.model.transaction.PaymentProxy;
 import alfio.model.user.Organization;
 import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.util.ImageUtil;
 import alfio.util.LocaleUtil;
 import alfio.util.TemplateManager;
 import lombok.AllArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -62,10 +67,14 @@ public class TicketApiV2Controller {
     private final TicketCategoryRepository ticketCategoryRepository;
     private final MessageSourceManager messageSourceManager;
     private final ExtensionManager extensionManager;
+    private final PdfRenderingExecutor pdfRenderingExecutor;
+    private final TicketPdfCache ticketPdfCache;
     private final FileUploadManager fileUploadManager;
     private final OrganizationRepository organizationRepository;
     private final TemplateManager templateManager;
     private final NotificationManager notificationManager;
+    private final TicketRepository ticketRepository;
+    private final ConditionalResponses conditionalResponses;
 
 
     @GetMapping(value = {
@@ -112,7 +121,7 @@ public class TicketApiV2Controller {
                 TemplateProcessor.renderPDFTicket(LocaleUtil.getTicketLanguage(ticket, LocaleUtil.forLanguageTag(ticketReservation.getUserLanguage(), event)), event, ticketReservation,
                     ticket, ticketCategory, organization,
                     templateManager, fileUploadManager,
-                    reservationID, os, ticketHelper.buildRetrieveFieldValuesFunction(), extensionManager);
+                    reservationID, os, ticketHelper.buildRetrieveFieldValuesFunction(), extensionManager, pdfRenderingExecutor, ticketPdfCache);
             } catch (IOException ioe) {
                 throw new IllegalStateException(ioe);
             }
@@ -162,6 +171,16 @@ public class TicketApiV2Controller {
     public ResponseEntity<TicketInfo> getTicketInfo(@PathVariable("eventName") String eventName,
                                                     @PathVariable("ticketIdentifier") String ticketIdentifier) {
 
+        var ticketHash = ticketRepository.findContentHash(eventName, ticketIdentifier);
+        if(ticketHash.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return conditionalResponses.respond("ticket", ConditionalResponses.eTag(ticketHash.get()),
+            null, CacheControl.noCache().cachePrivate(), () -> buildTicketInfo(eventName, ticketIdentifier));
+    }
+
+    private ResponseEntity<TicketInfo> buildTicketInfo(String eventName, String ticketIdentifier) {
+
         //TODO: cleanup, we load useless data here!
 
         var oData = ticketReservationManager.fetchCompleteAndAssigned(eventName, ticketIdentifier);
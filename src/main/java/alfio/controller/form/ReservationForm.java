@@ -28,7 +28,9 @@ import alfio.model.modification.AdditionalServiceReservationModification;
 import alfio.model.modification.TicketReservationModification;
 import alfio.model.modification.TicketReservationWithOptionalCodeModification;
 import alfio.util.ErrorsCode;
+import alfio.util.Json;
 import lombok.Data;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.validation.Errors;
@@ -37,6 +39,7 @@ import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -70,6 +73,14 @@ public class ReservationForm implements Serializable {
             .collect(toList());
     }
 
+    /**
+     * @return a hash of the selection, used to detect whether a request sent with an idempotency key has been modified.
+     * The captcha is not included since it cannot be reused
+     */
+    public String payloadHash() {
+        return DigestUtils.sha256Hex(Json.toJson(Arrays.asList(StringUtils.trimToNull(promoCode), selected(), selectedAdditionalServices())));
+    }
+
     private int ticketSelectionCount() {
         return selected().stream().mapToInt(TicketReservationModification::getAmount).sum();
     }
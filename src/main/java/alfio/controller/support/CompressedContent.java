@@ -0,0 +1,128 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Static content kept in memory, together with its gzip-compressed variant.
+ */
+public final class CompressedContent {
+
+    private static final String GZIP = "gzip";
+
+    private final byte[] content;
+    private final byte[] gzipContent;
+    private final String eTag;
+    private final String gzipETag;
+
+    private CompressedContent(byte[] content) {
+        this.content = content;
+        this.gzipContent = gzip(content);
+        var digest = DigestUtils.sha256Hex(content);
+        // each content-coding is a different representation, so it needs its own strong validator (RFC 7232, 2.3.3)
+        this.eTag = "\"" + digest + "\"";
+        this.gzipETag = "\"" + digest + "-" + GZIP + "\"";
+    }
+
+    public static CompressedContent load(Resource resource) throws IOException {
+        try (var is = resource.getInputStream()) {
+            return new CompressedContent(is.readAllBytes());
+        }
+    }
+
+    /**
+     * Writes the content, compressed if the client accepts it. Replies with <code>304 Not Modified</code> if the
+     * client already has it.
+     *
+     * @param request the request
+     * @param response the response. The content type must be already set
+     * @throws IOException if the content cannot be written
+     */
+    public void writeTo(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.ETAG, gzip ? gzipETag : eTag);
+        if(matches(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        byte[] body = content;
+        if(gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+            body = gzipContent;
+        }
+        response.setContentLength(body.length);
+        try (var os = response.getOutputStream()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Both variants have the same content, so the client's copy is still valid whichever encoding it has received.
+     */
+    private boolean matches(String ifNoneMatch) {
+        if(StringUtils.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+            .map(String::trim)
+            .anyMatch(tag -> tag.equals(eTag) || tag.equals(gzipETag));
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if(StringUtils.isBlank(acceptEncoding)) {
+            return false;
+        }
+        return Arrays.stream(acceptEncoding.split(","))
+            .map(String::trim)
+            .anyMatch(coding -> {
+                var parts = coding.split(";");
+                var name = parts[0].trim();
+                return (name.equalsIgnoreCase(GZIP) || name.equals("*")) && !isRejected(parts);
+            });
+    }
+
+    private static boolean isRejected(String[] parts) {
+        return Arrays.stream(parts)
+            .skip(1)
+            .map(String::trim)
+            .filter(p -> p.startsWith("q="))
+            .anyMatch(p -> p.substring(2).matches("0(\\.0{0,3})?"));
+    }
+
+    private static byte[] gzip(byte[] content) {
+        var out = new ByteArrayOutputStream(content.length / 2);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
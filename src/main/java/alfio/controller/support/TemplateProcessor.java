@@ -18,6 +18,8 @@ package alfio.controller.support;
 
 import alfio.manager.ExtensionManager;
 import alfio.manager.FileUploadManager;
+import alfio.manager.TicketPdfCache;
+import alfio.manager.support.PdfRenderingExecutor;
 import alfio.manager.support.PartialTicketTextGenerator;
 import alfio.model.*;
 import alfio.model.user.Organization;
@@ -33,22 +35,31 @@ import com.openhtmltopdf.extend.FSStreamFactory;
 import com.openhtmltopdf.pdfboxout.PdfBoxRenderer;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.*;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Log4j2
 public final class TemplateProcessor {
 
+    /**
+     * Part of the key of the cached ticket PDFs. Must be changed if the PDF rendering changes.
+     */
+    private static final String TICKET_PDF_VERSION = "ticket-pdf-1:";
+
     private static final Cache<String, File> FONT_CACHE = Caffeine.newBuilder()
         .removalListener((String key, File value, RemovalCause cause) -> {
             if(value != null) {
@@ -97,21 +108,65 @@ public final class TemplateProcessor {
                                        String reservationID,
                                        OutputStream os,
                                        Function<Ticket, List<TicketFieldConfigurationDescriptionAndValue>> retrieveFieldValues,
-                                       ExtensionManager extensionManager) throws IOException {
+                                       ExtensionManager extensionManager,
+                                       PdfRenderingExecutor pdfRenderingExecutor,
+                                       TicketPdfCache ticketPdfCache) throws IOException {
         Optional<TemplateResource.ImageData> imageData = extractImageModel(event, fileUploadManager);
         List<TicketFieldConfigurationDescriptionAndValue> fields = retrieveFieldValues.apply(ticket);
         Map<String, Object> model = TemplateResource.buildModelForTicketPDF(organization, event, ticketReservation, ticketCategory, ticket, imageData, reservationID,
             fields.stream().collect(Collectors.toMap(TicketFieldConfigurationDescriptionAndValue::getName, TicketFieldConfigurationDescriptionAndValue::getValueDescription)));
 
-        String page = templateManager.renderTemplate(event, TemplateResource.TICKET_PDF, model, language);
-        renderToPdf(page, os, extensionManager, event);
+        if(extensionManager.isPdfTransformationDefined(event)) {
+            renderToPdf(out -> templateManager.renderTemplate(event, TemplateResource.TICKET_PDF, model, language, out), os, extensionManager, event,
+                TemplateResource.TICKET_PDF, pdfRenderingExecutor);
+            return;
+        }
+
+        // the rendered page contains everything that ends up in the PDF (ticket, template, locale, QR code),
+        // so its hash identifies the PDF
+        var page = new RenderedPage();
+        templateManager.renderTemplate(event, TemplateResource.TICKET_PDF, model, language, page);
+        String id = page.sha256Hex(TICKET_PDF_VERSION);
+        var cached = ticketPdfCache.find(id);
+        if(cached.isPresent()) {
+            os.write(cached.get());
+            return;
+        }
+        byte[] pdf = pdfRenderingExecutor.render(TemplateResource.TICKET_PDF, out -> writePdf(page.toReader(), out));
+        ticketPdfCache.store(id, ticket.getId(), pdf);
+        os.write(pdf);
     }
 
-    public static void renderToPdf(String page, OutputStream os, ExtensionManager extensionManager, Event event) throws IOException {
+    public static void renderToPdf(String page, OutputStream os, ExtensionManager extensionManager, Event event,
+                                   TemplateResource documentType, PdfRenderingExecutor pdfRenderingExecutor) throws IOException {
 
         if(extensionManager.handlePdfTransformation(page, event, os)) {
             return;
         }
+        os.write(pdfRenderingExecutor.render(documentType, out -> writePdf(new StringReader(page), out)));
+    }
+
+    /**
+     * Renders the page and converts it to PDF. The rendered page is parsed directly from the buffer it has been
+     * written to, unless a PDF transformation extension is defined, as extensions expect the page as String.
+     * <p>
+     * The page is rendered on the calling thread, while the PDF layout runs on the {@link PdfRenderingExecutor}.
+     * The given stream is written only once the PDF is complete.
+     */
+    public static void renderToPdf(Consumer<Writer> pageRenderer, OutputStream os, ExtensionManager extensionManager, Event event,
+                                   TemplateResource documentType, PdfRenderingExecutor pdfRenderingExecutor) throws IOException {
+        if(extensionManager.isPdfTransformationDefined(event)) {
+            var page = new StringWriter();
+            pageRenderer.accept(page);
+            renderToPdf(page.toString(), os, extensionManager, event, documentType, pdfRenderingExecutor);
+            return;
+        }
+        var page = new RenderedPage();
+        pageRenderer.accept(page);
+        os.write(pdfRenderingExecutor.render(documentType, out -> writePdf(page.toReader(), out)));
+    }
+
+    private static void writePdf(Reader page, OutputStream os) throws IOException {
         PdfRendererBuilder builder = new PdfRendererBuilder();
         PDDocument doc = new PDDocument(MemoryUsageSetting.setupTempFileOnly());
         builder.usePDDocument(doc);
@@ -137,6 +192,27 @@ public final class TemplateProcessor {
         }
     }
 
+    /**
+     * Exposes the written characters as {@link Reader} without copying them.
+     */
+    private static class RenderedPage extends CharArrayWriter {
+
+        private RenderedPage() {
+            super(8192);
+        }
+
+        Reader toReader() {
+            return new CharArrayReader(buf, 0, count);
+        }
+
+        String sha256Hex(String prefix) {
+            var digest = DigestUtils.getSha256Digest();
+            digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+            digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(buf, 0, count)));
+            return Hex.encodeHexString(digest.digest());
+        }
+    }
+
     private static final String DEJA_VU_SANS = "/alfio/font/DejaVuSansMono.ttf";
 
     private static final Function<String, File> LOAD_DEJA_VU_SANS_FONT = classPathResource -> {
@@ -209,33 +285,34 @@ public final class TemplateProcessor {
                                                    Map<String, Object> model,
                                                    TemplateResource templateResource,
                                                    ExtensionManager extensionManager,
+                                                   PdfRenderingExecutor pdfRenderingExecutor,
                                                    OutputStream os) {
         try {
-            String html = renderReceiptOrInvoicePdfTemplate(event, fileUploadManager, language, templateManager, model, templateResource);
-            renderToPdf(html, os, extensionManager, event);
+            addImageModel(event, fileUploadManager, model);
+            renderToPdf(out -> templateManager.renderTemplate(event, templateResource, model, language, out), os, extensionManager, event,
+                templateResource, pdfRenderingExecutor);
             return true;
         } catch (IOException ioe) {
             return false;
         }
     }
 
-    public static String renderReceiptOrInvoicePdfTemplate(Event event, FileUploadManager fileUploadManager, Locale language, TemplateManager templateManager, Map<String, Object> model, TemplateResource templateResource) {
+    private static void addImageModel(Event event, FileUploadManager fileUploadManager, Map<String, Object> model) {
         extractImageModel(event, fileUploadManager).ifPresent(imageData -> {
             model.put("eventImage", imageData.getEventImage());
             model.put("imageWidth", imageData.getImageWidth());
             model.put("imageHeight", imageData.getImageHeight());
         });
-        return templateManager.renderTemplate(event, templateResource, model, language);
     }
 
-    public static Optional<byte[]> buildBillingDocumentPdf(BillingDocument.Type documentType, Event event, FileUploadManager fileUploadManager, Locale language, TemplateManager templateManager, Map<String, Object> model, ExtensionManager extensionManager) {
+    public static Optional<byte[]> buildBillingDocumentPdf(BillingDocument.Type documentType, Event event, FileUploadManager fileUploadManager, Locale language, TemplateManager templateManager, Map<String, Object> model, ExtensionManager extensionManager, PdfRenderingExecutor pdfRenderingExecutor) {
         switch (documentType) {
             case INVOICE:
-                return buildInvoicePdf(event, fileUploadManager, language, templateManager, model, extensionManager);
+                return buildInvoicePdf(event, fileUploadManager, language, templateManager, model, extensionManager, pdfRenderingExecutor);
             case RECEIPT:
-                return buildReceiptPdf(event, fileUploadManager, language, templateManager, model, extensionManager);
+                return buildReceiptPdf(event, fileUploadManager, language, templateManager, model, extensionManager, pdfRenderingExecutor);
             case CREDIT_NOTE:
-                return buildCreditNotePdf(event, fileUploadManager, language, templateManager, model, extensionManager);
+                return buildCreditNotePdf(event, fileUploadManager, language, templateManager, model, extensionManager, pdfRenderingExecutor);
             default:
                 throw new IllegalStateException(documentType + " not supported");
         }
@@ -247,9 +324,10 @@ public final class TemplateProcessor {
                                               TemplateManager templateManager,
                                               Map<String, Object> model,
                                               TemplateResource templateResource,
-                                              ExtensionManager extensionManager) {
+                                              ExtensionManager extensionManager,
+                                              PdfRenderingExecutor pdfRenderingExecutor) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        boolean res = buildReceiptOrInvoicePdf(event, fileUploadManager, language, templateManager, model, templateResource, extensionManager, baos);
+        boolean res = buildReceiptOrInvoicePdf(event, fileUploadManager, language, templateManager, model, templateResource, extensionManager, pdfRenderingExecutor, baos);
         return res ? Optional.of(baos.toByteArray()) : Optional.empty();
     }
 
@@ -258,8 +336,9 @@ public final class TemplateProcessor {
                                                    Locale language,
                                                    TemplateManager templateManager,
                                                    Map<String, Object> model,
-                                                   ExtensionManager extensionManager) {
-        return buildFrom(event, fileUploadManager, language, templateManager, model, TemplateResource.RECEIPT_PDF, extensionManager);
+                                                   ExtensionManager extensionManager,
+                                                   PdfRenderingExecutor pdfRenderingExecutor) {
+        return buildFrom(event, fileUploadManager, language, templateManager, model, TemplateResource.RECEIPT_PDF, extensionManager, pdfRenderingExecutor);
     }
 
     public static Optional<byte[]> buildInvoicePdf(Event event,
@@ -267,8 +346,9 @@ public final class TemplateProcessor {
                                                    Locale language,
                                                    TemplateManager templateManager,
                                                    Map<String, Object> model,
-                                                   ExtensionManager extensionManager) {
-        return buildFrom(event, fileUploadManager, language, templateManager, model, TemplateResource.INVOICE_PDF, extensionManager);
+                                                   ExtensionManager extensionManager,
+                                                   PdfRenderingExecutor pdfRenderingExecutor) {
+        return buildFrom(event, fileUploadManager, language, templateManager, model, TemplateResource.INVOICE_PDF, extensionManager, pdfRenderingExecutor);
     }
 
     public static Optional<byte[]> buildCreditNotePdf(Event event,
@@ -276,7 +356,8 @@ public final class TemplateProcessor {
                                                       Locale language,
                                                       TemplateManager templateManager,
                                                       Map<String, Object> model,
-                                                      ExtensionManager extensionManager) {
-        return buildFrom(event, fileUploadManager, language, templateManager, model, TemplateResource.CREDIT_NOTE_PDF, extensionManager);
+                                                      ExtensionManager extensionManager,
+                                                      PdfRenderingExecutor pdfRenderingExecutor) {
+        return buildFrom(event, fileUploadManager, language, templateManager, model, TemplateResource.CREDIT_NOTE_PDF, extensionManager, pdfRenderingExecutor);
     }
 }
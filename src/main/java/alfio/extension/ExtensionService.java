@@ -240,6 +240,10 @@ public class ExtensionService {
         return res;
     }
 
+    public boolean hasActiveScriptsForEvent(String event, String basePath, boolean async) {
+        return !getActiveScriptsForEvent(event, basePath, async).isEmpty();
+    }
+
     public void executeScriptAsync(String event, String basePath, Map<String, Object> payload) {
         List<ScriptPathNameHash> activePaths = getActiveScriptsForEvent(event, basePath, true);
         Map<String, Object> input = new HashMap<>(payload);
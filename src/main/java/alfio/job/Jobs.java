@@ -53,10 +53,13 @@ import java.util.Map;
 public class Jobs {
 
 
+    private static final int ONE_SECOND = 1000;
     private static final int ONE_MINUTE = 1000 * 60;
     private static final int THIRTY_SECONDS = 1000 * 30;
     private static final int FIVE_SECONDS = 1000 * 5;
     private static final int THIRTY_MINUTES = 30 * ONE_MINUTE;
+    private static final int FIVE_MINUTES = 5 * ONE_MINUTE;
+    private static final int EXPIRED_RESERVATIONS_BATCH_SIZE = 100;
 
     private final AdminReservationRequestManager adminReservationRequestManager;
     private final ConfigurationManager configurationManager;
@@ -69,6 +72,9 @@ public class Jobs {
     private final UserManager userManager;
     private final WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
     private final AdminJobManager adminJobManager;
+    private final ReservationExpirationScheduler reservationExpirationScheduler;
+    private final TicketStatisticsManager ticketStatisticsManager;
+    private final TicketPdfCache ticketPdfCache;
 
 
     //cron each minute: "0 0/1 * * * ?"
@@ -83,6 +89,16 @@ public class Jobs {
         }
     }
 
+    @Scheduled(fixedRate = ONE_MINUTE * 60)
+    public void cleanupTicketPdfCache() {
+        log.trace("running job cleanupTicketPdfCache");
+        try {
+            ticketPdfCache.cleanupExpired();
+        } finally {
+            log.trace("end job cleanupTicketPdfCache");
+        }
+    }
+
 
     //run each hour
     @Scheduled(cron = "0 0 0/1 * * ?")
@@ -170,7 +186,26 @@ public class Jobs {
     }
 
 
-    @Scheduled(fixedRate = THIRTY_SECONDS)
+    @Scheduled(fixedDelay = ONE_SECOND)
+    public void cleanupScheduledExpiredReservations() {
+        log.trace("running job cleanupScheduledExpiredReservations");
+        try {
+            Date now = new Date();
+            List<String> expired;
+            // each batch is released in a separate transaction
+            while(!(expired = reservationExpirationScheduler.pollExpired(now, EXPIRED_RESERVATIONS_BATCH_SIZE)).isEmpty()) {
+                ticketReservationManager.cleanupExpiredReservations(expired, now);
+            }
+        } finally {
+            log.trace("end job cleanupScheduledExpiredReservations");
+        }
+    }
+
+    /**
+     * Safety net for the reservations which are not tracked by {@link ReservationExpirationScheduler},
+     * plus cleanup of the expired offline payments and detection of the stuck payments.
+     */
+    @Scheduled(fixedRate = FIVE_MINUTES)
     public void cleanupExpiredPendingReservation() {
         log.trace("running job cleanupExpiredPendingReservation");
         try {
@@ -204,4 +239,24 @@ public class Jobs {
             log.trace("end job checkOfflinePaymentsStatus");
         }
     }
+
+    @Scheduled(fixedRate = FIVE_MINUTES)
+    public void compactTicketStatistics() {
+        log.trace("running job compactTicketStatistics");
+        try {
+            ticketStatisticsManager.compactCounters();
+        } finally {
+            log.trace("end job compactTicketStatistics");
+        }
+    }
+
+    @Scheduled(fixedRate = THIRTY_MINUTES)
+    public void checkTicketStatistics() {
+        log.trace("running job checkTicketStatistics");
+        try {
+            ticketStatisticsManager.checkConsistency();
+        } finally {
+            log.trace("end job checkTicketStatistics");
+        }
+    }
 }
@@ -20,6 +20,7 @@ import alfio.controller.support.TemplateProcessor;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.payment.PaymentSpecification;
 import alfio.manager.support.DuplicateReferenceException;
+import alfio.manager.support.PdfRenderingExecutor;
 import alfio.manager.system.ReservationPriceCalculator;
 import alfio.model.*;
 import alfio.model.TicketReservation.TicketReservationStatus;
@@ -105,8 +106,10 @@ public class AdminReservationManager {
     private final AuditingRepository auditingRepository;
     private final UserRepository userRepository;
     private final ExtensionManager extensionManager;
+    private final PdfRenderingExecutor pdfRenderingExecutor;
     private final BillingDocumentRepository billingDocumentRepository;
     private final FileUploadManager fileUploadManager;
+    private final TicketPdfCache ticketPdfCache;
 
     //the following methods have an explicit transaction handling, therefore the @Transactional annotation is not helpful here
     public Result<Triple<TicketReservation, List<Ticket>, Event>> confirmReservation(String eventName, String reservationId, String username, Notification notification) {
@@ -236,7 +239,7 @@ public class AdminReservationManager {
 
     private Result<Boolean> performUpdate(String reservationId, Event event, TicketReservation r, AdminReservationModification arm, String username) {
         ticketReservationManager.ensureBillingDocumentIsPresent(event, r, username);
-        ticketReservationRepository.updateValidity(reservationId, Date.from(arm.getExpiration().toZonedDateTime(event.getZoneId()).toInstant()));
+        ticketReservationManager.updateReservationValidity(reservationId, Date.from(arm.getExpiration().toZonedDateTime(event.getZoneId()).toInstant()));
         if(arm.isUpdateContactData()) {
             AdminReservationModification.CustomerData customerData = arm.getCustomerData();
             ticketReservationRepository.updateTicketReservation(reservationId, r.getStatus().name(), customerData.getEmailAddress(),
@@ -624,7 +627,7 @@ public class AdminReservationManager {
     public Result<Pair<BillingDocument, byte[]>> getSingleBillingDocumentAsPdf(String eventName, String reservationId, long documentId, String username) {
         return loadReservation(eventName, reservationId, username).map(res -> {
             BillingDocument billingDocument = billingDocumentRepository.findById(documentId, reservationId).orElseThrow(IllegalArgumentException::new);
-            Function<Map<String, Object>, Optional<byte[]>> pdfGenerator = model -> TemplateProcessor.buildBillingDocumentPdf(billingDocument.getType(), res.getRight(), fileUploadManager, LocaleUtil.forLanguageTag(res.getLeft().getUserLanguage()), templateManager, model, extensionManager);
+            Function<Map<String, Object>, Optional<byte[]>> pdfGenerator = model -> TemplateProcessor.buildBillingDocumentPdf(billingDocument.getType(), res.getRight(), fileUploadManager, LocaleUtil.forLanguageTag(res.getLeft().getUserLanguage()), templateManager, model, extensionManager, pdfRenderingExecutor);
             Map<String, Object> billingModel = billingDocument.getModel();
             return Pair.of(billingDocument, pdfGenerator.apply(billingModel).orElse(null));
         });
@@ -739,6 +742,7 @@ public class AdminReservationManager {
         List<String> ticketUUIDs = ticketRepository.findUUIDs(ticketIds);
         int[] results = ticketRepository.batchReleaseTickets(reservationId, ticketIds, event);
         Validate.isTrue(Arrays.stream(results).sum() == ticketIds.size(), "Failed to update tickets");
+        ticketPdfCache.removeForTickets(ticketIds);
         if(!removeReservation) {
             if(forceInvoiceReceiptUpdate) {
                 auditingRepository.insert(reservationId, userId, event.getId(), FORCED_UPDATE_INVOICE, date, RESERVATION, reservationId);
@@ -36,6 +36,7 @@ import alfio.repository.*;
 import alfio.repository.user.OrganizationRepository;
 import alfio.util.Json;
 import alfio.util.MonetaryUtil;
+import alfio.util.MustacheCustomTag;
 import ch.digitalfondue.npjt.AffectedRowCountAndKey;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
@@ -102,6 +103,7 @@ public class EventManager {
     private final ExtensionManager extensionManager;
     private final GroupRepository groupRepository;
     private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final EventVersionTracker eventVersionTracker;
 
 
     public Event getSingleEvent(String eventName, String username) {
@@ -178,6 +180,7 @@ public class EventManager {
         createAdditionalFields(event, em);
         createCategoriesForEvent(em, event);
         createAllTicketsForEvent(event, em);
+        eventVersionTracker.eventModified(eventId);
         extensionManager.handleEventCreation(event);
     }
 
@@ -190,6 +193,7 @@ public class EventManager {
         }
         Event.Status status = activate ? Event.Status.PUBLIC : Event.Status.DRAFT;
         eventRepository.updateEventStatus(id, status);
+        eventVersionTracker.eventModified(id);
         extensionManager.handleEventStatusChange(event, status);
     }
 
@@ -214,7 +218,12 @@ public class EventManager {
     }
 
     private Consumer<EventModification.AdditionalServiceText> insertAdditionalServiceDescription(int serviceId) {
-        return t -> additionalServiceTextRepository.insert(serviceId, t.getLocale(), t.getType(), t.getValue());
+        return t -> {
+            additionalServiceTextRepository.insert(serviceId, t.getLocale(), t.getType(), t.getValue());
+            if(t.getType() == AdditionalServiceText.TextType.DESCRIPTION) {
+                MustacheCustomTag.prerenderDescription(t.getValue());
+            }
+        };
     }
 
     private void createOrUpdateEventDescription(int eventId, EventModification em) {
@@ -228,6 +237,7 @@ public class EventManager {
         Optional.ofNullable(em.getDescription()).ifPresent(descriptions -> descriptions.forEach((locale, description) -> {
             if (validLocales.contains(locale)) {
                 eventDescriptionRepository.insert(eventId, locale, EventDescription.EventDescriptionType.DESCRIPTION, description);
+                MustacheCustomTag.prerenderDescription(description);
             }
         }));
     }
@@ -269,6 +279,7 @@ public class EventManager {
                 ticketFieldRepository.insertDescription(id, locale, val);
             }
         });
+        eventVersionTracker.allEventsModified();
     }
 
     private Integer findAdditionalService(EventAndOrganizationId event, EventModification.AdditionalService as, String currencyCode) {
@@ -309,7 +320,7 @@ public class EventManager {
             begin, end, timeZone, em.getOrganizationId(), em.getLocales());
 
         createOrUpdateEventDescription(eventId, em);
-
+        eventVersionTracker.eventModified(eventId);
 
         if(!original.getBegin().equals(begin) || !original.getEnd().equals(end)) {
             fixOutOfRangeCategories(em, username, zoneId, end);
@@ -334,6 +345,7 @@ public class EventManager {
         String paymentProxies = collectPaymentProxies(em);
         BigDecimal vat = em.isFreeOfCharge() ? BigDecimal.ZERO : em.getVatPercentage();
         eventRepository.updatePrices(em.getCurrency(), em.getAvailableSeats(), em.isVatIncluded(), vat, paymentProxies, eventId, em.getVatStatus(), em.getPriceInCents());
+        eventVersionTracker.eventModified(eventId);
         if(seatsDifference != 0) {
             Event modified = eventRepository.findById(eventId);
             if(seatsDifference > 0) {
@@ -400,6 +412,7 @@ public class EventManager {
                                           String username, boolean resetTicketsToFree) {
         checkOwnership(event, username, event.getOrganizationId());
         int eventId = event.getId();
+        eventVersionTracker.eventModified(eventId);
         return Optional.of(ticketCategoryRepository.getById(categoryId)).filter(tc -> tc.getId() == categoryId)
             .map(existing -> new Result.Builder<TicketCategory>()
                     .checkPrecondition(() -> tcm.getExpiration().toZonedDateTime(event.getZoneId()).isBefore(event.getEnd()), ErrorCode.CategoryError.EXPIRATION_AFTER_EVENT_END)
@@ -559,6 +572,7 @@ public class EventManager {
     private Integer insertCategory(TicketCategoryModification tc, Event event) {
         ZoneId zoneId = event.getZoneId();
         int eventId = event.getId();
+        eventVersionTracker.eventModified(eventId);
         final int price = evaluatePrice(tc.getPrice(), event.isFreeOfCharge(), event.getCurrency());
         final AffectedRowCountAndKey<Integer> category = ticketCategoryRepository.insert(tc.getInception().toZonedDateTime(zoneId),
             tc.getExpiration().toZonedDateTime(zoneId), tc.getName(), tc.isBounded() ? tc.getMaxTickets() : 0, tc.isTokenGenerationRequested(), eventId, tc.isBounded(), price, StringUtils.trimToNull(tc.getCode()),
@@ -598,6 +612,7 @@ public class EventManager {
         Optional.ofNullable(tc.getDescription()).ifPresent(descriptions -> descriptions.forEach((locale, desc) -> {
             if (eventLang.contains(locale)) {
                 ticketCategoryDescriptionRepository.insert(tcId, locale, desc);
+                MustacheCustomTag.prerenderDescription(desc);
             }
         }));
     }
@@ -811,10 +826,16 @@ public class EventManager {
         }
 
         promoCodeRepository.addPromoCode(promoCode, eventId, organizationId, start, end, discountAmount, discountType, Json.GSON.toJson(categoriesId), maxUsage, description, emailReference, codeType, hiddenCategoryId);
+        if(eventId != null) {
+            eventVersionTracker.eventModified(eventId);
+        } else {
+            eventVersionTracker.allEventsModified();
+        }
     }
     
     public void deletePromoCode(int promoCodeId) {
         promoCodeRepository.deletePromoCode(promoCodeId);
+        eventVersionTracker.allEventsModified();
     }
 
     public void updatePromoCode(int promoCodeId, ZonedDateTime start, ZonedDateTime end, Integer maxUsage, List<Integer> categories, String description, String emailReference, Integer hiddenCategoryId) {
@@ -823,6 +844,7 @@ public class EventManager {
         String categoriesJson = CollectionUtils.isEmpty(categories) ? null : Json.toJson(categories);
 
         promoCodeRepository.updateEventPromoCode(promoCodeId, start, end, maxUsage, categoriesJson, description, emailReference, hiddenCategoryId);
+        eventVersionTracker.allEventsModified();
     }
     
     public List<PromoCodeDiscountWithFormattedTime> findPromoCodesInEvent(int eventId) {
@@ -877,17 +899,20 @@ public class EventManager {
                 ticketFieldRepository.insertDescription(value.getTicketFieldConfigurationId(), locale, description);
             }
         });
+        eventVersionTracker.allEventsModified();
     }
     
 	public void addAdditionalField(EventAndOrganizationId event, AdditionalField field) {
 		Integer order = ticketFieldRepository.findMaxOrderValue(event.getId());
 		insertAdditionalField(event, field, order == null ? 0 : order + 1);
+		eventVersionTracker.eventModified(event.getId());
 	}
 	
 	public void deleteAdditionalField(int ticketFieldConfigurationId) {
 		ticketFieldRepository.deleteValues(ticketFieldConfigurationId);
 		ticketFieldRepository.deleteDescription(ticketFieldConfigurationId);
 		ticketFieldRepository.deleteField(ticketFieldConfigurationId);
+		eventVersionTracker.allEventsModified();
 	}
 	
 	public void swapAdditionalFieldPosition(int eventId, int id1, int id2) {
@@ -897,12 +922,14 @@ public class EventManager {
 		Assert.isTrue(eventId == field2.getEventId(), "eventId does not match field2.eventId");
 		ticketFieldRepository.updateFieldOrder(id1, field2.getOrder());
 		ticketFieldRepository.updateFieldOrder(id2, field1.getOrder());
+		eventVersionTracker.eventModified(eventId);
 	}
 
 	public void setAdditionalFieldPosition(int eventId, int id, int newPosition) {
         TicketFieldConfiguration field = ticketFieldRepository.findById(id);
         Assert.isTrue(eventId == field.getEventId(), "eventId does not match field.eventId");
         ticketFieldRepository.updateFieldOrder(id, newPosition);
+        eventVersionTracker.eventModified(eventId);
     }
 	
 	public void deleteEvent(int eventId, String username) {
@@ -946,12 +973,14 @@ public class EventManager {
         eventDeleterRepository.deleteScanAudit(eventId);
 		
 		eventDeleterRepository.deleteEvent(eventId);
+        eventVersionTracker.eventModified(eventId);
 		
 	}
 
     public void disableEventsFromUsers(List<Integer> userIds) {
         if(!userIds.isEmpty()) {
             eventRepository.disableEventsForUsers(userIds);
+            eventVersionTracker.allEventsModified();
         }
     }
 
@@ -970,6 +999,7 @@ public class EventManager {
             throw new IllegalArgumentException("Category not found");
         }
         var category = optionalCategory.get();
+        eventVersionTracker.eventModified(eventId);
         int result = ticketCategoryRepository.deleteCategoryIfEmpty(category.getId());
         if(result != 1) {
             log.debug("cannot delete category. Expected result 1, got {}", result);
@@ -994,6 +1024,7 @@ public class EventManager {
                     .addValue("eventId", eventId))
                 .toArray(MapSqlParameterSource[]::new);
             int[] results = jdbcTemplate.batchUpdate(ticketCategoryRepository.updateOrdinal(), parameterSources);
+            eventVersionTracker.eventModified(eventId);
             Validate.isTrue(IntStream.of(results).sum() == categories.size(), "Unexpected result from update.");
         } else {
             log.warn("unauthorized access to event {}", eventName);
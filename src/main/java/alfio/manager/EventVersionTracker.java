@@ -0,0 +1,156 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.repository.PublicDataVersionRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the modifications of the public data of the events, so that the payloads derived from it can be
+ * cached until the next modification.
+ * <p>
+ * The versions returned by this class are kept in memory: they are meaningful only within this instance and must not
+ * be exposed to clients. The modifications are also recorded in the database (see {@link PublicDataVersionRepository}),
+ * whose versions can be used for the values shared with the clients or with the other instances.
+ */
+@Component
+public class EventVersionTracker {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Integer, Long> lastEventChange = new ConcurrentHashMap<>();
+    private volatile long lastGlobalChange = 0;
+    private final PublicDataVersionRepository publicDataVersionRepository;
+
+    public EventVersionTracker(PublicDataVersionRepository publicDataVersionRepository) {
+        this.publicDataVersionRepository = publicDataVersionRepository;
+    }
+
+    /**
+     * Signals that the given event has been modified. If there is an active transaction, the persisted version is
+     * updated within it, and the in-memory version will be incremented again after its completion, to discard the
+     * values computed from the uncommitted data.
+     *
+     * @param eventId the event ID
+     */
+    public void eventModified(int eventId) {
+        publicDataVersionRepository.bumpEventVersion(eventId);
+        eventModifiedInDatabase(eventId);
+    }
+
+    /**
+     * Signals that a modification could affect all the events, e.g. a system-wide configuration change.
+     */
+    public void allEventsModified() {
+        publicDataVersionRepository.bumpGlobalVersion();
+        allEventsModifiedInDatabase();
+    }
+
+    /**
+     * Same as {@link #eventModified(int)}, for modifications whose persisted version has already been updated
+     * by the database itself or by another instance.
+     *
+     * @param eventId the event ID
+     */
+    public void eventModifiedInDatabase(int eventId) {
+        bumpEvent(eventId);
+        pendingBumps().ifPresent(p -> p.eventIds.add(eventId));
+    }
+
+    /**
+     * Same as {@link #allEventsModified()}, for modifications whose persisted version has already been updated
+     * by the database itself or by another instance.
+     */
+    public void allEventsModifiedInDatabase() {
+        bumpAll();
+        pendingBumps().ifPresent(p -> p.allEvents = true);
+    }
+
+    /**
+     * @param eventId the event ID
+     * @return the current version of the given event
+     */
+    public long getVersion(int eventId) {
+        return Math.max(lastGlobalChange, lastEventChange.getOrDefault(eventId, 0L));
+    }
+
+    /**
+     * @return a version which changes every time an event is modified
+     */
+    public long getGlobalVersion() {
+        return sequence.get();
+    }
+
+    /**
+     * Values read inside a transaction could be not yet visible to the other ones (or already outdated), so
+     * they must not be shared.
+     *
+     * @return {@code true} if the values loaded by the current thread can be cached
+     */
+    public static boolean canCache() {
+        return !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    private void bumpEvent(int eventId) {
+        lastEventChange.put(eventId, sequence.incrementAndGet());
+    }
+
+    private void bumpAll() {
+        lastGlobalChange = sequence.incrementAndGet();
+    }
+
+    private Optional<BumpOnCompletion> pendingBumps() {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return Optional.empty();
+        }
+        var existing = TransactionSynchronizationManager.getSynchronizations().stream()
+            .filter(s -> s instanceof BumpOnCompletion && ((BumpOnCompletion) s).getTracker() == this)
+            .map(BumpOnCompletion.class::cast)
+            .findFirst();
+        if(existing.isPresent()) {
+            return existing;
+        }
+        var pending = new BumpOnCompletion();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return Optional.of(pending);
+    }
+
+    private class BumpOnCompletion extends TransactionSynchronizationAdapter {
+        private final Set<Integer> eventIds = new HashSet<>();
+        private boolean allEvents = false;
+
+        private EventVersionTracker getTracker() {
+            return EventVersionTracker.this;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if(allEvents) {
+                bumpAll();
+            }
+            eventIds.forEach(EventVersionTracker.this::bumpEvent);
+        }
+    }
+}
@@ -220,6 +220,10 @@ public class ExtensionManager {
         syncCall(ExtensionEvent.RESERVATION_CREDIT_NOTE_ISSUED, event, event.getOrganizationId(), payload, Boolean.class);
     }
 
+    public boolean isPdfTransformationDefined(Event event) {
+        return extensionService.hasActiveScriptsForEvent(ExtensionEvent.PDF_GENERATION.name(), toPath(event.getOrganizationId(), event.getId()), false);
+    }
+
     public boolean handlePdfTransformation(String html, Event event, OutputStream outputStream) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("html", html);
@@ -58,14 +58,17 @@ public class GroupManager {
     private final TicketRepository ticketRepository;
     private final AuditingRepository auditingRepository;
     private final TransactionTemplate requiresNewTransactionTemplate;
+    private final EventVersionTracker eventVersionTracker;
 
     public GroupManager(GroupRepository groupRepository,
                         TicketRepository ticketRepository,
                         AuditingRepository auditingRepository,
-                        PlatformTransactionManager transactionManager) {
+                        PlatformTransactionManager transactionManager,
+                        EventVersionTracker eventVersionTracker) {
         this.groupRepository = groupRepository;
         this.ticketRepository = ticketRepository;
         this.auditingRepository = auditingRepository;
+        this.eventVersionTracker = eventVersionTracker;
         this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
     }
 
@@ -93,6 +96,7 @@ public class GroupManager {
         Validate.isTrue(modification.getType() != LIMITED_QUANTITY || modification.getMaxAllocation() != null, "Missing max allocation");
         AffectedRowCountAndKey<Integer> configuration = groupRepository.createConfiguration(groupId, eventId,
             modification.getTicketCategoryId(), modification.getType(), modification.getMatchType(), modification.getMaxAllocation());
+        eventVersionTracker.eventModified(eventId);
         return groupRepository.getConfiguration(configuration.getKey());
     }
 
@@ -103,6 +107,7 @@ public class GroupManager {
             Validate.isTrue(groupRepository.countWhitelistedTicketsForConfiguration(original.getId()) == 0, "Cannot update as there are already confirmed tickets.");
         }
         groupRepository.updateConfiguration(id, modification.getGroupId(), original.getEventId(), modification.getTicketCategoryId(), modification.getType(), modification.getMatchType(), modification.getMaxAllocation());
+        eventVersionTracker.eventModified(original.getEventId());
         return groupRepository.getConfiguration(id);
     }
 
@@ -220,6 +225,7 @@ public class GroupManager {
     @Transactional
     public void disableLink(int linkId) {
         Validate.isTrue(groupRepository.disableLink(linkId) == 1, "Error while disabling link");
+        eventVersionTracker.allEventsModified();
     }
 
     @Transactional
@@ -0,0 +1,124 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.UnpooledConnections;
+import alfio.repository.InvoiceSequencesRepository;
+import ch.digitalfondue.npjt.QueryFactory;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static alfio.model.system.ConfigurationKeys.INVOICE_NUMBER_BLOCK_SIZE;
+import static alfio.model.system.ConfigurationKeys.INVOICE_NUMBER_STRICT_GAPLESS;
+
+/**
+ * Assigns the invoice numbers of an organization.
+ * <p>
+ * By default ({@link alfio.model.system.ConfigurationKeys#INVOICE_NUMBER_STRICT_GAPLESS} enabled) the sequence is locked
+ * and incremented in the current transaction, which guarantees a gapless sequence that follows the confirmation order,
+ * as required by many jurisdictions, at the cost of serializing all the confirmations of the organization.
+ * <p>
+ * Organizations which are allowed to have gaps can disable it. In that case each node reserves a block of
+ * {@link alfio.model.system.ConfigurationKeys#INVOICE_NUMBER_BLOCK_SIZE} numbers in a separate, short transaction and
+ * then hands them out from memory, so that the payment confirmations of the same organization don't have to wait for
+ * each other. The block is reserved on a connection which is not taken from the pool (see {@link UnpooledConnections}):
+ * the caller already holds a pooled connection, and waiting for a second one while other confirmations wait for the
+ * block could exhaust the pool. As a consequence, the numbers are unique but, in a cluster, they are not assigned in
+ * chronological order; moreover, the numbers reserved but not used before a restart, or assigned to a confirmation
+ * which is then rolled back, are lost.
+ */
+@Component
+@Log4j2
+public class InvoiceSequenceAllocator {
+
+    static final int DEFAULT_BLOCK_SIZE = 20;
+
+    private final InvoiceSequencesRepository invoiceSequencesRepository;
+    private final InvoiceSequencesRepository unpooledInvoiceSequencesRepository;
+    private final ConfigurationManager configurationManager;
+    private final TransactionTemplate unpooledTransactionTemplate;
+    private final Map<Integer, Block> blocks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public InvoiceSequenceAllocator(InvoiceSequencesRepository invoiceSequencesRepository,
+                                    ConfigurationManager configurationManager,
+                                    UnpooledConnections unpooledConnections) {
+        this(invoiceSequencesRepository,
+            QueryFactory.from(InvoiceSequencesRepository.class, "PGSQL", unpooledConnections.getDataSource()),
+            configurationManager,
+            new DataSourceTransactionManager(unpooledConnections.getDataSource()));
+    }
+
+    InvoiceSequenceAllocator(InvoiceSequencesRepository invoiceSequencesRepository,
+                             InvoiceSequencesRepository unpooledInvoiceSequencesRepository,
+                             ConfigurationManager configurationManager,
+                             PlatformTransactionManager unpooledTransactionManager) {
+        this.invoiceSequencesRepository = invoiceSequencesRepository;
+        this.unpooledInvoiceSequencesRepository = unpooledInvoiceSequencesRepository;
+        this.configurationManager = configurationManager;
+        this.unpooledTransactionTemplate = new TransactionTemplate(unpooledTransactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+    }
+
+    /**
+     * @param organizationId the organization ID
+     * @return the next invoice number for the given organization
+     */
+    public int nextInvoiceSequence(int organizationId) {
+        var configuration = configurationManager.getFor(List.of(INVOICE_NUMBER_STRICT_GAPLESS, INVOICE_NUMBER_BLOCK_SIZE), ConfigurationLevel.organization(organizationId));
+        if(configuration.get(INVOICE_NUMBER_STRICT_GAPLESS).getValueAsBooleanOrDefault(true)) {
+            int invoiceSequence = invoiceSequencesRepository.lockReservationForUpdate(organizationId);
+            invoiceSequencesRepository.incrementSequenceFor(organizationId);
+            return invoiceSequence;
+        }
+        int blockSize = Math.max(1, configuration.get(INVOICE_NUMBER_BLOCK_SIZE).getValueAsIntOrDefault(DEFAULT_BLOCK_SIZE));
+        return blocks.computeIfAbsent(organizationId, id -> new Block()).next(organizationId, blockSize);
+    }
+
+    private int reserveBlock(int organizationId, int blockSize) {
+        // the connection is opened, committed and closed before returning, independently of the caller's transaction
+        int end = Objects.requireNonNull(unpooledTransactionTemplate.execute(status -> unpooledInvoiceSequencesRepository.reserveBlock(organizationId, blockSize)));
+        log.trace("reserved invoice numbers [{}, {}) for organization {}", end - blockSize, end, organizationId);
+        return end;
+    }
+
+    private class Block {
+        // next is inclusive, end is exclusive
+        private int next = 0;
+        private int end = 0;
+
+        private synchronized int next(int organizationId, int blockSize) {
+            if(next >= end) {
+                end = reserveBlock(organizationId, blockSize);
+                next = end - blockSize;
+            }
+            return next++;
+        }
+    }
+}
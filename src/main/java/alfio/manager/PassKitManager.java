@@ -16,7 +16,6 @@
  */
 package alfio.manager;
 
-import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
 import alfio.model.Event;
 import alfio.model.EventAndOrganizationId;
@@ -113,11 +112,9 @@ public class PassKitManager {
 
     private Map<ConfigurationKeys, String> getConfigurationKeys(EventAndOrganizationId event) {
 
-        var conf = configurationManager.getFor(Set.of(ENABLE_PASS,
-            PASSBOOK_TYPE_IDENTIFIER, PASSBOOK_KEYSTORE, PASSBOOK_KEYSTORE_PASSWORD,
-            PASSBOOK_TEAM_IDENTIFIER, PASSBOOK_PRIVATE_KEY_ALIAS), ConfigurationLevel.event(event));
+        var conf = configurationManager.getEventConfiguration(event);
 
-        if(!conf.get(ENABLE_PASS).getValueAsBooleanOrDefault(false)) {
+        if(!conf.getBoolean(ENABLE_PASS, false)) {
             return Map.of();
         }
         var configValues = Map.of(
@@ -249,7 +246,7 @@ public class PassKitManager {
         }
 
         var event = eventOptional.get();
-        var typeIdentifierOptional = configurationManager.getFor(PASSBOOK_TYPE_IDENTIFIER, ConfigurationLevel.event(event));
+        var typeIdentifierOptional = configurationManager.getEventConfiguration(event).get(PASSBOOK_TYPE_IDENTIFIER);
         if(!typeIdentifierOptional.isPresent() || !typeIdentifier.equals(typeIdentifierOptional.getValueOrDefault(null))) {
             log.trace("typeIdentifier does not match. Expected {}, got {}", typeIdentifierOptional.getValueOrDefault("not-found"), typeIdentifier);
             return Optional.empty();
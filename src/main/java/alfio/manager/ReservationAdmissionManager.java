@@ -0,0 +1,252 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static alfio.model.system.ConfigurationKeys.RESERVATION_MAX_CONCURRENT_REQUESTS;
+import static alfio.model.system.ConfigurationKeys.RESERVATION_MAX_QUEUE_SIZE;
+
+/**
+ * Admission control ("virtual waiting room") for the reservation endpoint.
+ * <p>
+ * Each node processes at most {@link alfio.model.system.ConfigurationKeys#RESERVATION_MAX_CONCURRENT_REQUESTS} requests
+ * in parallel for the same event. The exceeding requests receive a token and wait in a FIFO queue: the client is expected
+ * to poll its position and to repeat the request, including the token, as soon as it is allowed to proceed.
+ * Once the queue contains {@link alfio.model.system.ConfigurationKeys#RESERVATION_MAX_QUEUE_SIZE} tokens, the new requests
+ * are rejected immediately.
+ * <p>
+ * Tokens which are not polled for {@value #TOKEN_TTL_MS} ms are considered abandoned and removed from the queue.
+ * <p>
+ * Queues and tokens are kept in memory, therefore they are valid only on the node which issued them: when running more
+ * than one node, the load balancer must route the requests of the same client to the same node (sticky sessions).
+ * A token unknown to the node is handled as a new request, which is appended at the end of the queue, and polling its
+ * position returns <code>404</code>: the client is expected to repeat the reservation request without the token.
+ * <p>
+ * The callers must resolve the event before asking for an admission, so that the requests for non-existing events
+ * never allocate a queue.
+ */
+@Component
+public class ReservationAdmissionManager {
+
+    public static final String QUEUE_TOKEN_HEADER = "X-Alfio-Queue-Token";
+    static final long TOKEN_TTL_MS = 30_000;
+    private static final long LIMITS_TTL_MS = 30_000;
+    private static final long MAX_TRACKED_EVENTS = 1000;
+
+    private final ConfigurationManager configurationManager;
+    private final Cache<Integer, EventQueue> queues = Caffeine.newBuilder()
+        .maximumSize(MAX_TRACKED_EVENTS)
+        .expireAfterAccess(1, TimeUnit.HOURS)
+        .build();
+
+    public ReservationAdmissionManager(ConfigurationManager configurationManager) {
+        this.configurationManager = configurationManager;
+    }
+
+    /**
+     * Tries to admit a reservation request for the given event. The returned {@link Admission} must be closed once
+     * the request has been processed.
+     *
+     * @param event the event
+     * @param token the queue token sent by the client, if any
+     * @return the outcome
+     */
+    public Admission tryAdmit(Event event, String token) {
+        return tryAdmit(event, token, System.currentTimeMillis());
+    }
+
+    /**
+     * @param event the event
+     * @param token the queue token
+     * @return the current position of the token in the queue, if the token is still valid on this node
+     */
+    public Optional<Admission> getQueuePosition(Event event, String token) {
+        return getQueuePosition(event, token, System.currentTimeMillis());
+    }
+
+    Optional<Admission> getQueuePosition(Event event, String token, long now) {
+        return Optional.ofNullable(queues.getIfPresent(event.getId()))
+            .flatMap(q -> q.getPosition(token, now));
+    }
+
+    Admission tryAdmit(Event event, String token, long now) {
+        var queue = queues.get(event.getId(), k -> new EventQueue());
+        return queue.tryAdmit(getLimits(event, queue, now), token, now);
+    }
+
+    private Limits getLimits(Event event, EventQueue queue, long now) {
+        var current = queue.limits;
+        if(current == null || now - queue.limitsLoadedAt >= LIMITS_TTL_MS) {
+            var conf = configurationManager.getFor(List.of(RESERVATION_MAX_CONCURRENT_REQUESTS, RESERVATION_MAX_QUEUE_SIZE), ConfigurationLevel.event(event));
+            current = new Limits(conf.get(RESERVATION_MAX_CONCURRENT_REQUESTS).getValueAsIntOrDefault(0),
+                conf.get(RESERVATION_MAX_QUEUE_SIZE).getValueAsIntOrDefault(1000));
+            queue.limits = current;
+            queue.limitsLoadedAt = now;
+        }
+        return current;
+    }
+
+    @AllArgsConstructor
+    private static class Limits {
+        private final int maxConcurrentRequests;
+        private final int maxQueueSize;
+
+        private boolean isUnlimited() {
+            return maxConcurrentRequests <= 0;
+        }
+    }
+
+    private static class EventQueue {
+        private volatile Limits limits;
+        private volatile long limitsLoadedAt;
+        private int running = 0;
+        // token -> last time the client has been seen. Iteration order is the arrival order
+        private final LinkedHashMap<String, Long> waiting = new LinkedHashMap<>();
+
+        private synchronized Admission tryAdmit(Limits limits, String token, long now) {
+            if(limits.isUnlimited()) {
+                return Admission.admitted(null);
+            }
+            purgeAbandoned(now);
+            int available = Math.max(0, limits.maxConcurrentRequests - running);
+            if(token != null && waiting.containsKey(token)) {
+                int position = positionOf(token);
+                if(position < available) {
+                    waiting.remove(token);
+                    running++;
+                    return Admission.admitted(this);
+                }
+                waiting.put(token, now);
+                return Admission.queued(token, position, retryAfter(position, limits));
+            }
+            if(waiting.isEmpty() && available > 0) {
+                running++;
+                return Admission.admitted(this);
+            }
+            if(waiting.size() >= limits.maxQueueSize) {
+                return Admission.rejected(retryAfter(waiting.size(), limits));
+            }
+            String newToken = UUID.randomUUID().toString();
+            waiting.put(newToken, now);
+            int position = waiting.size() - 1;
+            return Admission.queued(newToken, position, retryAfter(position, limits));
+        }
+
+        private synchronized Optional<Admission> getPosition(String token, long now) {
+            purgeAbandoned(now);
+            if(limits == null || !waiting.containsKey(token)) {
+                return Optional.empty();
+            }
+            waiting.put(token, now);
+            int position = positionOf(token);
+            if(position < limits.maxConcurrentRequests - running) {
+                return Optional.of(Admission.queued(token, position, 0));
+            }
+            return Optional.of(Admission.queued(token, position, retryAfter(position, limits)));
+        }
+
+        private synchronized void release() {
+            running--;
+        }
+
+        private int positionOf(String token) {
+            int position = 0;
+            for (String t : waiting.keySet()) {
+                if(t.equals(token)) {
+                    return position;
+                }
+                position++;
+            }
+            return -1;
+        }
+
+        private void purgeAbandoned(long now) {
+            Iterator<Long> iterator = waiting.values().iterator();
+            while(iterator.hasNext()) {
+                if(now - iterator.next() >= TOKEN_TTL_MS) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private static int retryAfter(int position, Limits limits) {
+            return 1 + position / Math.max(1, limits.maxConcurrentRequests);
+        }
+    }
+
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Admission implements AutoCloseable {
+
+        public enum Status {
+            ADMITTED, QUEUED, REJECTED
+        }
+
+        @Getter
+        private final Status status;
+        @Getter
+        private final String token;
+        @Getter
+        private final int position;
+        /**
+         * suggested delay, in seconds, before the next attempt. 0 if the request can be repeated immediately
+         */
+        @Getter
+        private final int retryAfterSeconds;
+        private final EventQueue queue;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private static Admission admitted(EventQueue queue) {
+            return new Admission(Status.ADMITTED, null, 0, 0, queue);
+        }
+
+        private static Admission queued(String token, int position, int retryAfterSeconds) {
+            return new Admission(Status.QUEUED, token, position, retryAfterSeconds, null);
+        }
+
+        private static Admission rejected(int retryAfterSeconds) {
+            return new Admission(Status.REJECTED, null, -1, retryAfterSeconds, null);
+        }
+
+        public boolean isAdmitted() {
+            return status == Status.ADMITTED;
+        }
+
+        @Override
+        public void close() {
+            if(queue != null && released.compareAndSet(false, true)) {
+                queue.release();
+            }
+        }
+    }
+}
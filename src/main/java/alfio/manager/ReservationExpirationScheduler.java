@@ -0,0 +1,100 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track, in memory, of the expiration of the reservations created by this node, so that the expired
+ * reservations can be released close to their deadline without scanning the tickets_reservation table.
+ * <p>
+ * Deadlines are grouped in buckets of one second, sorted by time. The scheduled entries are only hints: the
+ * reservation status and validity are always checked again against the database before the cleanup, therefore
+ * the entries of reservations which have been confirmed, cancelled or extended in the meantime are simply discarded.
+ * Reservations which are not tracked here (e.g. created by another node before a restart) are
+ * handled by the periodic database scan (see {@link alfio.job.Jobs#cleanupExpiredPendingReservation()}).
+ */
+@Component
+@Log4j2
+public class ReservationExpirationScheduler {
+
+    /**
+     * additional time given to the user before releasing the tickets of an expired reservation
+     */
+    static final long GRACE_PERIOD_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long BUCKET_SIZE_MS = 1000;
+    static final int MAX_SCHEDULED_RESERVATIONS = 100_000;
+
+    private final ConcurrentSkipListMap<Long, Set<String>> buckets = new ConcurrentSkipListMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Schedules the cleanup of a reservation.
+     *
+     * @param reservationId the reservation ID
+     * @param expiration the reservation validity
+     */
+    public void schedule(String reservationId, Date expiration) {
+        if(size.get() >= MAX_SCHEDULED_RESERVATIONS) {
+            log.trace("too many scheduled reservations. {} will be handled by the periodic cleanup", reservationId);
+            return;
+        }
+        long bucket = (expiration.getTime() + GRACE_PERIOD_MS) / BUCKET_SIZE_MS + 1;
+        if(buckets.computeIfAbsent(bucket, k -> ConcurrentHashMap.newKeySet()).add(reservationId)) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes and returns up to {@code maxSize} reservations whose cleanup is due.
+     *
+     * @param now the current time
+     * @param maxSize the maximum batch size
+     * @return the IDs of the due reservations
+     */
+    public List<String> pollExpired(Date now, int maxSize) {
+        long currentBucket = now.getTime() / BUCKET_SIZE_MS;
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<Long, Set<String>> entry : buckets.headMap(currentBucket, true).entrySet()) {
+            Iterator<String> iterator = entry.getValue().iterator();
+            while(iterator.hasNext() && result.size() < maxSize) {
+                String reservationId = iterator.next();
+                iterator.remove();
+                size.decrementAndGet();
+                result.add(reservationId);
+            }
+            if(entry.getValue().isEmpty()) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+            if(result.size() >= maxSize) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return size.get();
+    }
+}
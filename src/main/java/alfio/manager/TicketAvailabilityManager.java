@@ -0,0 +1,187 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.EventAndOrganizationId;
+import alfio.model.FreeTicketsByCategory;
+import alfio.model.TicketCategory;
+import alfio.repository.TicketRepository;
+import alfio.repository.TicketStatusCountRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps an in-memory copy of the number of FREE tickets for each event, so that the public
+ * category listing doesn't need to run a {@code count(*)} on the ticket table for every request.
+ * <p>
+ * Every change of the status of the tickets (reservation, release, expiration, invalidation...) is recorded in
+ * <code>ticket_status_count_delta</code>, together with the ID of the transaction which made it. Every
+ * {@value #POLL_INTERVAL_MS} ms, each node looks for the events modified by the transactions which were still running
+ * at the time of its previous poll, or which started later (see {@link TicketStatusCountRepository#findEventIdsModifiedSince(long)}).
+ * The affected events are then marked as stale and refreshed on the next read, at most once every
+ * {@value #MIN_REFRESH_INTERVAL_MS} ms. Unlike a notification, this adds no work to the transactions which modify the tickets.
+ * <p>
+ * If the poll fails, the cached values are considered valid for {@value #FALLBACK_TTL_MS} ms.
+ * A periodic reconciliation reloads all the cached events from the database.
+ */
+@Component
+@Log4j2
+public class TicketAvailabilityManager {
+
+    static final long POLL_INTERVAL_MS = 1000;
+    static final long MIN_REFRESH_INTERVAL_MS = 500;
+    static final long FALLBACK_TTL_MS = 5000;
+    static final long CACHE_TTL_MINUTES = 10;
+
+    private final TicketRepository ticketRepository;
+    private final TicketStatusCountRepository ticketStatusCountRepository;
+    private final Cache<Integer, EventAvailability> cache = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .expireAfterAccess(CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+        .build();
+    // a change can be forgotten once every value loaded before it has been either reloaded or evicted:
+    // the first read after the change reloads the value, otherwise the value expires within the cache TTL
+    private final Cache<Integer, Long> lastChangeByEvent = Caffeine.newBuilder()
+        .expireAfterWrite(CACHE_TTL_MINUTES + 1, TimeUnit.MINUTES)
+        .build();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long lastReset = 0;
+    // transaction horizon of the last successful poll, -1 if the changes are not being tracked
+    private volatile long lastHorizon = -1;
+    private volatile boolean pollRequested = false;
+
+    public TicketAvailabilityManager(TicketRepository ticketRepository, TicketStatusCountRepository ticketStatusCountRepository) {
+        this.ticketRepository = ticketRepository;
+        this.ticketStatusCountRepository = ticketStatusCountRepository;
+    }
+
+    public int getAvailableTickets(EventAndOrganizationId event, TicketCategory category) {
+        return getAvailability(event).getFreeTickets(category);
+    }
+
+    /**
+     * Returns the available tickets for multiple categories of the same event, using the same data.
+     *
+     * @param event the event
+     * @param categories the categories
+     * @return the available tickets, by category ID
+     */
+    public Map<Integer, Integer> getAvailableTickets(EventAndOrganizationId event, Collection<? extends TicketCategory> categories) {
+        var availability = getAvailability(event);
+        var result = new HashMap<Integer, Integer>();
+        for (TicketCategory category : categories) {
+            result.put(category.getId(), availability.getFreeTickets(category));
+        }
+        return result;
+    }
+
+    private EventAvailability getAvailability(EventAndOrganizationId event) {
+        pollRequested = true;
+        int eventId = event.getId();
+        var availability = cache.get(eventId, this::load);
+        if(isStale(eventId, Objects.requireNonNull(availability))) {
+            // compute blocks the concurrent readers of the same event until the new value is available,
+            // so that we load the event only once
+            availability = cache.asMap().compute(eventId, (id, current) -> current == null || isStale(id, current) ? load(id) : current);
+        }
+        return availability;
+    }
+
+    /**
+     * Marks as stale the events whose tickets have been modified since the previous poll.
+     */
+    @Scheduled(fixedDelay = POLL_INTERVAL_MS)
+    public void processChanges() {
+        if(!pollRequested) {
+            return;
+        }
+        try {
+            // the horizon must be read before looking for the changes: a transaction committed in the meantime
+            // will be found again by the next poll
+            long horizon = ticketStatusCountRepository.getTransactionHorizon();
+            long since = lastHorizon;
+            if(since < 0) {
+                // we don't know what has been modified before we started tracking the changes
+                lastReset = sequence.incrementAndGet();
+            } else {
+                for (Integer eventId : ticketStatusCountRepository.findEventIdsModifiedSince(since)) {
+                    lastChangeByEvent.put(eventId, sequence.incrementAndGet());
+                }
+            }
+            lastHorizon = horizon;
+        } catch (RuntimeException e) {
+            log.warn("error while looking for ticket availability changes. Cached values will be refreshed on a time basis.", e);
+            lastHorizon = -1;
+        }
+    }
+
+    @Scheduled(fixedDelay = 5 * 60 * 1000L, initialDelay = 5 * 60 * 1000L)
+    public void reconcile() {
+        cache.asMap().replaceAll((eventId, current) -> {
+            var reloaded = load(eventId);
+            if(!reloaded.freeTicketsByCategory.equals(current.freeTicketsByCategory) && !isStale(eventId, current)) {
+                log.warn("availability for event {} was out of sync. Cached: {}, actual: {}", eventId, current.freeTicketsByCategory, reloaded.freeTicketsByCategory);
+            }
+            return reloaded;
+        });
+    }
+
+    private boolean isStale(int eventId, EventAvailability availability) {
+        long age = System.currentTimeMillis() - availability.loadedAt;
+        if(lastHorizon < 0) {
+            return age >= FALLBACK_TTL_MS;
+        }
+        long lastChange = Math.max(lastReset, Objects.requireNonNullElse(lastChangeByEvent.getIfPresent(eventId), 0L));
+        return lastChange > availability.sequence && age >= MIN_REFRESH_INTERVAL_MS;
+    }
+
+    private EventAvailability load(int eventId) {
+        // the sequence must be read before querying the db: a change found during the query will trigger a new load
+        long currentSequence = sequence.get();
+        var result = new HashMap<Integer, Integer>();
+        for (FreeTicketsByCategory free : ticketRepository.countFreeTicketsByCategory(eventId)) {
+            result.put(free.getCategoryId(), free.getFreeTickets());
+        }
+        return new EventAvailability(result, currentSequence, System.currentTimeMillis());
+    }
+
+    private static class EventAvailability {
+        private final Map<Integer, Integer> freeTicketsByCategory;
+        private final long sequence;
+        private final long loadedAt;
+
+        private EventAvailability(Map<Integer, Integer> freeTicketsByCategory, long sequence, long loadedAt) {
+            this.freeTicketsByCategory = freeTicketsByCategory;
+            this.sequence = sequence;
+            this.loadedAt = loadedAt;
+        }
+
+        private int getFreeTickets(TicketCategory category) {
+            return freeTicketsByCategory.getOrDefault(category.isBounded() ? category.getId() : null, 0);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.repository.TicketPdfCacheRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Generated ticket PDFs, identified by the hash of the rendered page (see
+ * {@link alfio.controller.support.TemplateProcessor#renderPDFTicket}).
+ * <p>
+ * The PDFs contain the attendee data and the QR code used for the check-in, so they are stored in a dedicated table
+ * which is never exposed by the file endpoints. They are linked to their ticket and removed as soon as the ticket is
+ * reassigned, released or cancelled, or together with the ticket itself. The entries older than {@value #RETENTION_DAYS}
+ * days are removed anyway by {@link #cleanupExpired()}.
+ */
+@Component
+@Log4j2
+public class TicketPdfCache {
+
+    static final int RETENTION_DAYS = 7;
+
+    private final TicketPdfCacheRepository ticketPdfCacheRepository;
+
+    public TicketPdfCache(TicketPdfCacheRepository ticketPdfCacheRepository) {
+        this.ticketPdfCacheRepository = ticketPdfCacheRepository;
+    }
+
+    public Optional<byte[]> find(String id) {
+        return ticketPdfCacheRepository.findContent(id);
+    }
+
+    public void store(String id, int ticketId, byte[] pdf) {
+        ticketPdfCacheRepository.insertIfAbsent(id, ticketId, pdf);
+    }
+
+    public void removeForTickets(List<Integer> ticketIds) {
+        if(ticketIds.isEmpty()) {
+            return;
+        }
+        int deleted = ticketPdfCacheRepository.deleteForTickets(ticketIds);
+        log.trace("removed {} cached PDFs for tickets {}", deleted, ticketIds);
+    }
+
+    public void cleanupExpired() {
+        int deleted = ticketPdfCacheRepository.deleteCreatedBefore(ZonedDateTime.now().minusDays(RETENTION_DAYS));
+        log.debug("removed {} cached ticket PDFs", deleted);
+    }
+}
@@ -52,9 +52,13 @@ import alfio.repository.user.OrganizationRepository;
 import alfio.repository.user.UserRepository;
 import alfio.util.*;
 import ch.digitalfondue.npjt.AffectedRowCountAndKey;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import de.danielbechler.diff.ObjectDifferBuilder;
 import de.danielbechler.diff.node.DiffNode;
 import de.danielbechler.diff.node.Visit;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -77,11 +81,12 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static alfio.model.Audit.EntityType.RESERVATION;
@@ -133,7 +138,7 @@ public class TicketReservationManager {
     private final AdditionalServiceRepository additionalServiceRepository;
     private final AdditionalServiceItemRepository additionalServiceItemRepository;
     private final AdditionalServiceTextRepository additionalServiceTextRepository;
-    private final InvoiceSequencesRepository invoiceSequencesRepository;
+    private final InvoiceSequenceAllocator invoiceSequenceAllocator;
     private final AuditingRepository auditingRepository;
     private final UserRepository userRepository;
     private final ExtensionManager extensionManager;
@@ -142,6 +147,20 @@ public class TicketReservationManager {
     private final BillingDocumentRepository billingDocumentRepository;
     private final NamedParameterJdbcTemplate jdbcTemplate;
     private final Json json;
+    private final ReservationExpirationScheduler reservationExpirationScheduler;
+    private final EventVersionTracker eventVersionTracker;
+    private final TicketPdfCache ticketPdfCache;
+    /**
+     * Prices of the reservations, keyed by reservation ID and price version. The version is maintained by the database
+     * and changes whenever the tickets, the additional services, the promo code or the billing data are modified, so the
+     * entries never need to be evicted explicitly. Changes to the event or promo code definitions made on this node
+     * are picked up through the version of the event (see {@link EventVersionTracker}), the ones made on other nodes
+     * once the entry expires.
+     */
+    private final Cache<PriceSnapshotKey, PriceSnapshot> priceSnapshots = Caffeine.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(5, TimeUnit.MINUTES)
+        .build();
 
     public static class NotEnoughTicketsException extends RuntimeException {
 
@@ -157,6 +176,9 @@ public class TicketReservationManager {
     public static class TooManyTicketsForDiscountCodeException extends RuntimeException {
     }
 
+    public static class IdempotencyKeyConflictException extends RuntimeException {
+    }
+
     public TicketReservationManager(EventRepository eventRepository,
                                     OrganizationRepository organizationRepository,
                                     TicketRepository ticketRepository,
@@ -177,14 +199,17 @@ public class TicketReservationManager {
                                     AdditionalServiceRepository additionalServiceRepository,
                                     AdditionalServiceItemRepository additionalServiceItemRepository,
                                     AdditionalServiceTextRepository additionalServiceTextRepository,
-                                    InvoiceSequencesRepository invoiceSequencesRepository,
+                                    InvoiceSequenceAllocator invoiceSequenceAllocator,
                                     AuditingRepository auditingRepository,
                                     UserRepository userRepository,
                                     ExtensionManager extensionManager, TicketSearchRepository ticketSearchRepository,
                                     GroupManager groupManager,
                                     BillingDocumentRepository billingDocumentRepository,
                                     NamedParameterJdbcTemplate jdbcTemplate,
-                                    Json json) {
+                                    Json json,
+                                    ReservationExpirationScheduler reservationExpirationScheduler,
+                                    EventVersionTracker eventVersionTracker,
+                                    TicketPdfCache ticketPdfCache) {
         this.eventRepository = eventRepository;
         this.organizationRepository = organizationRepository;
         this.ticketRepository = ticketRepository;
@@ -209,7 +234,7 @@ public class TicketReservationManager {
         this.additionalServiceRepository = additionalServiceRepository;
         this.additionalServiceItemRepository = additionalServiceItemRepository;
         this.additionalServiceTextRepository = additionalServiceTextRepository;
-        this.invoiceSequencesRepository = invoiceSequencesRepository;
+        this.invoiceSequenceAllocator = invoiceSequenceAllocator;
         this.auditingRepository = auditingRepository;
         this.userRepository = userRepository;
         this.extensionManager = extensionManager;
@@ -218,6 +243,9 @@ public class TicketReservationManager {
         this.billingDocumentRepository = billingDocumentRepository;
         this.jdbcTemplate = jdbcTemplate;
         this.json = json;
+        this.reservationExpirationScheduler = reservationExpirationScheduler;
+        this.eventVersionTracker = eventVersionTracker;
+        this.ticketPdfCache = ticketPdfCache;
     }
     
     /**
@@ -237,6 +265,35 @@ public class TicketReservationManager {
                                           Optional<String> promotionCodeDiscount,
                                           Locale locale,
                                           boolean forWaitingQueue) throws NotEnoughTicketsException, MissingSpecialPriceTokenException, InvalidSpecialPriceTokenException {
+        return createTicketReservation(event, list, additionalServices, reservationExpiration, promotionCodeDiscount, locale, forWaitingQueue, null, null);
+    }
+
+    /**
+     * Create a ticket reservation, as {@link #createTicketReservation(Event, List, List, Date, Optional, Locale, boolean)}.
+     * If an idempotency key is provided and it is already bound to a reservation which has not yet expired, the ID of the
+     * existing reservation is returned and no tickets are reserved.
+     *
+     * @param idempotencyKey the idempotency key sent by the client, or {@code null}
+     * @param payloadHash the hash of the request payload. Required if the idempotency key is provided
+     * @return the reservation ID
+     * @throws IdempotencyKeyConflictException if the key is bound to a different payload or is being used by a concurrent request
+     */
+    public String createTicketReservation(Event event,
+                                          List<TicketReservationWithOptionalCodeModification> list,
+                                          List<ASReservationWithOptionalCodeModification> additionalServices,
+                                          Date reservationExpiration,
+                                          Optional<String> promotionCodeDiscount,
+                                          Locale locale,
+                                          boolean forWaitingQueue,
+                                          String idempotencyKey,
+                                          String payloadHash) throws NotEnoughTicketsException, MissingSpecialPriceTokenException, InvalidSpecialPriceTokenException {
+        if(idempotencyKey != null) {
+            var existing = findReservationByIdempotencyKey(event, idempotencyKey, payloadHash);
+            if(existing.isPresent()) {
+                return existing.get();
+            }
+        }
+
         String reservationId = UUID.randomUUID().toString();
         
         Optional<PromoCodeDiscount> discount = promotionCodeDiscount.flatMap(promoCodeDiscount -> promoCodeDiscountRepository.findPromoCodeInEventOrOrganization(event.getId(), promoCodeDiscount));
@@ -249,6 +306,11 @@ public class TicketReservationManager {
             event.getVat(),
             event.isVatIncluded(),
             event.getCurrency());
+        // the key is bound before reserving the tickets: a concurrent request with the same key waits here
+        // until this transaction is completed, and then gives up without touching the ticket table
+        if(idempotencyKey != null && ticketReservationRepository.bindIdempotencyKey(event.getId(), idempotencyKey, Objects.requireNonNull(payloadHash), reservationId) == 0) {
+            throw new IdempotencyKeyConflictException();
+        }
         list.forEach(t -> reserveTicketsForCategory(event, reservationId, t, locale, forWaitingQueue, discount.orElse(null)));
 
         int ticketCount = list
@@ -264,10 +326,10 @@ public class TicketReservationManager {
                 AdditionalServiceReservationModification asrm = new AdditionalServiceReservationModification();
                 asrm.setAdditionalServiceId(as.getId());
                 asrm.setQuantity(ticketCount);
-                reserveAdditionalServicesForReservation(event.getId(), reservationId, new ASReservationWithOptionalCodeModification(asrm, Optional.empty()), discount.orElse(null));
+                reserveAdditionalServicesForReservation(event, reservationId, new ASReservationWithOptionalCodeModification(asrm, Optional.empty()), discount.orElse(null));
         });
 
-        additionalServices.forEach(as -> reserveAdditionalServicesForReservation(event.getId(), reservationId, as, discount.orElse(null)));
+        additionalServices.forEach(as -> reserveAdditionalServicesForReservation(event, reservationId, as, discount.orElse(null)));
         var totalPrice = totalReservationCostWithVAT(reservationId);
         var vatStatus = event.getVatStatus();
         ticketReservationRepository.updateBillingData(event.getVatStatus(), calculateSrcPrice(vatStatus, totalPrice), totalPrice.getPriceWithVAT(), totalPrice.getVAT(), Math.abs(totalPrice.getDiscount()), event.getCurrency(), null, null, false, reservationId);
@@ -275,9 +337,27 @@ public class TicketReservationManager {
         if(isDiscountCodeUsageExceeded(reservationId)) {
             throw new TooManyTicketsForDiscountCodeException();
         }
+        reservationExpirationScheduler.schedule(reservationId, reservationExpiration);
         return reservationId;
     }
 
+    /**
+     * @param event the event
+     * @param idempotencyKey the idempotency key sent by the client
+     * @param payloadHash the hash of the request payload
+     * @return the ID of the reservation bound to the given key, if it has not yet expired
+     * @throws IdempotencyKeyConflictException if the key has been used for a different payload
+     */
+    public Optional<String> findReservationByIdempotencyKey(Event event, String idempotencyKey, String payloadHash) {
+        return ticketReservationRepository.findActiveIdempotencyKey(event.getId(), idempotencyKey)
+            .map(key -> {
+                if(!key.getPayloadHash().equals(payloadHash)) {
+                    throw new IdempotencyKeyConflictException();
+                }
+                return key.getReservationId();
+            });
+    }
+
     private int calculateSrcPrice(PriceContainer.VatStatus vatStatus, TotalPrice totalPrice) {
         return (vatStatus == PriceContainer.VatStatus.INCLUDED ? totalPrice.getPriceWithVAT() : totalPrice.getPriceWithVAT() - totalPrice.getVAT())
             + Math.abs(totalPrice.getDiscount());
@@ -307,57 +387,89 @@ public class TicketReservationManager {
             specialPrices = specialPrice.stream().collect(toList());
         }
 
-        List<Integer> reservedForUpdate = reserveTickets(event.getId(), ticketReservation, forWaitingQueue ? asList(TicketStatus.RELEASED, TicketStatus.PRE_RESERVED) : singletonList(TicketStatus.FREE));
+        var requiredStatuses = forWaitingQueue ? asList(TicketStatus.RELEASED, TicketStatus.PRE_RESERVED) : singletonList(TicketStatus.FREE);
         int requested = ticketReservation.getAmount();
+        TicketCategory category = ticketCategoryRepository.getByIdAndActive(ticketReservation.getTicketCategoryId(), event.getId());
+        // all the tickets of the category have the same price, so we can compute it upfront
+        var priceContainer = TicketPriceContainer.from(pendingTicketPrototype(event, reservationId, category, locale), null, event.getVat(), event.getVatStatus(), discount);
+        var currencyCode = priceContainer.getCurrencyCode();
+        int finalPriceCts = MonetaryUtil.unitToCents(priceContainer.getFinalPrice(), currencyCode);
+        int vatCts = MonetaryUtil.unitToCents(priceContainer.getVAT(), currencyCode);
+        int discountCts = MonetaryUtil.unitToCents(priceContainer.getAppliedDiscount(), currencyCode);
+
+        if (specialPrices.isEmpty()) {
+            // claim, reserve and price the tickets with a single statement
+            List<String> statusesAsString = requiredStatuses.stream().map(TicketStatus::name).collect(toList());
+            int stripes = getTicketPoolStripes(event, category.getId());
+            int ownStripe = Math.floorMod(reservationId.hashCode(), stripes);
+            List<Integer> reserved = new ArrayList<>(requested);
+            // a ticket belongs to the stripe id % stripes, so that tickets created in different batches are spread evenly.
+            // start from the stripe assigned to the reservation, and move to the other ones only if it doesn't contain enough tickets
+            for(int i = 0; i < stripes && reserved.size() < requested; i++) {
+                int stripe = (ownStripe + i) % stripes;
+                int missing = requested - reserved.size();
+                if(category.isBounded()) {
+                    reserved.addAll(ticketRepository.reserveAndPriceTicketsInCategory(event.getId(), category.getId(), missing, statusesAsString, stripes, stripe,
+                        reservationId, locale.getLanguage(), category.getSrcPriceCts(), finalPriceCts, vatCts, discountCts, category.getCurrencyCode()));
+                } else {
+                    reserved.addAll(ticketRepository.reserveAndPriceNotAllocatedTickets(event.getId(), category.getId(), missing, statusesAsString, stripes, stripe,
+                        reservationId, locale.getLanguage(), category.getSrcPriceCts(), finalPriceCts, vatCts, discountCts, category.getCurrencyCode()));
+                }
+            }
+            if (reserved.size() != requested) {
+                // the changes will be rolled back together with the current transaction
+                throw new NotEnoughTicketsException();
+            }
+            return;
+        }
+
+        List<Integer> reservedForUpdate = reserveTickets(event.getId(), ticketReservation, requiredStatuses);
         if (reservedForUpdate.size() != requested) {
             throw new NotEnoughTicketsException();
         }
 
-        TicketCategory category = ticketCategoryRepository.getByIdAndActive(ticketReservation.getTicketCategoryId(), event.getId());
-        if (!specialPrices.isEmpty()) {
-            if(specialPrices.size() != reservedForUpdate.size()) {
-                throw new NotEnoughTicketsException();
-            }
+        if(specialPrices.size() != reservedForUpdate.size()) {
+            throw new NotEnoughTicketsException();
+        }
 
-            AtomicInteger counter = new AtomicInteger(0);
-            var ticketsAndSpecialPrices = specialPrices.stream().map(sp -> Pair.of(reservedForUpdate.get(counter.getAndIncrement()), sp)).collect(Collectors.toList());
+        AtomicInteger counter = new AtomicInteger(0);
+        var ticketsAndSpecialPrices = specialPrices.stream().map(sp -> Pair.of(reservedForUpdate.get(counter.getAndIncrement()), sp)).collect(Collectors.toList());
 
-            if(specialPrices.size() == 1) {
-                var ticketId = reservedForUpdate.get(0);
-                var sp = specialPrices.get(0);
-                var accessCodeId = discount != null && discount.getHiddenCategoryId() != null ? discount.getId() : null;
-                ticketRepository.reserveTicket(reservationId, ticketId,sp.getId(), locale.getLanguage(), category.getSrcPriceCts(), category.getCurrencyCode());
-                specialPriceRepository.updateStatus(sp.getId(), Status.PENDING.toString(), null, accessCodeId);
-            } else {
-                jdbcTemplate.batchUpdate(ticketRepository.batchReserveTicket(), ticketsAndSpecialPrices.stream().map(
-                    pair -> new MapSqlParameterSource("reservationId", reservationId)
-                        .addValue("ticketId", pair.getKey())
-                        .addValue("specialCodeId", pair.getValue().getId())
-                        .addValue("userLanguage", locale.getLanguage())
-                        .addValue("srcPriceCts", category.getSrcPriceCts())
-                        .addValue("currencyCode", category.getCurrencyCode())
-                ).toArray(MapSqlParameterSource[]::new));
-                specialPriceRepository.batchUpdateStatus(
-                    specialPrices.stream().map(SpecialPrice::getId).collect(toList()),
-                    Status.PENDING,
-                    Objects.requireNonNull(discount).getId());
-            }
+        if(specialPrices.size() == 1) {
+            var ticketId = reservedForUpdate.get(0);
+            var sp = specialPrices.get(0);
+            var accessCodeId = discount != null && discount.getHiddenCategoryId() != null ? discount.getId() : null;
+            ticketRepository.reserveTicket(reservationId, ticketId,sp.getId(), locale.getLanguage(), category.getSrcPriceCts(), category.getCurrencyCode());
+            specialPriceRepository.updateStatus(sp.getId(), Status.PENDING.toString(), null, accessCodeId);
         } else {
-            ticketRepository.reserveTickets(reservationId, reservedForUpdate, ticketReservation.getTicketCategoryId(), locale.getLanguage(), category.getSrcPriceCts(), category.getCurrencyCode());
+            jdbcTemplate.batchUpdate(ticketRepository.batchReserveTicket(), ticketsAndSpecialPrices.stream().map(
+                pair -> new MapSqlParameterSource("reservationId", reservationId)
+                    .addValue("ticketId", pair.getKey())
+                    .addValue("specialCodeId", pair.getValue().getId())
+                    .addValue("userLanguage", locale.getLanguage())
+                    .addValue("srcPriceCts", category.getSrcPriceCts())
+                    .addValue("currencyCode", category.getCurrencyCode())
+            ).toArray(MapSqlParameterSource[]::new));
+            specialPriceRepository.batchUpdateStatus(
+                specialPrices.stream().map(SpecialPrice::getId).collect(toList()),
+                Status.PENDING,
+                Objects.requireNonNull(discount).getId());
         }
-        Ticket ticket = ticketRepository.findById(reservedForUpdate.get(0), category.getId());
-        TicketPriceContainer priceContainer = TicketPriceContainer.from(ticket, null, event.getVat(), event.getVatStatus(), discount);
-        var currencyCode = priceContainer.getCurrencyCode();
         ticketRepository.updateTicketPrice(reservedForUpdate,
             category.getId(),
             event.getId(),
             category.getSrcPriceCts(),
-            MonetaryUtil.unitToCents(priceContainer.getFinalPrice(), currencyCode),
-            MonetaryUtil.unitToCents(priceContainer.getVAT(), currencyCode),
-            MonetaryUtil.unitToCents(priceContainer.getAppliedDiscount(), currencyCode),
+            finalPriceCts,
+            vatCts,
+            discountCts,
             category.getCurrencyCode());
     }
 
+    private static Ticket pendingTicketPrototype(Event event, String reservationId, TicketCategory category, Locale locale) {
+        return new Ticket(0, null, null, category.getId(), TicketStatus.PENDING.name(), event.getId(), reservationId, null, null, null,
+            null, false, locale.getLanguage(), category.getSrcPriceCts(), 0, 0, 0, null, category.getCurrencyCode());
+    }
+
     private List<SpecialPrice> reserveTokens(TicketReservationWithOptionalCodeModification ticketReservation, PromoCodeDiscount discount) {
         try {
             List<SpecialPrice> boundSpecialPrices = specialPriceRepository.bindToAccessCode(ticketReservation.getTicketCategoryId(), discount.getId(), ticketReservation.getAmount());
@@ -374,34 +486,33 @@ public class TicketReservationManager {
         }
     }
 
-    private void reserveAdditionalServicesForReservation(int eventId, String transactionId, ASReservationWithOptionalCodeModification additionalServiceReservation, PromoCodeDiscount discount) {
+    private void reserveAdditionalServicesForReservation(Event event, String transactionId, ASReservationWithOptionalCodeModification additionalServiceReservation, PromoCodeDiscount discount) {
         Optional.ofNullable(additionalServiceReservation.getAdditionalServiceId())
-            .flatMap(id -> additionalServiceRepository.getOptionalById(id, eventId))
+            .flatMap(id -> additionalServiceRepository.getOptionalById(id, event.getId()))
             .filter(as -> additionalServiceReservation.getQuantity() > 0 && (as.isFixPrice() || Optional.ofNullable(additionalServiceReservation.getAmount()).filter(a -> a.compareTo(BigDecimal.ZERO) > 0).isPresent()))
-            .map(as -> Pair.of(eventRepository.findById(eventId), as))
-            .ifPresent(pair -> {
-                Event e = pair.getKey();
-                AdditionalService as = pair.getValue();
-                IntStream.range(0, additionalServiceReservation.getQuantity())
-                    .forEach(i -> {
-                        AdditionalServicePriceContainer pc = AdditionalServicePriceContainer.from(additionalServiceReservation.getAmount(), as, e, discount);
-                        var currencyCode = pc.getCurrencyCode();
-                        additionalServiceItemRepository.insert(UUID.randomUUID().toString(),
-                            ZonedDateTime.now(Clock.systemUTC()),
-                            transactionId,
-                            as.getId(),
-                            AdditionalServiceItemStatus.PENDING,
-                            eventId,
-                            pc.getSrcPriceCts(),
-                            unitToCents(pc.getFinalPrice(), currencyCode),
-                            unitToCents(pc.getVAT(), currencyCode),
-                            unitToCents(pc.getAppliedDiscount(), currencyCode),
-                            as.getCurrencyCode());
-                    });
+            .ifPresent(as -> {
+                // all the items share the same price, so we compute it only once and insert them in a single batch
+                AdditionalServicePriceContainer pc = AdditionalServicePriceContainer.from(additionalServiceReservation.getAmount(), as, event, discount);
+                var currencyCode = pc.getCurrencyCode();
+                additionalServiceItemRepository.bulkInsert(additionalServiceReservation.getQuantity(),
+                    ZonedDateTime.now(Clock.systemUTC()),
+                    transactionId,
+                    as.getId(),
+                    AdditionalServiceItemStatus.PENDING,
+                    event.getId(),
+                    pc.getSrcPriceCts(),
+                    unitToCents(pc.getFinalPrice(), currencyCode),
+                    unitToCents(pc.getVAT(), currencyCode),
+                    unitToCents(pc.getAppliedDiscount(), currencyCode),
+                    as.getCurrencyCode());
             });
 
     }
 
+    private int getTicketPoolStripes(EventAndOrganizationId event, int categoryId) {
+        return Math.max(1, configurationManager.getEventConfiguration(event).getInt(TICKET_POOL_STRIPES, categoryId, 1));
+    }
+
     List<Integer> reserveTickets(int eventId, TicketReservationWithOptionalCodeModification ticketReservation, List<TicketStatus> requiredStatuses) {
         return reserveTickets(eventId, ticketReservation.getTicketCategoryId(), ticketReservation.getAmount(), requiredStatuses);
     }
@@ -517,8 +628,7 @@ public class TicketReservationManager {
         });
 
         String invoiceNumber = optionalInvoiceNumber.orElseGet(() -> {
-                int invoiceSequence = invoiceSequencesRepository.lockReservationForUpdate(spec.getEvent().getOrganizationId());
-                invoiceSequencesRepository.incrementSequenceFor(spec.getEvent().getOrganizationId());
+                int invoiceSequence = invoiceSequenceAllocator.nextInvoiceSequence(spec.getEvent().getOrganizationId());
                 String pattern = configurationManager.getFor(ConfigurationKeys.INVOICE_NUMBER_PATTERN, ConfigurationLevel.event(spec.getEvent())).getValueOrDefault("%d");
                 return String.format(pattern, invoiceSequence);
         });
@@ -995,13 +1105,40 @@ public class TicketReservationManager {
         };
     }
 
+    /**
+     * Updates the validity of a reservation and schedules its cleanup for the new deadline.
+     *
+     * @param reservationId the reservation ID
+     * @param validity the new validity
+     */
+    public void updateReservationValidity(String reservationId, Date validity) {
+        ticketReservationRepository.updateValidity(reservationId, validity);
+        reservationExpirationScheduler.schedule(reservationId, validity);
+    }
+
     @Transactional
     public void cleanupExpiredReservations(Date expirationDate) {
-        List<String> expiredReservationIds = ticketReservationRepository.findExpiredReservationForUpdate(expirationDate);
+        cleanupExpiredReservations(ticketReservationRepository.findExpiredReservationForUpdate(expirationDate));
+    }
+
+    /**
+     * Releases the given reservations, if they are still pending and expired.
+     *
+     * @param reservationIds the candidates, as returned by {@link ReservationExpirationScheduler#pollExpired(Date, int)}
+     * @param expirationDate expiration date
+     */
+    public void cleanupExpiredReservations(List<String> reservationIds, Date expirationDate) {
+        if(reservationIds.isEmpty()) {
+            return;
+        }
+        cleanupExpiredReservations(ticketReservationRepository.findExpiredReservationForUpdate(reservationIds, expirationDate));
+    }
+
+    private void cleanupExpiredReservations(List<String> expiredReservationIds) {
         if(expiredReservationIds.isEmpty()) {
             return;
         }
-        
+
         specialPriceRepository.resetToFreeAndCleanupForReservation(expiredReservationIds);
         ticketRepository.resetCategoryIdForUnboundedCategories(expiredReservationIds);
         ticketFieldRepository.deleteAllValuesForReservations(expiredReservationIds);
@@ -1116,9 +1253,34 @@ public class TicketReservationManager {
     }
 
     public TotalPrice totalReservationCostWithVAT(TicketReservation reservation) {
+        return getPriceSnapshot(reservation).totalPrice;
+    }
+
+    private TotalPrice computeTotalReservationCostWithVAT(TicketReservation reservation) {
         return totalReservationCostWithVAT(eventRepository.findByReservationId(reservation.getId()), reservation, ticketRepository.findTicketsInReservation(reservation.getId()));
     }
 
+    /**
+     * Returns the price of the given reservation, computing it only if the reservation has been modified
+     * since the last invocation.
+     */
+    private PriceSnapshot getPriceSnapshot(TicketReservation reservation) {
+        var priceVersion = ticketReservationRepository.findPriceVersion(reservation.getId());
+        if(priceVersion.isEmpty()) {
+            return new PriceSnapshot(computeTotalReservationCostWithVAT(reservation));
+        }
+        var version = priceVersion.get();
+        var key = new PriceSnapshotKey(reservation.getId(), version.getPriceVersion(), eventVersionTracker.getVersion(version.getEventId()),
+            reservation.getVatStatus(), reservation.getPromoCodeDiscountId(), reservation.getUserLanguage());
+        // we don't use cache.get(key, loader) because it would hold a lock while querying the database
+        var snapshot = priceSnapshots.getIfPresent(key);
+        if(snapshot == null) {
+            snapshot = new PriceSnapshot(computeTotalReservationCostWithVAT(reservation));
+            priceSnapshots.put(key, snapshot);
+        }
+        return snapshot;
+    }
+
     public TotalPrice totalReservationCostWithVAT(Event event, TicketReservation reservation, List<Ticket> tickets) {
         Optional<PromoCodeDiscount> promoCodeDiscount = Optional.ofNullable(reservation.getPromoCodeDiscountId()).map(promoCodeDiscountRepository::findById);
         return totalReservationCostWithVAT(promoCodeDiscount.orElse(null), event, reservation.getVatStatus(), tickets, collectAdditionalServiceItems(reservation.getId(), event));
@@ -1149,8 +1311,8 @@ public class TicketReservationManager {
     }
 
     public OrderSummary orderSummaryForReservation(TicketReservation reservation, Event event) {
-        TotalPrice reservationCost = totalReservationCostWithVAT(reservation);
-        PromoCodeDiscount discount = Optional.ofNullable(reservation.getPromoCodeDiscountId()).map(promoCodeDiscountRepository::findById).orElse(null);
+        var priceSnapshot = getPriceSnapshot(reservation);
+        TotalPrice reservationCost = priceSnapshot.totalPrice;
         //
         boolean free = reservationCost.getPriceWithVAT() == 0;
         String refundedAmount = null;
@@ -1163,7 +1325,10 @@ public class TicketReservationManager {
 
         var currencyCode = reservation.getCurrencyCode();
         return new OrderSummary(reservationCost,
-            extractSummary(reservation.getId(), reservation.getVatStatus(), event, LocaleUtil.forLanguageTag(reservation.getUserLanguage()), discount, reservationCost),
+            priceSnapshot.getSummary(() -> {
+                PromoCodeDiscount discount = Optional.ofNullable(reservation.getPromoCodeDiscountId()).map(promoCodeDiscountRepository::findById).orElse(null);
+                return extractSummary(reservation.getId(), reservation.getVatStatus(), event, LocaleUtil.forLanguageTag(reservation.getUserLanguage()), discount, reservationCost);
+            }),
             free,
             formatCents(reservationCost.getPriceWithVAT(), currencyCode),
             formatCents(reservationCost.getVAT(), currencyCode),
@@ -1255,7 +1420,7 @@ public class TicketReservationManager {
     }
 
     public int maxAmountOfTicketsForCategory(EventAndOrganizationId eventAndOrganizationId, int ticketCategoryId) {
-        return configurationManager.getFor(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, ConfigurationLevel.ticketCategory(eventAndOrganizationId, ticketCategoryId)).getValueAsIntOrDefault(5);
+        return configurationManager.getEventConfiguration(eventAndOrganizationId).getInt(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, ticketCategoryId, 5);
     }
     
     public Optional<TicketReservation> findById(String reservationId) {
@@ -1303,9 +1468,11 @@ public class TicketReservationManager {
         ticketRepository.resetCategoryIdForUnboundedCategories(reservationIdsToRemove);
         ticketFieldRepository.deleteAllValuesForReservations(reservationIdsToRemove);
         int updatedAS = additionalServiceItemRepository.updateItemsStatusWithReservationUUID(reservationId, expired ? AdditionalServiceItemStatus.EXPIRED : AdditionalServiceItemStatus.CANCELLED);
-        int updatedTickets = ticketRepository.findTicketIdsInReservation(reservationId).stream().mapToInt(
+        List<Integer> ticketIds = ticketRepository.findTicketIdsInReservation(reservationId);
+        int updatedTickets = ticketIds.stream().mapToInt(
             tickedId -> ticketRepository.releaseExpiredTicket(reservationId, event.getId(), tickedId, UUID.randomUUID().toString())
         ).sum();
+        ticketPdfCache.removeForTickets(ticketIds);
         Validate.isTrue(updatedTickets  + updatedAS > 0, "no items have been updated");
         transactionRepository.deleteForReservations(List.of(reservationId));
         waitingQueueManager.fireReservationExpired(reservationId);
@@ -1368,6 +1535,7 @@ public class TicketReservationManager {
         String newEmail = StringUtils.trim(updateTicketOwner.getEmail());
         CustomerName customerName = new CustomerName(updateTicketOwner.getFullName(), updateTicketOwner.getFirstName(), updateTicketOwner.getLastName(), event.mustUseFirstAndLastName(), false);
         ticketRepository.updateTicketOwner(ticket.getUuid(), newEmail, customerName.getFullName(), customerName.getFirstName(), customerName.getLastName());
+        ticketPdfCache.removeForTickets(singletonList(ticket.getId()));
 
         //
         Locale userLocale = Optional.ofNullable(StringUtils.trimToNull(updateTicketOwner.getUserLanguage())).map(LocaleUtil::forLanguageTag).orElse(locale);
@@ -1648,8 +1816,7 @@ public class TicketReservationManager {
         var category = ticketCategoryRepository.getByIdAndActive(ticket.getCategoryId(), event.getId());
         var isFree = ticket.getFinalPriceCts() == 0;
 
-        var configurationLevel = ticket.getCategoryId() != null ? ConfigurationLevel.ticketCategory(event, ticket.getCategoryId()) : ConfigurationLevel.event(event);
-        var enableFreeCancellation = configurationManager.getFor(ALLOW_FREE_TICKETS_CANCELLATION, configurationLevel).getValueAsBooleanOrDefault(false);
+        var enableFreeCancellation = configurationManager.getEventConfiguration(event).getBoolean(ALLOW_FREE_TICKETS_CANCELLATION, ticket.getCategoryId(), false);
         var conditionsMet = CategoryEvaluator.isTicketCancellationAvailable(ticketCategoryRepository, ticket);
 
         // reported the conditions of TicketDecorator.getCancellationEnabled
@@ -1662,6 +1829,7 @@ public class TicketReservationManager {
         //#365 - reset UUID when releasing a ticket
         int result = ticketRepository.releaseTicket(reservationId, UUID.randomUUID().toString(), event.getId(), ticket.getId());
         Validate.isTrue(result == 1, String.format("Expected 1 row to be updated, got %d", result));
+        ticketPdfCache.removeForTickets(singletonList(ticket.getId()));
         if(category.isAccessRestricted() || !category.isBounded()) {
             ticketRepository.unbindTicketsFromCategory(event.getId(), category.getId(), singletonList(ticket.getId()));
         }
@@ -1694,7 +1862,7 @@ public class TicketReservationManager {
     }
 
     public int getReservationTimeout(EventAndOrganizationId event) {
-        return configurationManager.getFor(RESERVATION_TIMEOUT, ConfigurationLevel.event(event)).getValueAsIntOrDefault(25);
+        return configurationManager.getEventConfiguration(event).getInt(RESERVATION_TIMEOUT, 25);
     }
 
     public void validateAndConfirmOfflinePayment(String reservationId, Event event, BigDecimal paidAmount, String username) {
@@ -1895,7 +2063,7 @@ public class TicketReservationManager {
                             cancelReservation(reservation, false, null);
                             break;
                         } else if(DateUtils.addMinutes(expiration, -slackTime).before(now)) {
-                            ticketReservationRepository.updateValidity(reservation.getId(), DateUtils.addMinutes(now, slackTime));
+                            updateReservationValidity(reservation.getId(), DateUtils.addMinutes(now, slackTime));
                         }
                         reTransitionToPending(reservation.getId());
                         sendTransactionFailedEmail(event, reservation, paymentMethod, paymentWebhookResult, false);
@@ -2076,4 +2244,33 @@ public class TicketReservationManager {
             return false;
         }
     }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class PriceSnapshotKey {
+        private final String reservationId;
+        private final long priceVersion;
+        private final long eventVersion;
+        private final PriceContainer.VatStatus vatStatus;
+        private final Integer promoCodeDiscountId;
+        private final String userLanguage;
+    }
+
+    private static class PriceSnapshot {
+        private final TotalPrice totalPrice;
+        private volatile List<SummaryRow> summary;
+
+        private PriceSnapshot(TotalPrice totalPrice) {
+            this.totalPrice = totalPrice;
+        }
+
+        private List<SummaryRow> getSummary(Supplier<List<SummaryRow>> loader) {
+            var result = summary;
+            if(result == null) {
+                result = List.copyOf(loader.get());
+                summary = result;
+            }
+            return result;
+        }
+    }
 }
@@ -0,0 +1,87 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.repository.TicketStatusCountRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the ticket counters behind the statistics views (<code>events_statistics</code>,
+ * <code>ticket_category_statistics</code>) small and consistent with the ticket table.
+ * <p>
+ * The counters are maintained by a trigger on the ticket table, so they should never drift: the repairs are logged
+ * as warnings.
+ */
+@Component
+@Log4j2
+public class TicketStatisticsManager {
+
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private final TicketStatusCountRepository ticketStatusCountRepository;
+    private final TransactionTemplate requiresNewTransactionTemplate;
+
+    public TicketStatisticsManager(TicketStatusCountRepository ticketStatusCountRepository,
+                                   PlatformTransactionManager transactionManager) {
+        this.ticketStatusCountRepository = ticketStatusCountRepository;
+        this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+    }
+
+    /**
+     * Repairs and compacts the counters of all the events. Each event is processed in its own transaction and
+     * skipped if another instance is already processing it.
+     *
+     * @return the number of counters which have been repaired
+     */
+    public int checkConsistency() {
+        int repaired = 0;
+        for (Integer eventId : ticketStatusCountRepository.findEventIds()) {
+            Integer result = requiresNewTransactionTemplate.execute(status -> {
+                if (!ticketStatusCountRepository.tryLockEvent(eventId)) {
+                    return 0;
+                }
+                int count = ticketStatusCountRepository.repair(eventId);
+                ticketStatusCountRepository.compact(eventId);
+                return count;
+            });
+            if (result != null && result > 0) {
+                log.warn("repaired {} ticket counters for event {}", result, eventId);
+                repaired += result;
+            }
+        }
+        return repaired;
+    }
+
+    /**
+     * Compacts the counters of the events which have been modified heavily since the last run, e.g. during a sale.
+     */
+    public void compactCounters() {
+        for (Integer eventId : ticketStatusCountRepository.findEventIdsWithMoreRowsThan(COMPACTION_THRESHOLD)) {
+            requiresNewTransactionTemplate.execute(status -> {
+                if (ticketStatusCountRepository.tryLockEvent(eventId)) {
+                    ticketStatusCountRepository.compact(eventId);
+                }
+                return null;
+            });
+        }
+    }
+}
@@ -19,11 +19,16 @@ package alfio.manager;
 import alfio.model.UploadedResource;
 import alfio.model.modification.UploadBase64FileModification;
 import alfio.repository.UploadedResourceRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Value;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -32,6 +37,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 @Component
 @Transactional
@@ -41,8 +48,20 @@ public class UploadedResourceManager {
     public static final String ATTR_IMG_WIDTH = "width";
     public static final String ATTR_IMG_HEIGHT = "height";
 
+    private static final Object MODIFIED_IN_TRANSACTION = new Object();
+
     private final UploadedResourceRepository uploadedResourceRepository;
 
+    /**
+     * Resolved templates, including the missing ones, by (organization, event, name). Entries are evicted on each
+     * upload or deletion; the short expiration bounds the staleness when the resources are modified by another node.
+     */
+    private final Cache<ResolutionKey, Optional<byte[]>> resolvedResources = Caffeine.newBuilder()
+        .maximumWeight(20_000_000)
+        .<ResolutionKey, Optional<byte[]>>weigher((k, v) -> v.map(c -> c.length).orElse(0) + k.name.length())
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .build();
+
     @Autowired
     public UploadedResourceManager(UploadedResourceRepository uploadedResourceRepository) {
         this.uploadedResourceRepository = uploadedResourceRepository;
@@ -90,6 +109,7 @@ public class UploadedResourceManager {
             uploadedResourceRepository.delete(file.getName());
         }
 
+        resourcesModified(k -> true);
         return Optional.ofNullable(uploadedResourceRepository.upload(null, null, file, getAttributes(file)));
     }
 
@@ -98,6 +118,7 @@ public class UploadedResourceManager {
             uploadedResourceRepository.delete(organizationId, file.getName());
         }
 
+        resourcesModified(k -> k.organizationId == organizationId);
         return Optional.ofNullable(uploadedResourceRepository.upload(organizationId, null, file, getAttributes(file)));
     }
 
@@ -106,18 +127,22 @@ public class UploadedResourceManager {
             uploadedResourceRepository.delete(organizationId, eventId, file.getName());
         }
 
+        resourcesModified(k -> k.organizationId == organizationId && k.eventId == eventId);
         return Optional.ofNullable(uploadedResourceRepository.upload(organizationId, eventId, file, getAttributes(file)));
     }
 
     public void deleteResource(String name) {
+        resourcesModified(k -> true);
         uploadedResourceRepository.delete(name);
     }
 
     public void deleteResource(int organizationId, String name) {
+        resourcesModified(k -> k.organizationId == organizationId);
         uploadedResourceRepository.delete(organizationId, name);
     }
 
     public void deleteResource(int organizationId, int eventId, String name) {
+        resourcesModified(k -> k.organizationId == organizationId && k.eventId == eventId);
         uploadedResourceRepository.delete(organizationId, eventId, name);
     }
 
@@ -150,19 +175,41 @@ public class UploadedResourceManager {
         }
     }
 
+    /**
+     * Returns the content of the most specific resource with the given name (event, then organization, then system).
+     * The result is cached, unless the current transaction has modified the uploaded resources.
+     */
     public Optional<byte[]> findCascading(int organizationId, int eventId, String savedName) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        if(hasResource(organizationId, eventId, savedName)) {
-            outputResource(organizationId, eventId, savedName, baos);
-            return Optional.of(baos.toByteArray());
-        } else if (hasResource(organizationId, savedName)) {
-            outputResource(organizationId, savedName, baos);
-            return Optional.of(baos.toByteArray());
-        } else if (hasResource(savedName)) {
-            outputResource(savedName, baos);
-            return Optional.of(baos.toByteArray());
-        } else {
-            return Optional.empty();
+        if(TransactionSynchronizationManager.hasResource(MODIFIED_IN_TRANSACTION)) {
+            return uploadedResourceRepository.findCascadingContent(organizationId, eventId, savedName);
+        }
+        return resolvedResources.get(new ResolutionKey(organizationId, eventId, savedName),
+            k -> uploadedResourceRepository.findCascadingContent(organizationId, eventId, savedName));
+    }
+
+    /**
+     * Evicts the matching resolved resources now and, if there is a transaction, all of them once it has been completed.
+     * Until then, the transaction reads the resources from the database.
+     */
+    private void resourcesModified(Predicate<ResolutionKey> filter) {
+        resolvedResources.asMap().keySet().removeIf(filter);
+        if(TransactionSynchronizationManager.isSynchronizationActive()
+            && !TransactionSynchronizationManager.hasResource(MODIFIED_IN_TRANSACTION)) {
+            TransactionSynchronizationManager.bindResource(MODIFIED_IN_TRANSACTION, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MODIFIED_IN_TRANSACTION);
+                    resolvedResources.invalidateAll();
+                }
+            });
         }
     }
+
+    @Value
+    private static class ResolutionKey {
+        int organizationId;
+        int eventId;
+        String name;
+    }
 }
@@ -16,27 +16,43 @@
  */
 package alfio.manager.i18n;
 
+import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.ConfigurationManager;
 import alfio.model.EventAndOrganizationId;
-import alfio.repository.system.ConfigurationRepository;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
 import alfio.util.CustomResourceBundleMessageSource;
+import alfio.util.Json;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.context.MessageSource;
 import org.springframework.context.support.AbstractMessageSource;
 
 import java.text.MessageFormat;
-import java.util.Locale;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static alfio.model.system.ConfigurationKeys.TRANSLATION_OVERRIDE;
 
 public class MessageSourceManager {
 
+    private static final TypeReference<Map<String, Map<String, String>>> OVERRIDE_TYPE = new TypeReference<>() {};
+
     private final CustomResourceBundleMessageSource messageSource;
-    private final ConfigurationRepository configurationRepository;
+    private final ConfigurationManager configurationManager;
+    // the key is the list of the raw overrides, from the least to the most specific level. Since a modification of
+    // TRANSLATION_OVERRIDE always produces a different key, entries don't need to be invalidated explicitly
+    private final Cache<List<String>, MessageSourceWithOverride> messageSources = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .build();
 
     public MessageSourceManager(CustomResourceBundleMessageSource messageSource,
-                                ConfigurationRepository configurationRepository) {
+                                ConfigurationManager configurationManager) {
         this.messageSource = messageSource;
-        this.configurationRepository = configurationRepository;
+        this.configurationManager = configurationManager;
     }
 
     public Set<String> getKeys(String basename, Locale locale) {
@@ -44,8 +60,8 @@ public class MessageSourceManager {
     }
 
     public Pair<MessageSource, Map<String, Map<String, String>>> getMessageSourceForEventAndOverride(EventAndOrganizationId eventAndOrganizationId) {
-        var override = configurationRepository.getEventOverrideMessages(eventAndOrganizationId.getOrganizationId(), eventAndOrganizationId.getId());
-        return Pair.of(new MessageSourceWithOverride(messageSource, override), override);
+        var source = getMessageSourceWithOverride(ConfigurationLevel.event(eventAndOrganizationId));
+        return Pair.of(source, source.override);
     }
 
     public MessageSource getMessageSourceForEvent(EventAndOrganizationId eventAndOrganizationId) {
@@ -58,16 +74,33 @@ public class MessageSourceManager {
 
     public MessageSource getRootMessageSource(boolean withSystemOverride) {
         if (withSystemOverride) {
-            return new MessageSourceWithOverride(messageSource, configurationRepository.getSystemOverrideMessages());
+            return getMessageSourceWithOverride(ConfigurationLevel.system());
         } else {
             return messageSource;
         }
     }
 
+    private MessageSourceWithOverride getMessageSourceWithOverride(ConfigurationLevel configurationLevel) {
+        var overrides = configurationManager.getAllLevels(TRANSLATION_OVERRIDE, configurationLevel).stream()
+            .map(ConfigurationKeyValuePathLevel::getValue)
+            .filter(StringUtils::isNotBlank)
+            .collect(Collectors.toList());
+        return messageSources.get(overrides, list -> new MessageSourceWithOverride(messageSource, merge(list)));
+    }
+
+    static Map<String, Map<String, String>> merge(List<String> overrides) {
+        var result = new HashMap<String, Map<String, String>>();
+        for (String override : overrides) {
+            Json.fromJson(override, OVERRIDE_TYPE).forEach((language, messages) -> result.computeIfAbsent(language, l -> new HashMap<>()).putAll(messages));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
     private static class MessageSourceWithOverride extends AbstractMessageSource {
 
         private final CustomResourceBundleMessageSource messageSource;
         private final Map<String, Map<String, String>> override;
+        private final Map<String, Map<Locale, MessageFormat>> compiledOverride = new ConcurrentHashMap<>();
 
         private MessageSourceWithOverride(CustomResourceBundleMessageSource messageSource, Map<String, Map<String, String>> override) {
             this.messageSource = messageSource;
@@ -78,7 +111,9 @@ public class MessageSourceManager {
         protected MessageFormat resolveCode(String s, Locale locale) {
             var language = locale.getLanguage();
             if (override.containsKey(language) && override.get(language).containsKey(s)) {
-                return new MessageFormat(override.get(language).get(s), locale);
+                // MessageFormat instances are shared: AbstractMessageSource synchronizes on them while formatting
+                return compiledOverride.computeIfAbsent(s, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(locale, l -> new MessageFormat(override.get(language).get(s), l));
             }
             return messageSource.getMessageFormatFor(s, locale);
         }
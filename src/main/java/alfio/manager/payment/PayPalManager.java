@@ -17,6 +17,7 @@
 package alfio.manager.payment;
 
 import alfio.manager.PaymentManager;
+import alfio.manager.ReservationExpirationScheduler;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.manager.support.FeeCalculator;
 import alfio.manager.support.PaymentResult;
@@ -76,6 +77,7 @@ public class PayPalManager implements PaymentProvider, RefundRequest, PaymentInf
     private final TicketRepository ticketRepository;
     private final TransactionRepository transactionRepository;
     private final Json json;
+    private final ReservationExpirationScheduler reservationExpirationScheduler;
 
     private APIContext getApiContext(EventAndOrganizationId event) {
 
@@ -176,7 +178,10 @@ public class PayPalManager implements PaymentProvider, RefundRequest, PaymentInf
 
 
         //add 15 minutes of validity in case the paypal flow is slow
-        ticketReservationRepository.updateValidity(spec.getReservationId(), DateUtils.addMinutes(reservation.getValidity(), 15));
+        // TicketReservationManager depends on this class, so the cleanup is rescheduled here
+        Date validity = DateUtils.addMinutes(reservation.getValidity(), 15);
+        ticketReservationRepository.updateValidity(spec.getReservationId(), validity);
+        reservationExpirationScheduler.schedule(spec.getReservationId(), validity);
 
         if(!"created".equals(createdPayment.getState())) {
             throw new Exception(createdPayment.getFailureReason());
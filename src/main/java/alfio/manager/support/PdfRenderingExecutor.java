@@ -0,0 +1,192 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.util.TemplateResource;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the PDF layout on a dedicated, bounded pool, so that a burst of documents cannot take every core away
+ * from the request threads.
+ * <p>
+ * The caller waits for the result. If the queue is full, or the document has not been rendered within the configured
+ * timeout, a {@link PdfRenderingRejectedException} is thrown: the API endpoints answer with 503 (see
+ * {@link alfio.controller.api.ApiControllerExceptionHandler}), while the email job will retry the message later.
+ */
+@Component
+@Log4j2
+public class PdfRenderingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final int queueSize;
+    private final long timeoutMillis;
+    private final Map<TemplateResource, DocumentCounters> counters = new ConcurrentHashMap<>();
+
+    public PdfRenderingExecutor(@Value("${alfio.pdf-rendering.threads:0}") int threads,
+                                @Value("${alfio.pdf-rendering.queue-size:100}") int queueSize,
+                                @Value("${alfio.pdf-rendering.timeout-seconds:60}") int timeoutSeconds) {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        var threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(queueSize), r -> {
+            var thread = new Thread(r, "pdf-renderer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.queueSize = queueSize;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        log.info("PDF rendering pool: {} threads, queue size {}, timeout {}s", poolSize, queueSize, timeoutSeconds);
+    }
+
+    /**
+     * Runs the given task on the rendering pool and waits for its completion. The task writes into a buffer owned by
+     * the pool thread, so that a task which keeps running after a timeout never touches the caller's streams.
+     *
+     * @param documentType the document being rendered
+     * @param task the rendering task
+     * @return the rendered document
+     * @throws PdfRenderingRejectedException if the queue is full, or if the task did not complete within the timeout
+     */
+    public byte[] render(TemplateResource documentType, RenderingTask task) throws IOException {
+        var documentCounters = counters.computeIfAbsent(documentType, k -> new DocumentCounters());
+        long submitted = System.nanoTime();
+        Future<byte[]> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                documentCounters.queueNanos.add(start - submitted);
+                var out = new ByteArrayOutputStream();
+                try {
+                    task.render(out);
+                } catch (IOException | RuntimeException | Error e) {
+                    documentCounters.failed.increment();
+                    throw e;
+                }
+                documentCounters.rendered(System.nanoTime() - start);
+                return out.toByteArray();
+            });
+        } catch (RejectedExecutionException e) {
+            documentCounters.rejected.increment();
+            throw new PdfRenderingRejectedException("Cannot render " + documentType + ": the rendering queue is full");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            documentCounters.timedOut.increment();
+            throw new PdfRenderingRejectedException("Cannot render " + documentType + ": timeout expired");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public Statistics getStatistics() {
+        var documents = counters.entrySet().stream()
+            .collect(Collectors.toMap(e -> e.getKey().name(), e -> e.getValue().snapshot()));
+        return new Statistics(executor.getMaximumPoolSize(), executor.getActiveCount(), executor.getQueue().size(), queueSize, documents);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    public interface RenderingTask {
+        void render(OutputStream out) throws IOException;
+    }
+
+    public static class PdfRenderingRejectedException extends IllegalStateException {
+        PdfRenderingRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class DocumentCounters {
+        private final LongAdder rendered = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LongAdder renderNanos = new LongAdder();
+        private final LongAccumulator maxRenderNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder queueNanos = new LongAdder();
+
+        private void rendered(long nanos) {
+            rendered.increment();
+            renderNanos.add(nanos);
+            maxRenderNanos.accumulate(nanos);
+        }
+
+        private DocumentStatistics snapshot() {
+            long count = rendered.sum();
+            long started = count + failed.sum();
+            return new DocumentStatistics(count, failed.sum(), rejected.sum(), timedOut.sum(),
+                count > 0 ? TimeUnit.NANOSECONDS.toMillis(renderNanos.sum() / count) : 0,
+                TimeUnit.NANOSECONDS.toMillis(maxRenderNanos.get()),
+                started > 0 ? TimeUnit.NANOSECONDS.toMillis(queueNanos.sum() / started) : 0);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Statistics {
+        private final int threads;
+        private final int activeThreads;
+        private final int queueDepth;
+        private final int queueCapacity;
+        private final Map<String, DocumentStatistics> documents;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class DocumentStatistics {
+        private final long rendered;
+        private final long failed;
+        private final long rejected;
+        private final long timedOut;
+        private final long averageRenderMillis;
+        private final long maxRenderMillis;
+        private final long averageQueueMillis;
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.manager.EventVersionTracker;
+import alfio.manager.system.ConfigurationLevels.CategoryLevel;
+import alfio.manager.system.ConfigurationLevels.EventLevel;
+import alfio.manager.system.ConfigurationLevels.OrganizationLevel;
+import alfio.model.EventAndOrganizationId;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.repository.system.ConfigurationRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory copy of the configuration, organized by level (system, organization, event, category).
+ * Each level is loaded with a single query the first time it is needed, and the override chain is then
+ * resolved in memory.
+ * <p>
+ * Every write through {@link ConfigurationRepository} (see {@link ConfigurationChangeTracker}) evicts the local entries
+ * immediately and again once the current transaction has been completed. In the meantime, that transaction reads the
+ * configuration from the database, so that it can see its own modifications and uncommitted values are never cached.
+ * <p>
+ * The other nodes are notified through the {@value #CHANNEL} channel (see the {@code trf_notify_configuration_change} trigger),
+ * which is polled by the {@link DatabaseNotificationListener}. If the notification channel is not available,
+ * the cached levels are considered valid for {@value #FALLBACK_TTL_MS} ms.
+ * <p>
+ * Each modification increments a version, so that the {@link EventConfigurationSnapshot}s are rebuilt only if
+ * the configuration of their event (or of its organization, or the system configuration) has been modified.
+ */
+@Component
+@Log4j2
+public class ConfigurationCache {
+
+    static final String CHANNEL = "alfio_configuration";
+    static final long FALLBACK_TTL_MS = 5000;
+    private static final Object DIRTY_TRANSACTIONS = new Object();
+
+    private final ConfigurationRepository configurationRepository;
+    private final DatabaseNotificationListener notificationListener;
+    private final EventVersionTracker eventVersionTracker;
+    private final Cache<Scope, LevelConfiguration> cache = Caffeine.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(10, TimeUnit.MINUTES)
+        .recordStats()
+        .build();
+    private final Cache<Integer, EventConfigurationSnapshot> snapshots = Caffeine.newBuilder()
+        .maximumSize(1000)
+        .expireAfterAccess(10, TimeUnit.MINUTES)
+        .build();
+    private final LongAdder bypassed = new LongAdder();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Integer, Long> lastOrganizationChange = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> lastEventChange = new ConcurrentHashMap<>();
+    private volatile long lastGlobalChange = 0;
+    private volatile long lastSystemChange = 0;
+
+    public ConfigurationCache(ConfigurationRepository configurationRepository,
+                              DatabaseNotificationListener notificationListener,
+                              EventVersionTracker eventVersionTracker) {
+        this.configurationRepository = configurationRepository;
+        this.notificationListener = notificationListener;
+        this.eventVersionTracker = eventVersionTracker;
+        notificationListener.subscribe(CHANNEL, new DatabaseNotificationListener.NotificationHandler() {
+            @Override
+            public void onNotification(String payload) {
+                Scope.parse(payload).ifPresentOrElse(ConfigurationCache.this::invalidate, ConfigurationCache.this::invalidateAll);
+            }
+
+            @Override
+            public void onReset() {
+                invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * Returns the configuration values defined for the given keys, on the given level and on its parents.
+     *
+     * @param keys the keys to look for
+     * @param configurationLevel the most specific level
+     * @return the values found, in no particular order. A key can be present multiple times, once for each level
+     */
+    List<ConfigurationKeyValuePathLevel> find(Collection<ConfigurationKeys> keys, ConfigurationLevel configurationLevel) {
+        notificationListener.start();
+        if(TransactionSynchronizationManager.hasResource(DIRTY_TRANSACTIONS)) {
+            bypassed.increment();
+            return findInDatabase(keys.stream().map(ConfigurationKeys::getValue).collect(Collectors.toSet()), configurationLevel);
+        }
+        List<ConfigurationKeyValuePathLevel> result = new ArrayList<>();
+        for (Scope scope : Scope.chain(configurationLevel)) {
+            var values = get(scope).values;
+            for (ConfigurationKeys key : keys) {
+                var value = values.get(key);
+                if(value != null) {
+                    result.add(value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the configuration of the given event and of its categories. The snapshot is rebuilt only if
+     * the configuration has been modified since it was loaded.
+     *
+     * @param event the event
+     * @return the snapshot
+     */
+    EventConfigurationSnapshot getEventConfiguration(EventAndOrganizationId event) {
+        notificationListener.start();
+        if(TransactionSynchronizationManager.hasResource(DIRTY_TRANSACTIONS)) {
+            bypassed.increment();
+            return loadSnapshot(event, -1);
+        }
+        var cached = snapshots.getIfPresent(event.getId());
+        if(isValid(cached, event)) {
+            return cached;
+        }
+        if(!canPopulate()) {
+            return loadSnapshot(event, currentVersion(event));
+        }
+        return snapshots.asMap().compute(event.getId(), (id, current) -> isValid(current, event) ? current : loadSnapshot(event, currentVersion(event)));
+    }
+
+    /**
+     * Evicts all the cached values. If there is an active transaction, the values will be read from the database
+     * until the transaction has been completed.
+     */
+    void configurationModified() {
+        invalidateAll();
+        if(TransactionSynchronizationManager.isSynchronizationActive()
+            && TransactionSynchronizationManager.getSynchronizations().stream().noneMatch(s -> s instanceof InvalidateOnCompletion)) {
+            var dirtyTransactions = (MutableInt) TransactionSynchronizationManager.getResource(DIRTY_TRANSACTIONS);
+            if(dirtyTransactions == null) {
+                dirtyTransactions = new MutableInt();
+                TransactionSynchronizationManager.bindResource(DIRTY_TRANSACTIONS, dirtyTransactions);
+            }
+            dirtyTransactions.increment();
+            TransactionSynchronizationManager.registerSynchronization(new InvalidateOnCompletion());
+        }
+    }
+
+    public Statistics getStatistics() {
+        var stats = cache.stats();
+        boolean notificationsEnabled = notificationListener.isListening();
+        return new Statistics(stats.requestCount(), stats.hitCount(), stats.hitRate(), bypassed.sum(),
+            cache.estimatedSize(), notificationsEnabled, notificationsEnabled ? DatabaseNotificationListener.POLL_INTERVAL_MS : FALLBACK_TTL_MS);
+    }
+
+    private void invalidateAll() {
+        lastGlobalChange = sequence.incrementAndGet();
+        cache.invalidateAll();
+        snapshots.invalidateAll();
+        eventVersionTracker.allEventsModifiedInDatabase();
+    }
+
+    private void invalidate(Scope scope) {
+        long version = sequence.incrementAndGet();
+        switch(scope.pathLevel) {
+            case SYSTEM:
+                lastSystemChange = version;
+                eventVersionTracker.allEventsModifiedInDatabase();
+                break;
+            case ORGANIZATION:
+                lastOrganizationChange.put(scope.organizationId, version);
+                eventVersionTracker.allEventsModifiedInDatabase();
+                break;
+            default:
+                lastEventChange.put(scope.eventId, version);
+                eventVersionTracker.eventModifiedInDatabase(scope.eventId);
+        }
+        cache.invalidate(scope);
+    }
+
+    private long currentVersion(EventAndOrganizationId event) {
+        return Math.max(Math.max(lastGlobalChange, lastSystemChange),
+            Math.max(lastOrganizationChange.getOrDefault(event.getOrganizationId(), 0L), lastEventChange.getOrDefault(event.getId(), 0L)));
+    }
+
+    private boolean isValid(EventConfigurationSnapshot snapshot, EventAndOrganizationId event) {
+        return snapshot != null
+            && snapshot.getOrganizationId() == event.getOrganizationId()
+            && snapshot.getVersion() == currentVersion(event)
+            && !isStale(snapshot.loadedAt);
+    }
+
+    private EventConfigurationSnapshot loadSnapshot(EventAndOrganizationId event, long version) {
+        return EventConfigurationSnapshot.from(event, version, configurationRepository.findAllForEvent(event.getOrganizationId(), event.getId()));
+    }
+
+    private static boolean canPopulate() {
+        // the snapshot of the current transaction could be older than the latest modification, so we must not cache it
+        Integer isolationLevel = TransactionSynchronizationManager.getCurrentTransactionIsolationLevel();
+        return isolationLevel == null || isolationLevel <= Connection.TRANSACTION_READ_COMMITTED;
+    }
+
+    private LevelConfiguration get(Scope scope) {
+        if(!canPopulate()) {
+            var cached = cache.getIfPresent(scope);
+            return cached != null && !isStale(cached.loadedAt) ? cached : load(scope);
+        }
+        var cached = Objects.requireNonNull(cache.get(scope, this::load));
+        if(isStale(cached.loadedAt)) {
+            cached = cache.asMap().compute(scope, (s, current) -> current == null || isStale(current.loadedAt) ? load(s) : current);
+        }
+        return cached;
+    }
+
+    private boolean isStale(long loadedAt) {
+        return !notificationListener.isListening() && System.currentTimeMillis() - loadedAt >= FALLBACK_TTL_MS;
+    }
+
+    private LevelConfiguration load(Scope scope) {
+        List<ConfigurationKeyValuePathLevel> found;
+        switch(scope.pathLevel) {
+            case SYSTEM:
+                found = configurationRepository.findAllAtSystemLevel();
+                break;
+            case ORGANIZATION:
+                found = configurationRepository.findAllAtOrganizationLevel(scope.organizationId);
+                break;
+            case EVENT:
+                found = configurationRepository.findAllAtEventLevel(scope.organizationId, scope.eventId);
+                break;
+            case TICKET_CATEGORY:
+                found = configurationRepository.findAllAtCategoryLevel(scope.organizationId, scope.eventId, scope.categoryId);
+                break;
+            default:
+                found = List.of();
+        }
+        var values = new EnumMap<ConfigurationKeys, ConfigurationKeyValuePathLevel>(ConfigurationKeys.class);
+        for (ConfigurationKeyValuePathLevel value : found) {
+            if(value.getConfigurationKey() != ConfigurationKeys.NOT_RECOGNIZED) {
+                values.put(value.getConfigurationKey(), value);
+            }
+        }
+        return new LevelConfiguration(values, System.currentTimeMillis());
+    }
+
+    private List<ConfigurationKeyValuePathLevel> findInDatabase(Set<String> keysAsString, ConfigurationLevel configurationLevel) {
+        switch(configurationLevel.getPathLevel()) {
+            case SYSTEM:
+                return configurationRepository.findByKeysAtSystemLevel(keysAsString);
+            case ORGANIZATION:
+                return configurationRepository.findByOrganizationAndKeys(((OrganizationLevel)configurationLevel).organizationId, keysAsString);
+            case EVENT:
+                var eventLevel = (EventLevel) configurationLevel;
+                return configurationRepository.findByEventAndKeys(eventLevel.organizationId, eventLevel.eventId, keysAsString);
+            case TICKET_CATEGORY:
+                var categoryLevel = (CategoryLevel) configurationLevel;
+                return configurationRepository.findByTicketCategoryAndKeys(categoryLevel.organizationId, categoryLevel.eventId, categoryLevel.categoryId, keysAsString);
+            default:
+                return List.of();
+        }
+    }
+
+    private class InvalidateOnCompletion extends TransactionSynchronizationAdapter {
+        @Override
+        public void afterCompletion(int status) {
+            var dirtyTransactions = (MutableInt) TransactionSynchronizationManager.getResource(DIRTY_TRANSACTIONS);
+            if(dirtyTransactions != null && dirtyTransactions.decrementAndGet() <= 0) {
+                TransactionSynchronizationManager.unbindResource(DIRTY_TRANSACTIONS);
+            }
+            invalidateAll();
+        }
+    }
+
+    @AllArgsConstructor
+    private static class LevelConfiguration {
+        private final Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> values;
+        private final long loadedAt;
+    }
+
+    /**
+     * Identifies a configuration level and its owner. The string representation must match the one produced by
+     * the {@code configuration_scope} database function.
+     */
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    static class Scope {
+        private static final Scope SYSTEM = new Scope(ConfigurationPathLevel.SYSTEM, -1, -1, -1);
+
+        private final ConfigurationPathLevel pathLevel;
+        private final int organizationId;
+        private final int eventId;
+        private final int categoryId;
+
+        static List<Scope> chain(ConfigurationLevel configurationLevel) {
+            switch(configurationLevel.getPathLevel()) {
+                case SYSTEM:
+                    return List.of(SYSTEM);
+                case ORGANIZATION:
+                    var organizationLevel = (OrganizationLevel) configurationLevel;
+                    return List.of(SYSTEM, organization(organizationLevel.organizationId));
+                case EVENT:
+                    var eventLevel = (EventLevel) configurationLevel;
+                    return List.of(SYSTEM, organization(eventLevel.organizationId), event(eventLevel.organizationId, eventLevel.eventId));
+                case TICKET_CATEGORY:
+                    var categoryLevel = (CategoryLevel) configurationLevel;
+                    return List.of(SYSTEM, organization(categoryLevel.organizationId),
+                        event(categoryLevel.organizationId, categoryLevel.eventId),
+                        new Scope(ConfigurationPathLevel.TICKET_CATEGORY, categoryLevel.organizationId, categoryLevel.eventId, categoryLevel.categoryId));
+                default:
+                    return List.of();
+            }
+        }
+
+        /**
+         * @param notificationPayload the notification payload, e.g. EVENT:1:2
+         * @return the corresponding scope, or an empty Optional if the payload is not valid
+         */
+        static Optional<Scope> parse(String notificationPayload) {
+            String[] parts = StringUtils.split(StringUtils.trimToEmpty(notificationPayload), ':');
+            if(parts.length == 0) {
+                return Optional.empty();
+            }
+            int[] ids = new int[] {-1, -1, -1};
+            for (int i = 1; i < parts.length && i <= ids.length; i++) {
+                ids[i - 1] = NumberUtils.toInt(parts[i], -1);
+            }
+            return Arrays.stream(ConfigurationPathLevel.values())
+                .filter(l -> l.name().equals(parts[0]))
+                .findFirst()
+                .filter(l -> parts.length == l.getPriority() + 1)
+                .map(l -> new Scope(l, ids[0], ids[1], ids[2]));
+        }
+
+        private static Scope organization(int organizationId) {
+            return new Scope(ConfigurationPathLevel.ORGANIZATION, organizationId, -1, -1);
+        }
+
+        private static Scope event(int organizationId, int eventId) {
+            return new Scope(ConfigurationPathLevel.EVENT, organizationId, eventId, -1);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Statistics {
+        private final long requestCount;
+        private final long hitCount;
+        private final double hitRatio;
+        private final long bypassedCount;
+        private final long size;
+        private final boolean notificationsEnabled;
+        private final long stalenessBoundMillis;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.repository.system.ConfigurationRepository;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decorates the {@link ConfigurationRepository} in order to notify the {@link ConfigurationCache} whenever
+ * a configuration value is inserted, updated or deleted, regardless of the caller.
+ */
+@Component
+public class ConfigurationChangeTracker implements BeanPostProcessor {
+
+    private final ObjectProvider<ConfigurationCache> configurationCache;
+
+    public ConfigurationChangeTracker(ObjectProvider<ConfigurationCache> configurationCache) {
+        this.configurationCache = configurationCache;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if(!(bean instanceof ConfigurationRepository)) {
+            return bean;
+        }
+        var proxyFactory = new ProxyFactory(bean);
+        proxyFactory.addInterface(ConfigurationRepository.class);
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            Object result = invocation.proceed();
+            if(isModifying(invocation.getMethod().getName())) {
+                configurationCache.getObject().configurationModified();
+            }
+            return result;
+        });
+        return proxyFactory.getProxy(ConfigurationRepository.class.getClassLoader());
+    }
+
+    static boolean isModifying(String methodName) {
+        return methodName.startsWith("insert") || methodName.startsWith("update") || methodName.startsWith("delete");
+    }
+}
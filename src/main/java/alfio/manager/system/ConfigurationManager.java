@@ -69,6 +69,7 @@ public class ConfigurationManager {
     private final ConfigurationRepository configurationRepository;
     private final UserManager userManager;
     private final EventRepository eventRepository;
+    private final ConfigurationCache configurationCache;
 
     //TODO: refactor, not the most beautiful code, find a better solution...
 <<<<<<< HEAD
@@ -518,28 +519,35 @@ public class ConfigurationManager {
     }
 
     public Map<ConfigurationKeys, MaybeConfiguration> getFor(Collection<ConfigurationKeys> keys, ConfigurationLevel configurationLevel) {
-        var keysAsString = keys.stream().map(ConfigurationKeys::getValue).collect(Collectors.toSet());
-        List<ConfigurationKeyValuePathLevel> found; // waiting for switch expressions...
-        switch(configurationLevel.getPathLevel()) {
-            case SYSTEM:
-                found = configurationRepository.findByKeysAtSystemLevel(keysAsString);
-                break;
-            case ORGANIZATION:
-                found = configurationRepository.findByOrganizationAndKeys(((OrganizationLevel)configurationLevel).organizationId, keysAsString);
-                break;
-            case EVENT:
-                var eventLevel = (EventLevel) configurationLevel;
-                found = configurationRepository.findByEventAndKeys(eventLevel.organizationId, eventLevel.eventId, keysAsString);
-                break;
-            case TICKET_CATEGORY:
-                var categoryLevel = (CategoryLevel) configurationLevel;
-                found = configurationRepository.findByTicketCategoryAndKeys(categoryLevel.organizationId, categoryLevel.eventId, categoryLevel.categoryId, keysAsString);
-                break;
-            default:
-                found = List.of();
-        }
+        return buildKeyConfigurationMapResult(keys, configurationCache.find(keys, configurationLevel));
+    }
+
+    /**
+     * Returns all the values defined for the given key on the given level and on its parents.
+     *
+     * @param key the configuration key
+     * @param configurationLevel the most specific level
+     * @return the values found, from the least to the most specific
+     */
+    public List<ConfigurationKeyValuePathLevel> getAllLevels(ConfigurationKeys key, ConfigurationLevel configurationLevel) {
+        return configurationCache.find(List.of(key), configurationLevel).stream()
+            .sorted(Comparator.comparing(ConfigurationKeyValuePathLevel::getConfigurationPathLevel, ConfigurationPathLevel.COMPARATOR))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the resolved configuration of the given event and of its categories.
+     * The returned object is shared, and it is rebuilt only if the configuration has been modified.
+     *
+     * @param event the event
+     * @return the configuration snapshot
+     */
+    public EventConfigurationSnapshot getEventConfiguration(EventAndOrganizationId event) {
+        return configurationCache.getEventConfiguration(event);
+    }
 
-        return buildKeyConfigurationMapResult(keys, found);
+    public ConfigurationCache.Statistics getCacheStatistics() {
+        return configurationCache.getStatistics();
     }
 
     private Map<ConfigurationKeys, MaybeConfiguration> buildKeyConfigurationMapResult(Collection<ConfigurationKeys> keys, List<ConfigurationKeyValuePathLevel> found) {
@@ -0,0 +1,153 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.Validate;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Receives the notifications sent by the database (<code>LISTEN</code> / <code>NOTIFY</code>) on behalf of all the
+ * components of this node, using a single connection which is polled every {@value #POLL_INTERVAL_MS} ms.
+ * <p>
+ * The connection is opened outside of the connection pool (see {@link UnpooledConnections}), so that listening doesn't
+ * reduce the connections available to the application, and only once a subscriber has started using its cached data
+ * (see {@link #start()}).
+ * The notifications sent while the connection is not available are lost: the subscribers are informed through
+ * {@link NotificationHandler#onReset()} every time the connection is opened or closed.
+ */
+@Component
+@Log4j2
+public class DatabaseNotificationListener {
+
+    public static final long POLL_INTERVAL_MS = 1000;
+
+    private final UnpooledConnections unpooledConnections;
+    private final Map<String, NotificationHandler> handlers = new ConcurrentHashMap<>();
+    private volatile Connection listenerConnection;
+    private volatile boolean started = false;
+
+    public DatabaseNotificationListener(UnpooledConnections unpooledConnections) {
+        this.unpooledConnections = unpooledConnections;
+    }
+
+    /**
+     * Registers the handler for the given channel. If the connection is already open, it will be reopened by the next
+     * poll, in order to listen also on the new channel.
+     *
+     * @param channel the channel name. Must be a valid identifier
+     * @param handler the handler
+     */
+    public synchronized void subscribe(String channel, NotificationHandler handler) {
+        Validate.isTrue(channel.matches("[a-z_][a-z0-9_]*"), "invalid channel name %s", channel);
+        Validate.isTrue(handlers.putIfAbsent(channel, handler) == null, "channel %s already subscribed", channel);
+        close();
+    }
+
+    /**
+     * Requests to start listening. The connection will be opened by the next poll.
+     */
+    public void start() {
+        started = true;
+    }
+
+    /**
+     * @return {@code true} if the notifications are being received
+     */
+    public boolean isListening() {
+        return listenerConnection != null;
+    }
+
+    /**
+     * Receives the pending notifications and dispatches them to the handlers of their channel.
+     */
+    @Scheduled(fixedDelay = POLL_INTERVAL_MS)
+    public synchronized void processNotifications() {
+        if(!started) {
+            return;
+        }
+        try {
+            var connection = getListenerConnection();
+            PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(10);
+            if(notifications == null) {
+                return;
+            }
+            for (PGNotification notification : notifications) {
+                var handler = handlers.get(notification.getName());
+                if(handler != null) {
+                    handler.onNotification(notification.getParameter());
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.warn("error while receiving database notifications. Cached values will be refreshed on a time basis.", e);
+            close();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        var connection = listenerConnection;
+        listenerConnection = null;
+        if(connection != null) {
+            handlers.values().forEach(NotificationHandler::onReset);
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.trace("error while closing listener connection", e);
+            }
+        }
+    }
+
+    private Connection getListenerConnection() throws SQLException {
+        var connection = listenerConnection;
+        if(connection == null || connection.isClosed()) {
+            connection = unpooledConnections.getDataSource().getConnection();
+            connection.setAutoCommit(true);
+            try (var statement = connection.createStatement()) {
+                for (String channel : handlers.keySet()) {
+                    statement.execute("LISTEN " + channel);
+                }
+            }
+            listenerConnection = connection;
+            // we might have missed some notifications before starting to listen
+            handlers.values().forEach(NotificationHandler::onReset);
+        }
+        return connection;
+    }
+
+    public interface NotificationHandler {
+
+        /**
+         * @param payload the payload of the notification
+         */
+        void onNotification(String payload);
+
+        /**
+         * Called when the connection is opened or closed: the notifications sent in the meantime have been lost.
+         */
+        void onReset();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.manager.system.ConfigurationManager.MaybeConfiguration;
+import alfio.model.EventAndOrganizationId;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.EventConfigurationValue;
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * Immutable view of the whole configuration of an event and its categories, resolved from a single query.
+ * <p>
+ * Snapshots are cached and shared by all the callers until the configuration of the event, of its organization or
+ * the system one is modified (see {@link ConfigurationCache#getEventConfiguration(EventAndOrganizationId)}).
+ */
+public class EventConfigurationSnapshot {
+
+    @Getter
+    private final int eventId;
+    @Getter
+    private final int organizationId;
+    @Getter
+    private final long version;
+    final long loadedAt;
+    private final Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> eventValues;
+    private final Map<Integer, Map<ConfigurationKeys, ConfigurationKeyValuePathLevel>> categoryValues;
+
+    private EventConfigurationSnapshot(int eventId,
+                                       int organizationId,
+                                       long version,
+                                       Map<ConfigurationKeys, ConfigurationKeyValuePathLevel> eventValues,
+                                       Map<Integer, Map<ConfigurationKeys, ConfigurationKeyValuePathLevel>> categoryValues) {
+        this.eventId = eventId;
+        this.organizationId = organizationId;
+        this.version = version;
+        this.loadedAt = System.currentTimeMillis();
+        this.eventValues = eventValues;
+        this.categoryValues = categoryValues;
+    }
+
+    public MaybeConfiguration get(ConfigurationKeys key) {
+        return new MaybeConfiguration(key, eventValues.get(key));
+    }
+
+    /**
+     * @param key the configuration key
+     * @param ticketCategoryId the category ID. If {@code null}, the value is resolved at event level
+     * @return the most specific value
+     */
+    public MaybeConfiguration get(ConfigurationKeys key, Integer ticketCategoryId) {
+        var categoryValue = ticketCategoryId == null ? null : categoryValues.getOrDefault(ticketCategoryId, Map.of()).get(key);
+        return categoryValue != null ? new MaybeConfiguration(key, categoryValue) : get(key);
+    }
+
+    /**
+     * Resolves a key for multiple categories at once.
+     *
+     * @param key the configuration key
+     * @param ticketCategoryIds the category IDs
+     * @return the most specific value for each category
+     */
+    public Map<Integer, MaybeConfiguration> getForCategories(ConfigurationKeys key, Collection<Integer> ticketCategoryIds) {
+        var result = new HashMap<Integer, MaybeConfiguration>();
+        for (Integer ticketCategoryId : ticketCategoryIds) {
+            result.put(ticketCategoryId, get(key, ticketCategoryId));
+        }
+        return result;
+    }
+
+    /**
+     * Same result as {@link ConfigurationManager#getFor(Collection, ConfigurationLevel)} at event level
+     */
+    public Map<ConfigurationKeys, MaybeConfiguration> getAll(Collection<ConfigurationKeys> keys) {
+        var result = new EnumMap<ConfigurationKeys, MaybeConfiguration>(ConfigurationKeys.class);
+        for (ConfigurationKeys key : keys) {
+            result.put(key, get(key));
+        }
+        return result;
+    }
+
+    public String getString(ConfigurationKeys key, String defaultValue) {
+        return get(key).getValueOrDefault(defaultValue);
+    }
+
+    public boolean getBoolean(ConfigurationKeys key, boolean defaultValue) {
+        return get(key).getValueAsBooleanOrDefault(defaultValue);
+    }
+
+    public boolean getBoolean(ConfigurationKeys key, Integer ticketCategoryId, boolean defaultValue) {
+        return get(key, ticketCategoryId).getValueAsBooleanOrDefault(defaultValue);
+    }
+
+    public int getInt(ConfigurationKeys key, int defaultValue) {
+        return get(key).getValueAsIntOrDefault(defaultValue);
+    }
+
+    public int getInt(ConfigurationKeys key, Integer ticketCategoryId, int defaultValue) {
+        return get(key, ticketCategoryId).getValueAsIntOrDefault(defaultValue);
+    }
+
+    /**
+     * Builds a snapshot from the values defined at system, organization, event and category level.
+     *
+     * @param event the event
+     * @param version the version of the configuration
+     * @param values all the values defined for the event, in no particular order
+     * @return the snapshot
+     */
+    public static EventConfigurationSnapshot from(EventAndOrganizationId event, long version, List<EventConfigurationValue> values) {
+        var eventValues = new EnumMap<ConfigurationKeys, ConfigurationKeyValuePathLevel>(ConfigurationKeys.class);
+        var categoryValues = new HashMap<Integer, Map<ConfigurationKeys, ConfigurationKeyValuePathLevel>>();
+        for (EventConfigurationValue value : values) {
+            var key = value.getConfigurationKey();
+            if(key == ConfigurationKeys.NOT_RECOGNIZED) {
+                continue;
+            }
+            if(value.getTicketCategoryId() != null) {
+                categoryValues.computeIfAbsent(value.getTicketCategoryId(), id -> new EnumMap<>(ConfigurationKeys.class)).put(key, value);
+            } else {
+                eventValues.merge(key, value, (existing, v) -> existing.getConfigurationPathLevel().getPriority() < v.getConfigurationPathLevel().getPriority() ? v : existing);
+            }
+        }
+        return new EventConfigurationSnapshot(event.getId(), event.getOrganizationId(), version, eventValues, categoryValues);
+    }
+}
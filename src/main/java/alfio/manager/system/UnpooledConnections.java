@@ -0,0 +1,67 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Provides database connections which are not taken from the connection pool, for the tasks which must neither
+ * wait for a free pooled connection nor keep one busy: long-lived connections, or short transactions started while
+ * the caller already holds a pooled connection.
+ * <p>
+ * A new physical connection is opened every time, so they must be used only for infrequent operations.
+ */
+@Component
+public class UnpooledConnections {
+
+    private final DataSource dataSource;
+
+    public UnpooledConnections(DataSource dataSource) {
+        this.dataSource = createUnpooled(dataSource);
+    }
+
+    /**
+     * @return a {@link DataSource} which opens a new connection on every request. The connections are never bound
+     * to the transactions of the application
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    private static DataSource createUnpooled(DataSource dataSource) {
+        try {
+            if(dataSource.isWrapperFor(HikariDataSource.class)) {
+                var pool = dataSource.unwrap(HikariDataSource.class);
+                var unpooled = new DriverManagerDataSource(pool.getJdbcUrl(), pool.getUsername(), pool.getPassword());
+                if(pool.getDriverClassName() != null) {
+                    unpooled.setDriverClassName(pool.getDriverClassName());
+                }
+                return unpooled;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        // not a pool (e.g. Cloud Foundry). The wrapper still keeps the connections out of the current transaction
+        return new DelegatingDataSource(dataSource);
+    }
+}
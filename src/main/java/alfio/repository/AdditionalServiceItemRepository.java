@@ -20,15 +20,44 @@ import alfio.model.AdditionalServiceItem;
 import alfio.model.AdditionalServiceItem.AdditionalServiceItemStatus;
 import alfio.model.BookedAdditionalService;
 import ch.digitalfondue.npjt.*;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import java.time.ZonedDateTime;
+import java.util.Date;
 import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
 
 @QueryRepository
 public interface AdditionalServiceItemRepository {
 
-    @Query("insert into additional_service_item (uuid, creation, tickets_reservation_uuid, additional_service_id_fk, status, event_id_fk, src_price_cts, final_price_cts, vat_cts, discount_cts, currency_code) " +
-        "values(:uuid, :creation, :ticketsReservationUuid, :additionalServiceId, :status, :eventId, :srcPriceCts, :finalPriceCts, :vatCts, :discountCts, :currencyCode)")
+    String INSERT = "insert into additional_service_item (uuid, creation, tickets_reservation_uuid, additional_service_id_fk, status, event_id_fk, src_price_cts, final_price_cts, vat_cts, discount_cts, currency_code) " +
+        "values(:uuid, :creation, :ticketsReservationUuid, :additionalServiceId, :status, :eventId, :srcPriceCts, :finalPriceCts, :vatCts, :discountCts, :currencyCode)";
+
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    default int[] bulkInsert(int quantity, ZonedDateTime creation, String ticketsReservationUuid, int additionalServiceId,
+                             AdditionalServiceItemStatus status, int eventId, Integer srcPriceCts, Integer finalPriceCts,
+                             Integer vatCts, Integer discountCts, String currencyCode) {
+        var creationDate = Date.from(creation.toInstant());
+        var params = IntStream.range(0, quantity)
+            .mapToObj(i -> new MapSqlParameterSource("uuid", UUID.randomUUID().toString())
+                .addValue("creation", creationDate)
+                .addValue("ticketsReservationUuid", ticketsReservationUuid)
+                .addValue("additionalServiceId", additionalServiceId)
+                .addValue("status", status.name())
+                .addValue("eventId", eventId)
+                .addValue("srcPriceCts", srcPriceCts)
+                .addValue("finalPriceCts", finalPriceCts)
+                .addValue("vatCts", vatCts)
+                .addValue("discountCts", discountCts)
+                .addValue("currencyCode", currencyCode))
+            .toArray(MapSqlParameterSource[]::new);
+        return getNamedParameterJdbcTemplate().batchUpdate(INSERT, params);
+    }
+
+    @Query(INSERT)
     @AutoGeneratedKey("id")
     AffectedRowCountAndKey<Integer> insert(@Bind("uuid") String uuid, @Bind("creation") ZonedDateTime creation, @Bind("ticketsReservationUuid") String ticketsReservationUuid,
                                            @Bind("additionalServiceId") int additionalServiceId, @Bind("status") AdditionalServiceItemStatus status, @Bind("eventId") int eventId,
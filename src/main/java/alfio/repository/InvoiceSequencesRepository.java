@@ -19,6 +19,7 @@ package alfio.repository;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
+import ch.digitalfondue.npjt.QueryType;
 
 @QueryRepository
 public interface InvoiceSequencesRepository {
@@ -29,6 +30,14 @@ public interface InvoiceSequencesRepository {
     @Query("update invoice_sequences set invoice_sequence = invoice_sequence + 1 where organization_id_fk = :orgId")
     int incrementSequenceFor(@Bind("orgId") int orgId);
 
+    /**
+     * Reserves the next {@code size} numbers of the sequence.
+     *
+     * @return the new value of the sequence, i.e. the first number <strong>after</strong> the reserved block
+     */
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "update invoice_sequences set invoice_sequence = invoice_sequence + :size where organization_id_fk = :orgId returning invoice_sequence")
+    int reserveBlock(@Bind("orgId") int orgId, @Bind("size") int size);
+
     @Query("insert into invoice_sequences(organization_id_fk, invoice_sequence) values (:orgId, 1)")
     int initFor(@Bind("orgId") int orgId);
 }
@@ -0,0 +1,34 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+/**
+ * Persisted versions of the public data of the events. See V202_2.0.0.29__PERSIST_PUBLIC_DATA_VERSION.sql
+ */
+@QueryRepository
+public interface PublicDataVersionRepository {
+
+    @Query("update event set public_data_version = nextval('public_data_version_seq') where id = :eventId")
+    int bumpEventVersion(@Bind("eventId") int eventId);
+
+    @Query("update public_data_global_version set version = nextval('public_data_version_seq') where id = 1")
+    int bumpGlobalVersion();
+}
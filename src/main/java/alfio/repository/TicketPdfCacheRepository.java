@@ -0,0 +1,51 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Generated ticket PDFs. See V202_2.0.0.22__ADD_TICKET_PDF_CACHE.sql and V202_2.0.0.28__LINK_TICKET_PDF_CACHE_TO_TICKET.sql
+ */
+@QueryRepository
+public interface TicketPdfCacheRepository {
+
+    @Query("insert into ticket_pdf_cache(id, ticket_id, content) values(:id, :ticketId, :content) on conflict (id) do nothing")
+    int insertIfAbsent(@Bind("id") String id, @Bind("ticketId") int ticketId, @Bind("content") byte[] content);
+
+    @Query("delete from ticket_pdf_cache where ticket_id in (:ticketIds)")
+    int deleteForTickets(@Bind("ticketIds") List<Integer> ticketIds);
+
+    @Query("delete from ticket_pdf_cache where creation_time < :date")
+    int deleteCreatedBefore(@Bind("date") ZonedDateTime date);
+
+    NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
+
+    default Optional<byte[]> findContent(String id) {
+        return getNamedParameterJdbcTemplate().query("select content from ticket_pdf_cache where id = :id",
+            new MapSqlParameterSource("id", id), (rs, rowNum) -> rs.getBytes("content"))
+            .stream().findFirst();
+    }
+}
@@ -31,6 +31,9 @@ import java.util.*;
 public interface TicketRepository {
 
     String CONFIRMED = "'ACQUIRED', 'CHECKED_IN', 'TO_BE_PAID'";
+    String RESERVE_AND_PRICE_SELECTED = " update ticket set tickets_reservation_id = :reservationId, status = 'PENDING', category_id = :categoryId, user_language = :userLanguage," +
+        " src_price_cts = :srcPriceCts, final_price_cts = :finalPriceCts, vat_cts = :vatCts, discount_cts = :discountCts, currency_code = :currencyCode" +
+        " from selected where ticket.id = selected.id returning ticket.id";
     String FREE = "FREE";
     String RELEASED = "RELEASED";
     String REVERT_TO_FREE = "update ticket set status = 'FREE' where status = 'RELEASED' and event_id = :eventId";
@@ -84,6 +87,9 @@ public interface TicketRepository {
     @Query("select count(*) from ticket where status = 'FREE' and category_id is null and event_id = :eventId")
     Integer countFreeTicketsForUnbounded(@Bind("eventId") int eventId);
 
+    @Query("select category_id, count(*) free_tickets from ticket where status = 'FREE' and event_id = :eventId group by category_id")
+    List<FreeTicketsByCategory> countFreeTicketsByCategory(@Bind("eventId") int eventId);
+
     @Query("select count(*) from ticket where status in ('FREE', 'RELEASED') and category_id is null and event_id = :eventId")
     Integer countNotAllocatedFreeAndReleasedTicket(@Bind("eventId") int eventId);
 
@@ -96,6 +102,20 @@ public interface TicketRepository {
     @Query("update ticket set tickets_reservation_id = :reservationId, status = 'PENDING', category_id = :categoryId, user_language = :userLanguage, src_price_cts = :srcPriceCts, currency_code = :currencyCode where id in (:reservedForUpdate)")
     int reserveTickets(@Bind("reservationId") String reservationId, @Bind("reservedForUpdate") List<Integer> reservedForUpdate, @Bind("categoryId") int categoryId, @Bind("userLanguage") String userLanguage, @Bind("srcPriceCts") int srcPriceCts, @Bind("currencyCode") String currencyCode);
 
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "with selected as (select id from ticket where status in (:requiredStatuses) and category_id = :categoryId and event_id = :eventId and tickets_reservation_id is null and id % :stripes = :stripe order by id limit :amount for update skip locked)" +
+        RESERVE_AND_PRICE_SELECTED)
+    List<Integer> reserveAndPriceTicketsInCategory(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId, @Bind("amount") int amount, @Bind("requiredStatuses") List<String> requiredStatuses,
+                                                   @Bind("stripes") int stripes, @Bind("stripe") int stripe, @Bind("reservationId") String reservationId, @Bind("userLanguage") String userLanguage,
+                                                   @Bind("srcPriceCts") int srcPriceCts, @Bind("finalPriceCts") int finalPriceCts, @Bind("vatCts") int vatCts,
+                                                   @Bind("discountCts") int discountCts, @Bind("currencyCode") String currencyCode);
+
+    @Query(type = QueryType.MODIFYING_WITH_RETURN, value = "with selected as (select id from ticket where status in (:requiredStatuses) and category_id is null and event_id = :eventId and tickets_reservation_id is null and id % :stripes = :stripe order by id limit :amount for update skip locked)" +
+        RESERVE_AND_PRICE_SELECTED)
+    List<Integer> reserveAndPriceNotAllocatedTickets(@Bind("eventId") int eventId, @Bind("categoryId") int categoryId, @Bind("amount") int amount, @Bind("requiredStatuses") List<String> requiredStatuses,
+                                                     @Bind("stripes") int stripes, @Bind("stripe") int stripe, @Bind("reservationId") String reservationId, @Bind("userLanguage") String userLanguage,
+                                                     @Bind("srcPriceCts") int srcPriceCts, @Bind("finalPriceCts") int finalPriceCts, @Bind("vatCts") int vatCts,
+                                                     @Bind("discountCts") int discountCts, @Bind("currencyCode") String currencyCode);
+
     @Query(type = QueryType.TEMPLATE, value = "update ticket set tickets_reservation_id = :reservationId, special_price_id_fk = :specialCodeId, user_language = :userLanguage, status = 'PENDING', src_price_cts = :srcPriceCts, currency_code = :currencyCode where id = :ticketId")
     String batchReserveTicket();
 
@@ -151,6 +171,15 @@ public interface TicketRepository {
     @Query("select * from ticket where uuid = :uuid")
     Optional<Ticket> findOptionalByUUID(@Bind("uuid") String uuid);
 
+    /**
+     * Hash of the ticket and of its reservation, followed by the persisted version of the public data of its event.
+     * See {@link TicketReservationRepository#findContentHash(String, String)}
+     */
+    @Query("select md5(t::text || r::text) || ':' || greatest(e.public_data_version, g.version) from ticket t" +
+        " join tickets_reservation r on r.id = t.tickets_reservation_id join event e on e.id = t.event_id cross join public_data_global_version g" +
+        " where t.uuid = :uuid and e.short_name = :eventName")
+    Optional<String> findContentHash(@Bind("eventName") String eventName, @Bind("uuid") String uuid);
+
     @Query("select * from ticket where uuid = :uuid for update")
     Optional<Ticket> findByUUIDForUpdate(@Bind("uuid") String uuid);
 
@@ -105,12 +105,38 @@ public interface TicketReservationRepository {
     @Query("select * from tickets_reservation where id = :id")
     Optional<TicketReservation> findOptionalReservationById(@Bind("id") String id);
 
+    /**
+     * The price version changes every time the tickets, the additional services, the promo code or the billing
+     * data of the reservation are modified. It is maintained by triggers, see V202_2.0.0.18__ADD_RESERVATION_PRICE_VERSION.sql
+     * and V202_2.0.0.27__BUMP_RESERVATION_PRICE_VERSION_PER_STATEMENT.sql
+     */
+    @Query("select event_id_fk, price_version from tickets_reservation where id = :id")
+    Optional<ReservationPriceVersion> findPriceVersion(@Bind("id") String id);
+
+    @Query("select k.reservation_id_fk, k.payload_hash from reservation_idempotency_key k join tickets_reservation r on r.id = k.reservation_id_fk" +
+        " where k.event_id_fk = :eventId and k.idempotency_key = :key and r.validity > now()")
+    Optional<ReservationIdempotencyKey> findActiveIdempotencyKey(@Bind("eventId") int eventId, @Bind("key") String key);
+
+    /**
+     * Binds the idempotency key to the given reservation, unless it is already bound to another reservation which has not
+     * yet expired.
+     *
+     * @return 1 if the key has been bound, 0 otherwise
+     */
+    @Query("insert into reservation_idempotency_key(event_id_fk, idempotency_key, payload_hash, reservation_id_fk) values(:eventId, :key, :payloadHash, :reservationId)" +
+        " on conflict(event_id_fk, idempotency_key) do update set payload_hash = excluded.payload_hash, reservation_id_fk = excluded.reservation_id_fk, creation_ts = now()" +
+        " where not exists(select 1 from tickets_reservation r where r.id = reservation_idempotency_key.reservation_id_fk and r.validity > now())")
+    int bindIdempotencyKey(@Bind("eventId") int eventId, @Bind("key") String key, @Bind("payloadHash") String payloadHash, @Bind("reservationId") String reservationId);
+
     @Query("select status, validated_for_overview from tickets_reservation where id = :id")
     Optional<TicketReservationStatusAndValidation> findOptionalStatusAndValidationById(@Bind("id") String id);
 
     @Query("select id from tickets_reservation where validity < :date and status = 'PENDING' for update skip locked")
     List<String> findExpiredReservationForUpdate(@Bind("date") Date date);
 
+    @Query("select id from tickets_reservation where id in (:ids) and validity < :date and status = 'PENDING' for update skip locked")
+    List<String> findExpiredReservationForUpdate(@Bind("ids") List<String> ids, @Bind("date") Date date);
+
     @Query("select id from tickets_reservation where validity < :date and status = 'OFFLINE_PAYMENT' for update skip locked")
     List<String> findExpiredOfflineReservationsForUpdate(@Bind("date") Date date);
 
@@ -248,4 +274,19 @@ public interface TicketReservationRepository {
 
     @Query("update tickets_reservation set invoicing_additional_information = :info::json where id = :id")
     int updateInvoicingAdditionalInformation(@Bind("id") String reservationId, @Bind("info") String info);
+
+    /**
+     * Hash of the reservation and of the rows linked to it, followed by the persisted version of the public data of
+     * its event. It changes every time one of them is modified, therefore it can be used as a version of the public
+     * reservation data, valid across all the instances.
+     */
+    @Query("select md5(r::text" +
+        " || coalesce((select string_agg(t::text, ',' order by t.id) from ticket t where t.tickets_reservation_id = r.id), '')" +
+        " || coalesce((select string_agg(v::text, ',' order by v.ticket_id_fk, v.ticket_field_configuration_id_fk) from ticket_field_value v join ticket t on t.id = v.ticket_id_fk where t.tickets_reservation_id = r.id), '')" +
+        " || coalesce((select string_agg(i::text, ',' order by i.id) from additional_service_item i where i.tickets_reservation_uuid = r.id), '')" +
+        " || coalesce((select string_agg(tx::text, ',' order by tx.id) from b_transaction tx where tx.reservation_id = r.id), ''))" +
+        " || ':' || greatest(e.public_data_version, g.version)" +
+        " from tickets_reservation r join event e on e.id = r.event_id_fk cross join public_data_global_version g" +
+        " where r.id = :reservationId and e.short_name = :eventName")
+    Optional<String> findContentHash(@Bind("eventName") String eventName, @Bind("reservationId") String reservationId);
 }
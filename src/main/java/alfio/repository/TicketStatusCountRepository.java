@@ -0,0 +1,84 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.repository;
+
+import ch.digitalfondue.npjt.Bind;
+import ch.digitalfondue.npjt.Query;
+import ch.digitalfondue.npjt.QueryRepository;
+
+import java.util.List;
+
+/**
+ * Access to <code>ticket_status_count_delta</code>, the table behind the statistics views.
+ * See V202_2.0.0.21__MAINTAIN_TICKET_STATISTICS.sql
+ */
+@QueryRepository
+public interface TicketStatusCountRepository {
+
+    @Query("select id from event union select event_id from ticket_status_count_delta")
+    List<Integer> findEventIds();
+
+    @Query("select pg_try_advisory_xact_lock(hashtext('ticket_status_count_delta'), :eventId)")
+    boolean tryLockEvent(@Bind("eventId") int eventId);
+
+    /**
+     * @return the oldest transaction which is still running. All the transactions which will commit from now on
+     * have an equal or greater ID
+     */
+    @Query("select txid_snapshot_xmin(txid_current_snapshot())")
+    long getTransactionHorizon();
+
+    /**
+     * @param horizon a value returned by {@link #getTransactionHorizon()}
+     * @return the events whose tickets have been modified by the transactions which were running at the given horizon
+     * or started later. See V202_2.0.0.26__TRACK_TICKET_STATUS_COUNT_DELTA_TRANSACTION.sql
+     */
+    @Query("select distinct event_id from ticket_status_count_delta where tx_id >= :horizon")
+    List<Integer> findEventIdsModifiedSince(@Bind("horizon") long horizon);
+
+    @Query("select event_id from ticket_status_count_delta group by event_id having count(*) > :threshold")
+    List<Integer> findEventIdsWithMoreRowsThan(@Bind("threshold") int threshold);
+
+    /**
+     * Adds the rows needed to align the counters with the ticket table. Both sides are read in the same statement,
+     * therefore from the same snapshot.
+     *
+     * @param eventId the event ID
+     * @return the number of counters which have been repaired
+     */
+    @Query("insert into ticket_status_count_delta(event_id, category_id, status, delta)" +
+        " select :eventId, coalesce(actual.category_id, counted.category_id), coalesce(actual.status, counted.status), coalesce(actual.cnt, 0) - coalesce(counted.cnt, 0)" +
+        " from (select category_id, status, count(*) cnt from ticket where event_id = :eventId group by category_id, status) actual" +
+        " full outer join (select category_id, status, sum(delta) cnt from ticket_status_count_delta where event_id = :eventId group by category_id, status) counted" +
+        " on coalesce(actual.category_id, -1) = coalesce(counted.category_id, -1) and actual.status = counted.status" +
+        " where coalesce(actual.cnt, 0) <> coalesce(counted.cnt, 0)")
+    int repair(@Bind("eventId") int eventId);
+
+    /**
+     * Replaces the rows of the given event with their sums. The rows added in the meantime by other
+     * transactions are not visible to the delete, and are therefore kept.
+     * The sums keep the most recent transaction ID of the rows they replace, so that the compaction
+     * is not reported as a modification by {@link #findEventIdsModifiedSince(long)}.
+     *
+     * @param eventId the event ID
+     * @return the number of remaining rows
+     */
+    @Query("with deleted as (delete from ticket_status_count_delta where event_id = :eventId returning category_id, status, delta, tx_id)" +
+        " insert into ticket_status_count_delta(event_id, category_id, status, delta, tx_id)" +
+        " select :eventId, category_id, status, sum(delta), max(tx_id) from deleted group by category_id, status having sum(delta) <> 0")
+    int compact(@Bind("eventId") int eventId);
+}
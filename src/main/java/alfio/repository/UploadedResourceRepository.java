@@ -36,6 +36,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 @QueryRepository
@@ -108,6 +109,19 @@ public interface UploadedResourceRepository {
         getNamedParameterJdbcTemplate().query("select content from resource_event where name = :name and organization_id_fk = :organizationId and event_id_fk = :eventId", param, OUTPUT_CONTENT.apply(out));
     }
 
+    /**
+     * Returns the content of the most specific resource with the given name: event, then organization, then system.
+     */
+    default Optional<byte[]> findCascadingContent(int organizationId, int eventId, String name) {
+        SqlParameterSource param = new MapSqlParameterSource("name", name).addValue("organizationId", organizationId).addValue("eventId", eventId);
+        List<byte[]> result = getNamedParameterJdbcTemplate().query("select content from (" +
+            " select content, 1 as priority from resource_event where name = :name and organization_id_fk = :organizationId and event_id_fk = :eventId" +
+            " union all select content, 2 as priority from resource_organizer where name = :name and organization_id_fk = :organizationId" +
+            " union all select content, 3 as priority from resource_global where name = :name" +
+            ") r order by priority limit 1", param, (rs, rowNum) -> rs.getBytes("content"));
+        return result.stream().findFirst();
+    }
+
     NamedParameterJdbcTemplate getNamedParameterJdbcTemplate();
 
     default int upload(Integer organizationId, Integer eventId, UploadBase64FileModification file, Map<String, String> attributes) {
@@ -19,6 +19,7 @@ package alfio.repository.system;
 import alfio.model.support.JSONData;
 import alfio.model.system.Configuration;
 import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.model.system.EventConfigurationValue;
 import ch.digitalfondue.npjt.Bind;
 import ch.digitalfondue.npjt.Query;
 import ch.digitalfondue.npjt.QueryRepository;
@@ -50,6 +51,24 @@ public interface ConfigurationRepository {
     @Query(SELECT_FROM_TICKET_CATEGORY)
     List<Configuration> findCategoryConfiguration(@Bind("organizationId") int organizationId, @Bind("eventId") int eventId, @Bind("ticketCategoryId") int categoryId);
 
+    @Query(SELECT_FROM_SYSTEM)
+    List<ConfigurationKeyValuePathLevel> findAllAtSystemLevel();
+
+    @Query(SELECT_FROM_ORGANIZATION)
+    List<ConfigurationKeyValuePathLevel> findAllAtOrganizationLevel(@Bind("organizationId") int organizationId);
+
+    @Query(SELECT_FROM_EVENT)
+    List<ConfigurationKeyValuePathLevel> findAllAtEventLevel(@Bind("organizationId") int organizationId, @Bind("eventId") int eventId);
+
+    @Query(SELECT_FROM_TICKET_CATEGORY)
+    List<ConfigurationKeyValuePathLevel> findAllAtCategoryLevel(@Bind("organizationId") int organizationId, @Bind("eventId") int eventId, @Bind("ticketCategoryId") int categoryId);
+
+    @Query("SELECT null::integer as ticket_category_id_fk, c_key, c_value, 'SYSTEM' as configuration_path_level FROM configuration UNION ALL " +
+        "SELECT null::integer, c_key, c_value, 'ORGANIZATION' FROM configuration_organization where organization_id_fk = :organizationId UNION ALL " +
+        "SELECT null::integer, c_key, c_value, 'EVENT' FROM configuration_event where organization_id_fk = :organizationId and event_id_fk = :eventId UNION ALL " +
+        "SELECT ticket_category_id_fk, c_key, c_value, 'TICKET_CATEGORY' FROM configuration_ticket_category where organization_id_fk = :organizationId and event_id_fk = :eventId")
+    List<EventConfigurationValue> findAllForEvent(@Bind("organizationId") int organizationId, @Bind("eventId") int eventId);
+
     String SYSTEM_FIND_BY_KEY = SELECT_FROM_SYSTEM + " where c_key = :key";
     String ORGANIZATION_FIND_BY_KEY = SELECT_FROM_ORGANIZATION + " and c_key = :key ";
     String EVENT_FIND_BY_KEY = SELECT_FROM_EVENT + " and c_key = :key ";
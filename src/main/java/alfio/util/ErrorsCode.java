@@ -25,6 +25,7 @@ public interface ErrorsCode {
     String STEP_1_TICKET_CATEGORY_MUST_BE_SALEABLE = "error.STEP_1_TICKET_CATEGORY_MUST_BE_SALEABLE";
     String STEP_1_ACCESS_RESTRICTED = "error.STEP_1_ACCESS_RESTRICTED";
     String STEP_1_NOT_ENOUGH_TICKETS = "error.STEP_1_NOT_ENOUGH_TICKETS";
+    String STEP_1_IDEMPOTENCY_KEY_CONFLICT = "error.STEP_1_IDEMPOTENCY_KEY_CONFLICT";
     
     String STEP_1_CODE_NOT_FOUND = "error.STEP_1_CODE_NOT_FOUND";
 
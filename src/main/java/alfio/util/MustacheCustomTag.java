@@ -17,13 +17,14 @@
 package alfio.util;
 
 import alfio.controller.api.support.TicketHelper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.samskivert.mustache.Mustache;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.text.StringEscapeUtils;
 import org.commonmark.Extension;
 import org.commonmark.ext.gfm.tables.TablesExtension;
-import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
 import org.commonmark.renderer.text.TextContentRenderer;
@@ -134,14 +135,35 @@ public class MustacheCustomTag {
     private static final Parser COMMONMARK_PARSER = Parser.builder().extensions(COMMONMARK_EXTENSIONS).build();
     private static final HtmlRenderer COMMONMARK_RENDERER = HtmlRenderer.builder().extensions(COMMONMARK_EXTENSIONS).build();
     private static final TextContentRenderer COMMONMARK_TEXT_RENDERER = TextContentRenderer.builder().extensions(COMMONMARK_EXTENSIONS).build();
+    // the rendered output depends only on the source, which is therefore used as key
+    private static final long MAX_CACHED_CHARS = 8_000_000;
+    private static final Cache<String, String> COMMONMARK_HTML_CACHE = commonmarkCache();
+    private static final Cache<String, String> COMMONMARK_TEXT_CACHE = commonmarkCache();
 
     public static String renderToHtmlCommonmarkEscaped(String input) {
-        Node document = COMMONMARK_PARSER.parse(StringEscapeUtils.escapeHtml4(input));
-        return COMMONMARK_RENDERER.render(document);
+        return COMMONMARK_HTML_CACHE.get(input, i -> COMMONMARK_RENDERER.render(COMMONMARK_PARSER.parse(StringEscapeUtils.escapeHtml4(i))));
     }
 
     public static String renderToTextCommonmark(String input) {
-        Node document = COMMONMARK_PARSER.parse(input);
-        return COMMONMARK_TEXT_RENDERER.render(document);
+        return COMMONMARK_TEXT_CACHE.get(input, i -> COMMONMARK_TEXT_RENDERER.render(COMMONMARK_PARSER.parse(i)));
+    }
+
+    /**
+     * Renders a description when it is saved, so that the public pages will find it already rendered.
+     *
+     * @param description the description source
+     */
+    public static void prerenderDescription(String description) {
+        if(description != null) {
+            renderToHtmlCommonmarkEscaped(description);
+            renderToTextCommonmark(description.trim());
+        }
+    }
+
+    private static Cache<String, String> commonmarkCache() {
+        return Caffeine.newBuilder()
+            .maximumWeight(MAX_CACHED_CHARS)
+            .<String, String>weigher((input, output) -> input.length() + output.length())
+            .build();
     }
 }
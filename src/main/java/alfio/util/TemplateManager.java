@@ -19,10 +19,16 @@ package alfio.util;
 import alfio.manager.UploadedResourceManager;
 import alfio.manager.i18n.MessageSourceManager;
 import alfio.model.EventAndOrganizationId;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.samskivert.mustache.Mustache;
 import com.samskivert.mustache.Mustache.Compiler;
 import com.samskivert.mustache.Mustache.Formatter;
 import com.samskivert.mustache.Template;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.context.MessageSource;
 import org.springframework.core.io.ByteArrayResource;
@@ -35,6 +41,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,6 +66,17 @@ public class TemplateManager {
 
     private final UploadedResourceManager uploadedResourceManager;
 
+    // compiled templates are immutable and can be executed concurrently. The classpath resources never change, while
+    // the other sources are identified by their content: a modified resource gets a new key and is compiled again
+    private final Cache<TemplateKey, Template> compiledTemplates = Caffeine.newBuilder()
+        .maximumSize(500)
+        .recordStats()
+        .build();
+    private final LongAdder compilations = new LongAdder();
+    private final LongAdder compileNanos = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder executeNanos = new LongAdder();
+
     private static final Formatter DATE_FORMATTER = o -> (o instanceof ZonedDateTime) ? DateTimeFormatter.ISO_ZONED_DATE_TIME.format((ZonedDateTime) o) : String.valueOf(o);
 
     public TemplateManager(MessageSourceManager messageSourceManager,
@@ -81,24 +99,40 @@ public class TemplateManager {
             .withFormatter(DATE_FORMATTER));
     }
 
-    private String renderTemplate(Optional<? extends EventAndOrganizationId> event, TemplateResource templateResource, Map<String, Object> model, Locale locale) {
-        return render(new ClassPathResource(templateResource.classPath()), modelEnricher(model, event, locale), locale, event.orElse(null), templateResource.getTemplateOutput());
+    public String renderTemplate(EventAndOrganizationId event, TemplateResource templateResource, Map<String, Object> model, Locale locale) {
+        var out = new StringWriter();
+        renderTemplate(event, templateResource, model, locale, out);
+        return out.toString();
     }
 
-    public String renderTemplate(EventAndOrganizationId event, TemplateResource templateResource, Map<String, Object> model, Locale locale) {
+    /**
+     * Renders the given template (or its override, if defined) directly to the given {@link Writer}.
+     * The writer is not closed.
+     */
+    public void renderTemplate(EventAndOrganizationId event, TemplateResource templateResource, Map<String, Object> model, Locale locale, Writer out) {
         Map<String, Object> updatedModel = modelEnricher(model, Optional.of(event), locale);
-        return uploadedResourceManager.findCascading(event.getOrganizationId(), event.getId(), templateResource.getSavedName(locale))
-            .map(resource -> render(new ByteArrayResource(resource), updatedModel, locale, event, templateResource.getTemplateOutput()))
-            .orElseGet(() -> renderTemplate(Optional.of(event), templateResource, updatedModel, locale));
+        var resource = uploadedResourceManager.findCascading(event.getOrganizationId(), event.getId(), templateResource.getSavedName(locale))
+            .<Resource>map(ByteArrayResource::new)
+            .orElseGet(() -> new ClassPathResource(templateResource.classPath()));
+        render(resource, updatedModel, locale, event, templateResource.getTemplateOutput(), out);
     }
 
     public String renderString(EventAndOrganizationId event, String template, Map<String, Object> model, Locale locale, TemplateOutput templateOutput) {
-        return render(new ByteArrayResource(template.getBytes(StandardCharsets.UTF_8)), modelEnricher(model, Optional.ofNullable(event), locale), locale, event, templateOutput);
+        var out = new StringWriter();
+        renderString(event, template, model, locale, templateOutput, out);
+        return out.toString();
+    }
+
+    public void renderString(EventAndOrganizationId event, String template, Map<String, Object> model, Locale locale, TemplateOutput templateOutput, Writer out) {
+        render(new ByteArrayResource(template.getBytes(StandardCharsets.UTF_8)), modelEnricher(model, Optional.ofNullable(event), locale), locale, event, templateOutput, out);
     }
 
     public void renderHtml(Resource resource, Map<String, Object> model, OutputStream os) {
         try (var osw = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
-            compile(resource, TemplateOutput.HTML).execute(model, osw);
+            var template = compile(resource, TemplateOutput.HTML);
+            long start = System.nanoTime();
+            template.execute(model, osw);
+            recordExecution(start);
         } catch (IOException ioe) {
             throw new IllegalStateException(ioe);
         }
@@ -110,27 +144,80 @@ public class TemplateManager {
         return toEnrich;
     }
 
-    private String render(Resource resource, Map<String, Object> model, Locale locale, EventAndOrganizationId eventAndOrganizationId, TemplateOutput templateOutput) {
+    private void render(Resource resource, Map<String, Object> model, Locale locale, EventAndOrganizationId eventAndOrganizationId, TemplateOutput templateOutput, Writer out) {
         try {
             ModelAndView mv = new ModelAndView((String) null, model);
             mv.addObject("format-date", MustacheCustomTag.FORMAT_DATE);
             mv.addObject("country-name", COUNTRY_NAME);
             mv.addObject("additional-field-value", ADDITIONAL_FIELD_VALUE.apply(model.get("additional-fields")));
             mv.addObject("i18n", new CustomLocalizationMessageInterceptor(locale, messageSourceManager.getMessageSourceForEvent(eventAndOrganizationId)).createTranslator());
-            return compile(resource, templateOutput).execute(mv.getModel());
+            var template = compile(resource, templateOutput);
+            long start = System.nanoTime();
+            template.execute(mv.getModel(), out);
+            recordExecution(start);
         } catch (Exception e) {
             throw new IllegalStateException(e);
         }
     }
 
     private Template compile(Resource resource, TemplateOutput templateOutput) {
-        try (InputStreamReader tmpl = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
-            return compilers.get(templateOutput).compile(tmpl);
+        if (resource instanceof ClassPathResource) {
+            var key = new TemplateKey("classpath:" + ((ClassPathResource) resource).getPath(), templateOutput);
+            return compiledTemplates.get(key, k -> compile(read(resource), templateOutput));
+        }
+        byte[] content = read(resource);
+        return compiledTemplates.get(new TemplateKey(DigestUtils.sha256Hex(content), templateOutput), k -> compile(content, templateOutput));
+    }
+
+    private Template compile(byte[] content, TemplateOutput templateOutput) {
+        long start = System.nanoTime();
+        var template = compilers.get(templateOutput).compile(new String(content, StandardCharsets.UTF_8));
+        compilations.increment();
+        compileNanos.add(System.nanoTime() - start);
+        return template;
+    }
+
+    private static byte[] read(Resource resource) {
+        try (var is = resource.getInputStream()) {
+            return is.readAllBytes();
         } catch (IOException ioe) {
             throw new IllegalStateException(ioe);
         }
     }
 
+    private void recordExecution(long start) {
+        executions.increment();
+        executeNanos.add(System.nanoTime() - start);
+    }
+
+    public Statistics getStatistics() {
+        var stats = compiledTemplates.stats();
+        long compiled = compilations.sum();
+        long executed = executions.sum();
+        return new Statistics(stats.requestCount(), stats.hitRate(), compiledTemplates.estimatedSize(),
+            compiled, compiled > 0 ? compileNanos.sum() / compiled / 1000 : 0,
+            executed, executed > 0 ? executeNanos.sum() / executed / 1000 : 0);
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class TemplateKey {
+        private final String source;
+        private final TemplateOutput templateOutput;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Statistics {
+        private final long requestCount;
+        private final double hitRatio;
+        private final long size;
+        private final long compilations;
+        private final long averageCompileMicros;
+        private final long executions;
+        private final long averageExecuteMicros;
+    }
+
     private static final Pattern KEY_PATTERN = Pattern.compile("(.*?)[\\s\\[]");
     private static final Pattern ARGS_PATTERN = Pattern.compile("\\[(.*?)]");
 
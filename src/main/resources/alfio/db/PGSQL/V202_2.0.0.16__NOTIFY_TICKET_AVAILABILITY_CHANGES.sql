@@ -0,0 +1,44 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- notify the listening nodes (see TicketAvailabilityManager) that the number of FREE tickets of an event
+-- may have changed. Notifications are delivered only on commit and identical payloads sent
+-- within the same transaction are collapsed by postgres, so a bulk update generates a single message per event.
+CREATE OR REPLACE FUNCTION trf_notify_ticket_availability()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF (TG_OP = 'INSERT') THEN
+        IF (NEW.status = 'FREE') THEN
+            PERFORM pg_notify('alfio_ticket_availability', NEW.event_id::text);
+        END IF;
+    ELSIF (TG_OP = 'DELETE') THEN
+        IF (OLD.status = 'FREE') THEN
+            PERFORM pg_notify('alfio_ticket_availability', OLD.event_id::text);
+        END IF;
+    ELSIF ((OLD.status = 'FREE' or NEW.status = 'FREE')
+        and (OLD.status is distinct from NEW.status or OLD.category_id is distinct from NEW.category_id)) THEN
+        PERFORM pg_notify('alfio_ticket_availability', NEW.event_id::text);
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_notify_ticket_availability
+    AFTER INSERT OR UPDATE OF status, category_id OR DELETE ON ticket
+    FOR EACH ROW EXECUTE PROCEDURE trf_notify_ticket_availability();
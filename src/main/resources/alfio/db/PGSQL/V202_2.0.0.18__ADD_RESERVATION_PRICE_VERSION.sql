@@ -0,0 +1,88 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- modification stamp of the data used to compute the price of a reservation (see TicketReservationManager).
+-- The values come from a sequence, so that a stamp is never reused, even if the transaction which generated it
+-- is rolled back.
+create sequence tickets_reservation_price_version_seq;
+alter table tickets_reservation add column price_version bigint not null default nextval('tickets_reservation_price_version_seq');
+
+CREATE OR REPLACE FUNCTION trf_reservation_price_version()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF ((OLD.promo_code_id_fk, OLD.vat_status, OLD.vat_nr, OLD.vat_country, OLD.currency_code, OLD.user_language,
+         OLD.billing_address, OLD.billing_address_company, OLD.invoicing_additional_information::text)
+        is distinct from
+        (NEW.promo_code_id_fk, NEW.vat_status, NEW.vat_nr, NEW.vat_country, NEW.currency_code, NEW.user_language,
+         NEW.billing_address, NEW.billing_address_company, NEW.invoicing_additional_information::text)) THEN
+        NEW.price_version := nextval('tickets_reservation_price_version_seq');
+    END IF;
+    RETURN NEW;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_reservation_price_version
+    BEFORE UPDATE OF promo_code_id_fk, vat_status, vat_nr, vat_country, currency_code, user_language,
+        billing_address, billing_address_company, invoicing_additional_information ON tickets_reservation
+    FOR EACH ROW EXECUTE PROCEDURE trf_reservation_price_version();
+
+-- bumps the version of the reservations affected by a change of their tickets / additional service items
+CREATE OR REPLACE FUNCTION trf_reservation_items_price_version()
+    RETURNS TRIGGER AS
+$body$
+DECLARE
+    old_reservation_id character(36);
+    new_reservation_id character(36);
+BEGIN
+    IF (TG_OP = 'UPDATE' and row(OLD.*) is not distinct from row(NEW.*)) THEN
+        RETURN NULL;
+    END IF;
+    IF (TG_TABLE_NAME = 'ticket') THEN
+        IF (TG_OP <> 'INSERT') THEN
+            old_reservation_id := OLD.tickets_reservation_id;
+        END IF;
+        IF (TG_OP <> 'DELETE') THEN
+            new_reservation_id := NEW.tickets_reservation_id;
+        END IF;
+    ELSE
+        IF (TG_OP <> 'INSERT') THEN
+            old_reservation_id := OLD.tickets_reservation_uuid;
+        END IF;
+        IF (TG_OP <> 'DELETE') THEN
+            new_reservation_id := NEW.tickets_reservation_uuid;
+        END IF;
+    END IF;
+    IF (old_reservation_id is not null) THEN
+        update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq') where id = old_reservation_id;
+    END IF;
+    IF (new_reservation_id is not null and new_reservation_id is distinct from old_reservation_id) THEN
+        update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq') where id = new_reservation_id;
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_ticket_reservation_price_version
+    AFTER INSERT OR UPDATE OF tickets_reservation_id, category_id, status, src_price_cts, final_price_cts, vat_cts, discount_cts, currency_code OR DELETE ON ticket
+    FOR EACH ROW EXECUTE PROCEDURE trf_reservation_items_price_version();
+
+CREATE TRIGGER tr_additional_service_item_reservation_price_version
+    AFTER INSERT OR UPDATE OF tickets_reservation_uuid, additional_service_id_fk, status, src_price_cts, final_price_cts, vat_cts, discount_cts, currency_code OR DELETE ON additional_service_item
+    FOR EACH ROW EXECUTE PROCEDURE trf_reservation_items_price_version();
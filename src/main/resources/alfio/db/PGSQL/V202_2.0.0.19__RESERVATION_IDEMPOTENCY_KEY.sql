@@ -0,0 +1,29 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- idempotency keys sent by the clients when creating a reservation. The key is bound to the reservation,
+-- therefore it is deleted together with the reservation and ignored once the reservation has expired.
+create table reservation_idempotency_key (
+    event_id_fk integer not null references event(id),
+    idempotency_key varchar(255) not null,
+    payload_hash varchar(64) not null,
+    reservation_id_fk character(36) not null references tickets_reservation(id) on delete cascade,
+    creation_ts timestamp with time zone not null default now(),
+    primary key (event_id_fk, idempotency_key)
+);
+
+create index reservation_idempotency_key_reservation_id_idx on reservation_idempotency_key(reservation_id_fk);
@@ -0,0 +1,61 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- notify the listening nodes (see ConfigurationCache) that the configuration of a given scope has been modified.
+-- The payload identifies the level and its owner, e.g. SYSTEM, ORGANIZATION:1, EVENT:1:2, TICKET_CATEGORY:1:2:3
+CREATE OR REPLACE FUNCTION configuration_scope(table_name text, r jsonb)
+    RETURNS text AS
+$body$
+    SELECT CASE table_name
+        WHEN 'configuration_organization' THEN 'ORGANIZATION:' || (r->>'organization_id_fk')
+        WHEN 'configuration_event' THEN 'EVENT:' || (r->>'organization_id_fk') || ':' || (r->>'event_id_fk')
+        WHEN 'configuration_ticket_category' THEN 'TICKET_CATEGORY:' || (r->>'organization_id_fk') || ':' || (r->>'event_id_fk') || ':' || (r->>'ticket_category_id_fk')
+        ELSE 'SYSTEM'
+    END
+$body$
+    LANGUAGE sql IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION trf_notify_configuration_change()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF (TG_OP <> 'INSERT') THEN
+        PERFORM pg_notify('alfio_configuration', configuration_scope(TG_TABLE_NAME, to_jsonb(OLD)));
+    END IF;
+    IF (TG_OP <> 'DELETE') THEN
+        PERFORM pg_notify('alfio_configuration', configuration_scope(TG_TABLE_NAME, to_jsonb(NEW)));
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_notify_configuration_change
+    AFTER INSERT OR UPDATE OR DELETE ON configuration
+    FOR EACH ROW EXECUTE PROCEDURE trf_notify_configuration_change();
+
+CREATE TRIGGER tr_notify_configuration_change
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_organization
+    FOR EACH ROW EXECUTE PROCEDURE trf_notify_configuration_change();
+
+CREATE TRIGGER tr_notify_configuration_change
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_event
+    FOR EACH ROW EXECUTE PROCEDURE trf_notify_configuration_change();
+
+CREATE TRIGGER tr_notify_configuration_change
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_ticket_category
+    FOR EACH ROW EXECUTE PROCEDURE trf_notify_configuration_change();
@@ -0,0 +1,58 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- number of tickets by event, category and status, used by the statistics views (see afterMigrate__003 and 004).
+-- The table is insert-only: every change of a ticket adds a -1 row for its old state and a +1 row for the new one,
+-- so that concurrent reservations never wait on each other. The rows are periodically summed up
+-- (see TicketStatisticsManager), which also repairs any drift from the ticket table.
+create table ticket_status_count_delta (
+    id bigserial primary key not null,
+    event_id integer not null,
+    category_id integer,
+    status varchar(255) not null,
+    delta integer not null
+);
+
+create index ticket_status_count_delta_event_category_idx on ticket_status_count_delta(event_id, category_id);
+
+insert into ticket_status_count_delta(event_id, category_id, status, delta)
+    select event_id, category_id, status, count(*) from ticket group by event_id, category_id, status;
+
+CREATE OR REPLACE FUNCTION trf_ticket_status_count_delta()
+    RETURNS TRIGGER AS
+$body$
+BEGIN
+    IF (TG_OP = 'UPDATE' and (OLD.event_id, OLD.category_id, OLD.status) is not distinct from (NEW.event_id, NEW.category_id, NEW.status)) THEN
+        RETURN NULL;
+    END IF;
+    IF (TG_OP <> 'INSERT') THEN
+        insert into ticket_status_count_delta(event_id, category_id, status, delta) values (OLD.event_id, OLD.category_id, OLD.status, -1);
+    END IF;
+    IF (TG_OP <> 'DELETE') THEN
+        insert into ticket_status_count_delta(event_id, category_id, status, delta) values (NEW.event_id, NEW.category_id, NEW.status, 1);
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_ticket_status_count_delta
+    AFTER INSERT OR UPDATE OF event_id, category_id, status OR DELETE ON ticket
+    FOR EACH ROW EXECUTE PROCEDURE trf_ticket_status_count_delta();
+
+-- stuck reservations are rare: the statistics views find them without scanning all the reservations
+create index tickets_reservation_stuck_idx on tickets_reservation(id) where status = 'STUCK';
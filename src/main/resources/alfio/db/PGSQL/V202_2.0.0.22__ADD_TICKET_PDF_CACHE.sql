@@ -0,0 +1,25 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- generated ticket PDFs, identified by the hash of the rendered page. Never served as-is by the file endpoints
+create table ticket_pdf_cache (
+    id char(64) primary key not null,
+    content bytea not null,
+    creation_time timestamp with time zone default now() not null
+);
+
+create index ticket_pdf_cache_creation_time_idx on ticket_pdf_cache(creation_time);
@@ -0,0 +1,25 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- the version of the tickets and additional service items of a reservation is now computed when reading it
+-- (see TicketReservationRepository.findPriceVersion), so that modifying them does not rewrite the reservation row
+-- and does not lock it after the items.
+drop trigger if exists tr_ticket_reservation_price_version on ticket;
+drop trigger if exists tr_additional_service_item_reservation_price_version on additional_service_item;
+drop function if exists trf_reservation_items_price_version();
+
+create index if not exists additional_service_item_tickets_reservation_uuid_idx on additional_service_item(tickets_reservation_uuid);
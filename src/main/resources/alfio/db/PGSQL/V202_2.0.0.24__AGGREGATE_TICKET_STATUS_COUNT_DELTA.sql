@@ -0,0 +1,80 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- on PostgreSQL 10+ the deltas are aggregated by event, category and status once per statement, using the
+-- transition tables: reserving or releasing n tickets of the same category adds two rows instead of 2n, and the
+-- updates which do not change the counters add none.
+-- Transition tables cannot be combined with more than one event or with a column list, hence the three triggers.
+-- Older versions keep the row-level trigger, which is now invoked only when the counters actually change.
+DO $migration$
+BEGIN
+    IF (current_setting('server_version_num')::int >= 100000) THEN
+        CREATE OR REPLACE FUNCTION trf_ticket_status_count_delta_statement()
+            RETURNS TRIGGER AS
+        $body$
+        BEGIN
+            IF (TG_OP = 'INSERT') THEN
+                insert into ticket_status_count_delta(event_id, category_id, status, delta)
+                    select event_id, category_id, status, count(*) from new_rows group by event_id, category_id, status;
+            ELSIF (TG_OP = 'DELETE') THEN
+                insert into ticket_status_count_delta(event_id, category_id, status, delta)
+                    select event_id, category_id, status, -count(*) from old_rows group by event_id, category_id, status;
+            ELSE
+                insert into ticket_status_count_delta(event_id, category_id, status, delta)
+                    select event_id, category_id, status, sum(delta) from (
+                        select event_id, category_id, status, -1 as delta from old_rows
+                        union all
+                        select event_id, category_id, status, 1 as delta from new_rows
+                    ) d group by event_id, category_id, status having sum(delta) <> 0;
+            END IF;
+            RETURN NULL;
+        END
+        $body$
+            LANGUAGE plpgsql;
+
+        DROP TRIGGER tr_ticket_status_count_delta ON ticket;
+        DROP FUNCTION trf_ticket_status_count_delta();
+
+        CREATE TRIGGER tr_ticket_status_count_delta_insert
+            AFTER INSERT ON ticket
+            REFERENCING NEW TABLE AS new_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_ticket_status_count_delta_statement();
+
+        CREATE TRIGGER tr_ticket_status_count_delta_update
+            AFTER UPDATE ON ticket
+            REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_ticket_status_count_delta_statement();
+
+        CREATE TRIGGER tr_ticket_status_count_delta_delete
+            AFTER DELETE ON ticket
+            REFERENCING OLD TABLE AS old_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_ticket_status_count_delta_statement();
+    ELSE
+        DROP TRIGGER tr_ticket_status_count_delta ON ticket;
+
+        CREATE TRIGGER tr_ticket_status_count_delta
+            AFTER INSERT OR DELETE ON ticket
+            FOR EACH ROW EXECUTE PROCEDURE trf_ticket_status_count_delta();
+
+        CREATE TRIGGER tr_ticket_status_count_delta_update
+            AFTER UPDATE OF event_id, category_id, status ON ticket
+            FOR EACH ROW
+            WHEN ((OLD.event_id, OLD.category_id, OLD.status) is distinct from (NEW.event_id, NEW.category_id, NEW.status))
+            EXECUTE PROCEDURE trf_ticket_status_count_delta();
+    END IF;
+END
+$migration$;
@@ -0,0 +1,22 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- pg_notify serializes the commits of all the notifying transactions on a global lock, so it must not be called by
+-- every reservation. The nodes now find the events whose tickets have been modified by polling the rows written by
+-- the statistics triggers (see V202_2.0.0.26 and TicketAvailabilityManager).
+drop trigger if exists tr_notify_ticket_availability on ticket;
+drop function if exists trf_notify_ticket_availability();
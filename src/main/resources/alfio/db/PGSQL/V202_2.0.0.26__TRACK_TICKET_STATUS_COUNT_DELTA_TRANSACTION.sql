@@ -0,0 +1,22 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- each row records the transaction which wrote it, so that the readers can find the events modified since a given
+-- transaction horizon: a poll reads the rows written by the transactions that were still running at the time of the
+-- previous poll, or that started later (see TicketStatusCountRepository#findEventIdsModifiedSince).
+alter table ticket_status_count_delta add column tx_id bigint not null default txid_current();
+create index ticket_status_count_delta_tx_id_idx on ticket_status_count_delta(tx_id);
@@ -0,0 +1,158 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- the price version of a reservation is bumped again when its tickets or additional service items change, so that
+-- reading the version doesn't need to scan the items (see TicketReservationRepository.findPriceVersion).
+-- On PostgreSQL 10+ the affected reservations are collected from the transition tables and updated once per statement,
+-- in a deterministic order; only the changes of the price-related columns are considered.
+-- Older versions fall back to a row-level trigger, invoked only when the price-related columns actually change.
+DO $migration$
+BEGIN
+    IF (current_setting('server_version_num')::int >= 100000) THEN
+        CREATE OR REPLACE FUNCTION trf_ticket_reservation_price_version_statement()
+            RETURNS TRIGGER AS
+        $body$
+        BEGIN
+            IF (TG_OP = 'INSERT') THEN
+                update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq')
+                    where id in (select id from tickets_reservation where id in (select tickets_reservation_id from new_rows) order by id for update);
+            ELSIF (TG_OP = 'DELETE') THEN
+                update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq')
+                    where id in (select id from tickets_reservation where id in (select tickets_reservation_id from old_rows) order by id for update);
+            ELSE
+                update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq')
+                    where id in (select id from tickets_reservation where id in (
+                        select unnest(array[o.tickets_reservation_id, n.tickets_reservation_id]) from old_rows o join new_rows n on o.id = n.id
+                        where (o.tickets_reservation_id, o.category_id, o.status, o.src_price_cts, o.final_price_cts, o.vat_cts, o.discount_cts, o.currency_code)
+                            is distinct from (n.tickets_reservation_id, n.category_id, n.status, n.src_price_cts, n.final_price_cts, n.vat_cts, n.discount_cts, n.currency_code)
+                    ) order by id for update);
+            END IF;
+            RETURN NULL;
+        END
+        $body$
+            LANGUAGE plpgsql;
+
+        CREATE OR REPLACE FUNCTION trf_additional_service_item_reservation_price_version_statement()
+            RETURNS TRIGGER AS
+        $body$
+        BEGIN
+            IF (TG_OP = 'INSERT') THEN
+                update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq')
+                    where id in (select id from tickets_reservation where id in (select tickets_reservation_uuid from new_rows) order by id for update);
+            ELSIF (TG_OP = 'DELETE') THEN
+                update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq')
+                    where id in (select id from tickets_reservation where id in (select tickets_reservation_uuid from old_rows) order by id for update);
+            ELSE
+                update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq')
+                    where id in (select id from tickets_reservation where id in (
+                        select unnest(array[o.tickets_reservation_uuid, n.tickets_reservation_uuid]) from old_rows o join new_rows n on o.id = n.id
+                        where (o.tickets_reservation_uuid, o.additional_service_id_fk, o.status, o.src_price_cts, o.final_price_cts, o.vat_cts, o.discount_cts, o.currency_code)
+                            is distinct from (n.tickets_reservation_uuid, n.additional_service_id_fk, n.status, n.src_price_cts, n.final_price_cts, n.vat_cts, n.discount_cts, n.currency_code)
+                    ) order by id for update);
+            END IF;
+            RETURN NULL;
+        END
+        $body$
+            LANGUAGE plpgsql;
+
+        CREATE TRIGGER tr_ticket_reservation_price_version_insert
+            AFTER INSERT ON ticket
+            REFERENCING NEW TABLE AS new_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_ticket_reservation_price_version_statement();
+
+        CREATE TRIGGER tr_ticket_reservation_price_version_update
+            AFTER UPDATE ON ticket
+            REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_ticket_reservation_price_version_statement();
+
+        CREATE TRIGGER tr_ticket_reservation_price_version_delete
+            AFTER DELETE ON ticket
+            REFERENCING OLD TABLE AS old_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_ticket_reservation_price_version_statement();
+
+        CREATE TRIGGER tr_additional_service_item_reservation_price_version_insert
+            AFTER INSERT ON additional_service_item
+            REFERENCING NEW TABLE AS new_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_additional_service_item_reservation_price_version_statement();
+
+        CREATE TRIGGER tr_additional_service_item_reservation_price_version_update
+            AFTER UPDATE ON additional_service_item
+            REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_additional_service_item_reservation_price_version_statement();
+
+        CREATE TRIGGER tr_additional_service_item_reservation_price_version_delete
+            AFTER DELETE ON additional_service_item
+            REFERENCING OLD TABLE AS old_rows
+            FOR EACH STATEMENT EXECUTE PROCEDURE trf_additional_service_item_reservation_price_version_statement();
+    ELSE
+        CREATE OR REPLACE FUNCTION trf_reservation_items_price_version()
+            RETURNS TRIGGER AS
+        $body$
+        DECLARE
+            old_reservation_id character(36);
+            new_reservation_id character(36);
+        BEGIN
+            IF (TG_TABLE_NAME = 'ticket') THEN
+                IF (TG_OP <> 'INSERT') THEN
+                    old_reservation_id := OLD.tickets_reservation_id;
+                END IF;
+                IF (TG_OP <> 'DELETE') THEN
+                    new_reservation_id := NEW.tickets_reservation_id;
+                END IF;
+            ELSE
+                IF (TG_OP <> 'INSERT') THEN
+                    old_reservation_id := OLD.tickets_reservation_uuid;
+                END IF;
+                IF (TG_OP <> 'DELETE') THEN
+                    new_reservation_id := NEW.tickets_reservation_uuid;
+                END IF;
+            END IF;
+            IF (old_reservation_id is not null) THEN
+                update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq') where id = old_reservation_id;
+            END IF;
+            IF (new_reservation_id is not null and new_reservation_id is distinct from old_reservation_id) THEN
+                update tickets_reservation set price_version = nextval('tickets_reservation_price_version_seq') where id = new_reservation_id;
+            END IF;
+            RETURN NULL;
+        END
+        $body$
+            LANGUAGE plpgsql;
+
+        CREATE TRIGGER tr_ticket_reservation_price_version
+            AFTER INSERT OR DELETE ON ticket
+            FOR EACH ROW EXECUTE PROCEDURE trf_reservation_items_price_version();
+
+        CREATE TRIGGER tr_ticket_reservation_price_version_update
+            AFTER UPDATE OF tickets_reservation_id, category_id, status, src_price_cts, final_price_cts, vat_cts, discount_cts, currency_code ON ticket
+            FOR EACH ROW
+            WHEN ((OLD.tickets_reservation_id, OLD.category_id, OLD.status, OLD.src_price_cts, OLD.final_price_cts, OLD.vat_cts, OLD.discount_cts, OLD.currency_code)
+                is distinct from (NEW.tickets_reservation_id, NEW.category_id, NEW.status, NEW.src_price_cts, NEW.final_price_cts, NEW.vat_cts, NEW.discount_cts, NEW.currency_code))
+            EXECUTE PROCEDURE trf_reservation_items_price_version();
+
+        CREATE TRIGGER tr_additional_service_item_reservation_price_version
+            AFTER INSERT OR DELETE ON additional_service_item
+            FOR EACH ROW EXECUTE PROCEDURE trf_reservation_items_price_version();
+
+        CREATE TRIGGER tr_additional_service_item_reservation_price_version_update
+            AFTER UPDATE OF tickets_reservation_uuid, additional_service_id_fk, status, src_price_cts, final_price_cts, vat_cts, discount_cts, currency_code ON additional_service_item
+            FOR EACH ROW
+            WHEN ((OLD.tickets_reservation_uuid, OLD.additional_service_id_fk, OLD.status, OLD.src_price_cts, OLD.final_price_cts, OLD.vat_cts, OLD.discount_cts, OLD.currency_code)
+                is distinct from (NEW.tickets_reservation_uuid, NEW.additional_service_id_fk, NEW.status, NEW.src_price_cts, NEW.final_price_cts, NEW.vat_cts, NEW.discount_cts, NEW.currency_code))
+            EXECUTE PROCEDURE trf_reservation_items_price_version();
+    END IF;
+END
+$migration$;
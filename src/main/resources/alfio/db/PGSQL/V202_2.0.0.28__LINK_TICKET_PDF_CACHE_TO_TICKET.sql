@@ -0,0 +1,22 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- cached PDFs contain the attendee data, so they are linked to their ticket in order to be removed as soon as
+-- the ticket is reassigned, released or cancelled. The existing entries can be safely discarded.
+delete from ticket_pdf_cache;
+alter table ticket_pdf_cache add column ticket_id integer not null references ticket(id) on delete cascade;
+create index ticket_pdf_cache_ticket_id_idx on ticket_pdf_cache(ticket_id);
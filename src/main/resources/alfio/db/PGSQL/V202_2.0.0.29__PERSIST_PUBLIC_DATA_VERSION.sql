@@ -0,0 +1,66 @@
+--
+-- This file is part of alf.io.
+--
+-- alf.io is free software: you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation, either version 3 of the License, or
+-- (at your option) any later version.
+--
+-- alf.io is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License
+-- along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+--
+
+-- persisted counterpart of the versions tracked in memory by EventVersionTracker. They survive the restarts and
+-- are shared by all the nodes, therefore they can be used to build the ETags of the public API
+create sequence public_data_version_seq;
+alter table event add column public_data_version bigint not null default 0;
+
+-- modifications which could affect all the events, e.g. system or organization configuration
+create table public_data_global_version (
+    id integer primary key not null check (id = 1),
+    version bigint not null
+);
+insert into public_data_global_version(id, version) values (1, 0);
+
+-- the configuration can be modified by several code paths, so the versions are updated by the database
+CREATE OR REPLACE FUNCTION trf_bump_public_data_version()
+    RETURNS TRIGGER AS
+$body$
+DECLARE
+    r jsonb;
+BEGIN
+    IF (TG_OP = 'DELETE') THEN
+        r := to_jsonb(OLD);
+    ELSE
+        r := to_jsonb(NEW);
+    END IF;
+    IF (TG_TABLE_NAME IN ('configuration_event', 'configuration_ticket_category')) THEN
+        UPDATE event SET public_data_version = nextval('public_data_version_seq') WHERE id = (r->>'event_id_fk')::integer;
+    ELSE
+        UPDATE public_data_global_version SET version = nextval('public_data_version_seq') WHERE id = 1;
+    END IF;
+    RETURN NULL;
+END
+$body$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER tr_bump_public_data_version
+    AFTER INSERT OR UPDATE OR DELETE ON configuration
+    FOR EACH ROW EXECUTE PROCEDURE trf_bump_public_data_version();
+
+CREATE TRIGGER tr_bump_public_data_version
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_organization
+    FOR EACH ROW EXECUTE PROCEDURE trf_bump_public_data_version();
+
+CREATE TRIGGER tr_bump_public_data_version
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_event
+    FOR EACH ROW EXECUTE PROCEDURE trf_bump_public_data_version();
+
+CREATE TRIGGER tr_bump_public_data_version
+    AFTER INSERT OR UPDATE OR DELETE ON configuration_ticket_category
+    FOR EACH ROW EXECUTE PROCEDURE trf_bump_public_data_version();
@@ -39,23 +39,24 @@ from
 
 left join
 
+-- maintained by the trigger on ticket, see V202_2.0.0.21__MAINTAIN_TICKET_STATISTICS.sql
 (select
-  sum(case(status = 'PENDING') when true then 1 else 0 end) as pending_count,
-  sum(case(status = 'RELEASED') when true then 1 else 0 end) as released_count,
-  sum(case(status = 'CHECKED_IN') when true then 1 else 0 end) checked_in_count,
-  sum(case(status in ('TO_BE_PAID', 'ACQUIRED')) when true then 1 else 0 end) as sold_tickets_count,
+  sum(case(status = 'PENDING') when true then delta else 0 end) as pending_count,
+  sum(case(status = 'RELEASED') when true then delta else 0 end) as released_count,
+  sum(case(status = 'CHECKED_IN') when true then delta else 0 end) checked_in_count,
+  sum(case(status in ('TO_BE_PAID', 'ACQUIRED')) when true then delta else 0 end) as sold_tickets_count,
+  event_id as stats_event_id,
   category_id
-from ticket
-inner join ticket_category tc
-on category_id = tc.id
-group by category_id
-) tickets_stats on ticket_cat.id = tickets_stats.category_id
+from ticket_status_count_delta
+where category_id is not null
+group by event_id, category_id
+) tickets_stats on ticket_cat.id = tickets_stats.category_id and ticket_cat.event_id = tickets_stats.stats_event_id
 
 left join
 
 (select count(*) stuck_count, category_id
-  from ticket
-  inner join tickets_reservation on tickets_reservation.id = tickets_reservation_id
+  from tickets_reservation
+  inner join ticket on tickets_reservation.id = tickets_reservation_id
   where tickets_reservation.status = 'STUCK'
   group by category_id) stuck_count on ticket_cat.id = stuck_count.category_id
 
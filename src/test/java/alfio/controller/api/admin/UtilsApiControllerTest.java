@@ -29,7 +29,7 @@ class UtilsApiControllerTest {
 
     @Test
     void getCurrencies() {
-        new UtilsApiController(null, null, null)
+        new UtilsApiController(null, null, null, null)
             .getCurrencies(Locale.ENGLISH)
             .forEach(currency -> {
                 assertFalse(currency.getFractionDigits() < 0);
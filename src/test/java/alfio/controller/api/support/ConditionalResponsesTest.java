@@ -0,0 +1,113 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConditionalResponsesTest {
+
+    private final ConditionalResponses conditionalResponses = new ConditionalResponses();
+    private final AtomicInteger builds = new AtomicInteger();
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        request = new MockHttpServletRequest("GET", "/api/v2/public/event/test");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void notModifiedIfTheETagMatches() {
+        var eTag = ConditionalResponses.eTag("hash:1");
+        var first = respond(eTag);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(eTag, first.getHeaders().getETag());
+        assertEquals("no-cache", first.getHeaders().getCacheControl());
+
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"other\", " + eTag);
+        var second = respond(eTag);
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+        assertNull(second.getBody());
+        assertEquals(eTag, second.getHeaders().getETag());
+        assertEquals(1, builds.get());
+
+        var statistics = conditionalResponses.getStatistics().get("test");
+        assertEquals(2, statistics.getRequests());
+        assertEquals(1, statistics.getNotModified());
+        assertEquals(0.5, statistics.getNotModifiedRatio());
+    }
+
+    @Test
+    void eTagChangesWhenTheVersionChanges() {
+        var eTag = ConditionalResponses.eTag("hash:1");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        var newETag = ConditionalResponses.eTag("hash:2");
+        assertNotEquals(eTag, newETag);
+        var response = respond(newETag);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, builds.get());
+        // the ETag depends only on the given versions, so it is the same on every instance
+        assertEquals(eTag, ConditionalResponses.eTag("hash:1"));
+    }
+
+    @Test
+    void errorsAreNotTagged() {
+        var response = conditionalResponses.respond("test", "\"tag\"", null, CacheControl.noCache(), () -> ResponseEntity.notFound().build());
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertNull(response.getHeaders().getETag());
+    }
+
+    @Test
+    void buildWithoutRequest() {
+        RequestContextHolder.resetRequestAttributes();
+        assertEquals(HttpStatus.OK, respond("\"tag\"").getStatusCode());
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    void matches() {
+        assertTrue(ConditionalResponses.matches("*", "\"a\""));
+        assertTrue(ConditionalResponses.matches("\"b\",W/\"a\"", "\"a\""));
+        assertFalse(ConditionalResponses.matches("\"b\"", "\"a\""));
+        assertFalse(ConditionalResponses.matches(null, "\"a\""));
+    }
+
+    private ResponseEntity<String> respond(String eTag) {
+        return conditionalResponses.respond("test", eTag, null, CacheControl.noCache(), () -> {
+            builds.incrementAndGet();
+            return ResponseEntity.ok("body");
+        });
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.api.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionedPayloadCacheTest {
+
+    private final VersionedPayloadCache<Integer, Map<String, String>> cache = new VersionedPayloadCache<>(10, Duration.ofMinutes(1));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void payloadIsRebuiltOnlyIfTheVersionChanges() {
+        var first = cache.get(1, 0, this::load);
+        assertSame(first, cache.get(1, 0, this::load));
+        assertEquals(1, loads.get());
+        var second = cache.get(1, 1, this::load);
+        assertNotSame(first, second);
+        assertEquals(2, loads.get());
+        // same content, same ETag
+        assertEquals(first.getETag(), second.getETag());
+        assertTrue(first.getETag().startsWith("\"") && first.getETag().endsWith("\""));
+    }
+
+    @Test
+    void olderVersionDoesNotReplaceTheCachedOne() {
+        var current = cache.get(1, 2, this::load);
+        cache.get(1, 1, this::load);
+        assertSame(current, cache.get(1, 2, this::load));
+    }
+
+    private Map<String, String> load() {
+        loads.incrementAndGet();
+        return Map.of("key", "value");
+    }
+}
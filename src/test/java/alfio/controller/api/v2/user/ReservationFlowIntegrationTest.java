@@ -47,6 +47,7 @@ import alfio.repository.system.ConfigurationRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.test.util.IntegrationTestUtil;
 import alfio.util.BaseIntegrationTest;
+import alfio.util.ErrorsCode;
 import alfio.util.EventUtil;
 import alfio.util.Json;
 import ch.digitalfondue.jfiveparse.Element;
@@ -68,6 +69,7 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -78,6 +80,8 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.context.request.ServletWebRequest;
 
 import javax.imageio.ImageIO;
@@ -295,7 +299,7 @@ public class ReservationFlowIntegrationTest extends BaseIntegrationTest {
         assertEquals("o", translationsApiController.getPublicTranslations("it", true).get("common.or"));
         assertEquals("oder", translationsApiController.getPublicTranslations("de", true).get("common.or"));
 
-        var alfioInfo = infoApiController.getInfo(new MockHttpSession());
+        var alfioInfo = infoApiController.getInfo(new MockHttpSession()).getBody();
         assertEquals(false, alfioInfo.isDemoModeEnabled());
         assertEquals(true, alfioInfo.isDevModeEnabled());
         assertEquals(false, alfioInfo.isProdModeEnabled());
@@ -620,6 +624,46 @@ public class ReservationFlowIntegrationTest extends BaseIntegrationTest {
             checkStatus(reservationId, HttpStatus.NOT_FOUND, null, null);
         }
 
+        //retry a reservation request with an idempotency key
+        {
+            var form = new ReservationForm();
+            var ticketReservation = new TicketReservationModification();
+            ticketReservation.setAmount(1);
+            ticketReservation.setTicketCategoryId(eventApiV2Controller.getTicketCategories(event.getShortName(), null).getBody().getTicketCategories().get(0).getId());
+            form.setReservation(Collections.singletonList(ticketReservation));
+            // weak keys are rejected
+            var weakKeyRequest = new MockHttpServletRequest();
+            weakKeyRequest.addHeader(EventApiV2Controller.IDEMPOTENCY_KEY_HEADER, "my-key");
+            var weakKey = eventApiV2Controller.reserveTickets(event.getShortName(), "en", form, new BeanPropertyBindingResult(form, "reservation"), new ServletWebRequest(weakKeyRequest, new MockHttpServletResponse()));
+            assertEquals(HttpStatus.BAD_REQUEST, weakKey.getStatusCode());
+            assertEquals("*", weakKey.getHeaders().getAccessControlAllowOrigin());
+
+            var request = new MockHttpServletRequest();
+            request.addHeader(EventApiV2Controller.IDEMPOTENCY_KEY_HEADER, UUID.randomUUID().toString());
+            var res = eventApiV2Controller.reserveTickets(event.getShortName(), "en", form, new BeanPropertyBindingResult(form, "reservation"), new ServletWebRequest(request, new MockHttpServletResponse()));
+            assertEquals(HttpStatus.OK, res.getStatusCode());
+            var reservationId = res.getBody().getValue();
+
+            var retry = eventApiV2Controller.reserveTickets(event.getShortName(), "en", form, new BeanPropertyBindingResult(form, "reservation"), new ServletWebRequest(request, new MockHttpServletResponse()));
+            assertEquals(HttpStatus.OK, retry.getStatusCode());
+            assertEquals(reservationId, retry.getBody().getValue());
+            assertEquals(1, ticketRepository.findTicketsInReservation(reservationId).size());
+
+            // same key, different payload
+            ticketReservation.setAmount(2);
+            var modified = eventApiV2Controller.reserveTickets(event.getShortName(), "en", form, new BeanPropertyBindingResult(form, "reservation"), new ServletWebRequest(request, new MockHttpServletResponse()));
+            assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, modified.getStatusCode());
+            assertEquals(ErrorsCode.STEP_1_IDEMPOTENCY_KEY_CONFLICT, modified.getBody().getValidationErrors().get(0).getCode());
+
+            assertEquals(HttpStatus.OK, reservationApiV2Controller.cancelPendingReservation(event.getShortName(), reservationId).getStatusCode());
+
+            // the key is released together with the reservation
+            var afterCancel = eventApiV2Controller.reserveTickets(event.getShortName(), "en", form, new BeanPropertyBindingResult(form, "reservation"), new ServletWebRequest(request, new MockHttpServletResponse()));
+            assertEquals(HttpStatus.OK, afterCancel.getStatusCode());
+            assertNotEquals(reservationId, afterCancel.getBody().getValue());
+            assertEquals(HttpStatus.OK, reservationApiV2Controller.cancelPendingReservation(event.getShortName(), afterCancel.getBody().getValue()).getStatusCode());
+        }
+
         //buy 2 ticket, with additional service + field
         {
             var form = new ReservationForm();
@@ -1017,6 +1061,47 @@ public class ReservationFlowIntegrationTest extends BaseIntegrationTest {
 
     }
 
+    @Test
+    public void publishedEventsListingIsConditional() {
+        ensureConfiguration();
+        eventManager.toggleActiveFlag(event.getId(), user, true);
+
+        var first = eventApiV2Controller.listEvents();
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        var eTag = first.getHeaders().getETag();
+        assertNotNull(eTag);
+        assertEquals(eTag, eventApiV2Controller.listEvents().getHeaders().getETag());
+
+        var request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            var notModified = eventApiV2Controller.listEvents();
+            assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+            assertNull(notModified.getBody());
+            assertEquals(eTag, notModified.getHeaders().getETag());
+
+            // editing the event must invalidate the ETag sent by the client
+            var em = new EventModification(event.getId(), Event.EventType.INTERNAL, event.getWebsiteUrl(), null,
+                event.getTermsAndConditionsUrl(), event.getPrivacyPolicyUrl(), event.getImageUrl(), null,
+                event.getShortName(), "updated display name", event.getOrganizationId(), event.getLocation(),
+                event.getLatitude(), event.getLongitude(), event.getZoneId().getId(), DESCRIPTION,
+                DateTimeModification.fromZonedDateTime(event.getBegin()), DateTimeModification.fromZonedDateTime(event.getEnd()),
+                event.getRegularPrice(), event.getCurrency(), eventRepository.countExistingTickets(event.getId()),
+                event.getVat(), event.isVatIncluded(), event.getAllowedPaymentProxies(), Collections.emptyList(),
+                false, null, 7, null, null);
+            eventManager.updateEventHeader(event, em, user);
+
+            var modified = eventApiV2Controller.listEvents();
+            assertEquals(HttpStatus.OK, modified.getStatusCode());
+            assertNotEquals(eTag, modified.getHeaders().getETag());
+            assertEquals(1, modified.getBody().size());
+            assertEquals("updated display name", modified.getBody().get(0).getDisplayName());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
     private void checkStatus(String reservationId, HttpStatus expectedHttpStatus, Boolean validated, TicketReservation.TicketReservationStatus reservationStatus) {
         var statusRes = reservationApiV2Controller.getReservationStatus(event.getShortName(), reservationId);
         assertEquals(expectedHttpStatus, statusRes.getStatusCode());
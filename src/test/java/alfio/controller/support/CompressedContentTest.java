@@ -0,0 +1,100 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.controller.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedContentTest {
+
+    private static final byte[] CONTENT = "<html><body>index</body></html>".repeat(10).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void identityIfCompressionIsNotAccepted() throws IOException {
+        var response = write(new MockHttpServletRequest());
+        assertArrayEquals(CONTENT, response.getContentAsByteArray());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+    }
+
+    @Test
+    void gzipIfAccepted() throws IOException {
+        var request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8");
+        var response = write(request);
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        try (var is = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertArrayEquals(CONTENT, is.readAllBytes());
+        }
+    }
+
+    @Test
+    void notModified() throws IOException {
+        var eTag = write(new MockHttpServletRequest()).getHeader(HttpHeaders.ETAG);
+        var request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        var response = write(request);
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void eachEncodingHasItsOwnETag() throws IOException {
+        var identityETag = write(new MockHttpServletRequest()).getHeader(HttpHeaders.ETAG);
+        var gzipRequest = new MockHttpServletRequest();
+        gzipRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        var gzipETag = write(gzipRequest).getHeader(HttpHeaders.ETAG);
+        assertNotEquals(identityETag, gzipETag);
+        assertTrue(gzipETag.endsWith("-gzip\""));
+
+        var request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", " + gzipETag);
+        assertEquals(304, write(request).getStatus());
+        var identityRequest = new MockHttpServletRequest();
+        identityRequest.addHeader(HttpHeaders.IF_NONE_MATCH, gzipETag);
+        var response = write(identityRequest);
+        assertEquals(304, response.getStatus());
+        assertEquals(identityETag, response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void acceptsGzip() {
+        assertTrue(CompressedContent.acceptsGzip("gzip, deflate"));
+        assertTrue(CompressedContent.acceptsGzip("*"));
+        assertFalse(CompressedContent.acceptsGzip("gzip;q=0, deflate"));
+        assertFalse(CompressedContent.acceptsGzip("identity"));
+        assertFalse(CompressedContent.acceptsGzip(null));
+    }
+
+    private static MockHttpServletResponse write(MockHttpServletRequest request) throws IOException {
+        var response = new MockHttpServletResponse();
+        CompressedContent.load(new ByteArrayResource(CONTENT)).writeTo(request, response);
+        return response;
+    }
+}
@@ -16,21 +16,36 @@
  */
 package alfio.controller.support;
 
+import alfio.manager.ExtensionManager;
 import alfio.manager.FileUploadManager;
+import alfio.manager.TicketPdfCache;
+import alfio.manager.support.PdfRenderingExecutor;
 import alfio.model.Event;
 import alfio.model.FileBlobMetadata;
+import alfio.model.Ticket;
+import alfio.model.TicketCategory;
+import alfio.model.TicketReservation;
+import alfio.model.user.Organization;
+import alfio.util.TemplateManager;
+import alfio.util.TemplateResource;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.stream.Stream;
 
-import static org.junit.Assert.assertTrue;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 public class TemplateProcessorTest {
 
@@ -64,4 +79,61 @@ public class TemplateProcessorTest {
             assertTrue(imageData.getImageHeight() <= 150);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void renderedPageIsConvertedToPdf() throws IOException {
+        ExtensionManager extensionManager = mock(ExtensionManager.class);
+        Event e = mock(Event.class);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        TemplateProcessor.renderToPdf(out -> {
+            try {
+                out.write("<html><body><p>ticket</p></body></html>");
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe);
+            }
+        }, os, extensionManager, e, TemplateResource.TICKET_PDF, new PdfRenderingExecutor(1, 1, 10));
+        assertTrue(os.toString(StandardCharsets.ISO_8859_1).startsWith("%PDF"));
+        verify(extensionManager, never()).handlePdfTransformation(anyString(), any(), any());
+    }
+
+    @Test
+    public void ticketPdfIsReusedWhileThePageIsUnchanged() throws IOException {
+        ExtensionManager extensionManager = mock(ExtensionManager.class);
+        FileUploadManager fileUploadManager = mock(FileUploadManager.class);
+        TemplateManager templateManager = mock(TemplateManager.class);
+        PdfRenderingExecutor pdfRenderingExecutor = spy(new PdfRenderingExecutor(1, 1, 10));
+        Event event = mock(Event.class);
+        Ticket ticket = mock(Ticket.class);
+        when(ticket.ticketCode(any())).thenReturn("code");
+        when(ticket.getUuid()).thenReturn("uuid");
+        String[] owner = {"first"};
+        doAnswer(invocation -> {
+            invocation.<Writer>getArgument(4).write("<html><body><p>" + owner[0] + "</p></body></html>");
+            return null;
+        }).when(templateManager).renderTemplate(eq(event), eq(TemplateResource.TICKET_PDF), anyMap(), eq(Locale.ENGLISH), any(Writer.class));
+        TicketPdfCache ticketPdfCache = mock(TicketPdfCache.class);
+        Map<String, byte[]> stored = new HashMap<>();
+        when(ticketPdfCache.find(anyString())).thenAnswer(invocation -> Optional.ofNullable(stored.get(invocation.<String>getArgument(0))));
+        doAnswer(invocation -> stored.put(invocation.getArgument(0), invocation.getArgument(2))).when(ticketPdfCache).store(anyString(), anyInt(), any());
+
+        ByteArrayOutputStream first = renderTicket(event, ticket, templateManager, fileUploadManager, extensionManager, pdfRenderingExecutor, ticketPdfCache);
+        ByteArrayOutputStream second = renderTicket(event, ticket, templateManager, fileUploadManager, extensionManager, pdfRenderingExecutor, ticketPdfCache);
+        assertTrue(first.toString(StandardCharsets.ISO_8859_1).startsWith("%PDF"));
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+        verify(pdfRenderingExecutor, times(1)).render(any(), any());
+
+        owner[0] = "second";
+        renderTicket(event, ticket, templateManager, fileUploadManager, extensionManager, pdfRenderingExecutor, ticketPdfCache);
+        verify(pdfRenderingExecutor, times(2)).render(any(), any());
+        assertEquals(2, stored.size());
+    }
+
+    private static ByteArrayOutputStream renderTicket(Event event, Ticket ticket, TemplateManager templateManager, FileUploadManager fileUploadManager,
+                                                      ExtensionManager extensionManager, PdfRenderingExecutor pdfRenderingExecutor,
+                                                      TicketPdfCache ticketPdfCache) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        TemplateProcessor.renderPDFTicket(Locale.ENGLISH, event, mock(TicketReservation.class), ticket, mock(TicketCategory.class), mock(Organization.class),
+            templateManager, fileUploadManager, "ABCD", os, t -> Collections.emptyList(), extensionManager, pdfRenderingExecutor, ticketPdfCache);
+        return os;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.repository.PublicDataVersionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EventVersionTrackerTest {
+
+    private final PublicDataVersionRepository publicDataVersionRepository = mock(PublicDataVersionRepository.class);
+    private final EventVersionTracker tracker = new EventVersionTracker(publicDataVersionRepository);
+
+    @AfterEach
+    void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void versionChangesOnlyForTheModifiedEvent() {
+        long first = tracker.getVersion(1);
+        long second = tracker.getVersion(2);
+        tracker.eventModified(1);
+        assertNotEquals(first, tracker.getVersion(1));
+        assertEquals(second, tracker.getVersion(2));
+        long global = tracker.getGlobalVersion();
+        tracker.allEventsModified();
+        assertNotEquals(second, tracker.getVersion(2));
+        assertNotEquals(global, tracker.getGlobalVersion());
+    }
+
+    @Test
+    void versionChangesAgainAfterTransactionCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        tracker.eventModified(1);
+        tracker.eventModified(1);
+        tracker.eventModified(2);
+        assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+        long version = tracker.getVersion(1);
+        var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        assertNotEquals(version, tracker.getVersion(1));
+    }
+
+    @Test
+    void persistedVersionIsUpdatedOnlyForLocalModifications() {
+        tracker.eventModified(1);
+        tracker.allEventsModified();
+        verify(publicDataVersionRepository).bumpEventVersion(1);
+        verify(publicDataVersionRepository).bumpGlobalVersion();
+        long version = tracker.getVersion(2);
+        tracker.eventModifiedInDatabase(2);
+        tracker.allEventsModifiedInDatabase();
+        assertNotEquals(version, tracker.getVersion(2));
+        verifyNoMoreInteractions(publicDataVersionRepository);
+    }
+}
@@ -0,0 +1,339 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.payment.PaymentSpecification;
+import alfio.manager.support.PaymentResult;
+import alfio.manager.user.UserManager;
+import alfio.model.*;
+import alfio.model.transaction.PaymentProxy;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.AuthorityRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.repository.user.UserRepository;
+import alfio.util.Json;
+import alfio.util.MonetaryUtil;
+import com.opentable.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.log4j.Log4j2;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Simulates a flash sale: N threads reserve and pay tickets of the same event until all the categories are sold out,
+ * measuring the throughput and the latency of each phase. The results are written as JSON, in order to compare them
+ * across releases.
+ * <p>
+ * Since it takes a while, it runs only if the system property "alfio.benchmark" is set to true:
+ * <pre>./gradlew test --tests alfio.manager.FlashSaleBenchmarkIntegrationTest -Dalfio.benchmark=true</pre>
+ * The following system properties can be used to configure the scenario:
+ * <ul>
+ *     <li>{@code alfio.benchmark.categories}: comma-separated size of each category (default: {@value #DEFAULT_CATEGORIES})</li>
+ *     <li>{@code alfio.benchmark.threads}: number of concurrent buyers (default: {@value #DEFAULT_THREADS})</li>
+ *     <li>{@code alfio.benchmark.ticketsPerReservation}: tickets bought by each reservation (default: 1)</li>
+ *     <li>{@code alfio.benchmark.confirm}: confirm the payment after the reservation (default: true)</li>
+ *     <li>{@code alfio.benchmark.report}: path of the report (default: {@value #DEFAULT_REPORT})</li>
+ * </ul>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@Log4j2
+public class FlashSaleBenchmarkIntegrationTest {
+
+    private static final String DEFAULT_CATEGORIES = "500,250,250";
+    // the connection pool used for the tests has 5 connections
+    private static final int DEFAULT_THREADS = 4;
+    private static final String DEFAULT_REPORT = "build/reports/benchmark/flash-sale.json";
+    private static final long LOCK_SAMPLING_INTERVAL_MS = 10;
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AuthorityRepository authorityRepository;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired(required = false)
+    private EmbeddedPostgres postgres;
+
+    private Event event;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(isBenchmarkEnabled());
+        ensureMinimalConfiguration(configurationRepository);
+        initAdminUser(userRepository, authorityRepository);
+    }
+
+    @After
+    public void tearDown() {
+        if(!isBenchmarkEnabled()) {
+            return;
+        }
+        if(event != null) {
+            eventManager.deleteEvent(event.getId(), UserManager.ADMIN_USERNAME);
+        }
+        removeAdminUser(userRepository, authorityRepository);
+    }
+
+    @Test
+    public void flashSale() throws Exception {
+        List<Integer> sizes = Arrays.stream(System.getProperty("alfio.benchmark.categories", DEFAULT_CATEGORIES).split(","))
+            .map(String::trim)
+            .map(Integer::valueOf)
+            .collect(Collectors.toList());
+        int threads = Integer.getInteger("alfio.benchmark.threads", DEFAULT_THREADS);
+        int ticketsPerReservation = Integer.getInteger("alfio.benchmark.ticketsPerReservation", 1);
+        boolean confirm = Boolean.parseBoolean(System.getProperty("alfio.benchmark.confirm", "true"));
+        int seats = sizes.stream().mapToInt(Integer::intValue).sum();
+
+        var eventAndUsername = initBenchmarkEvent(sizes, organizationRepository, userManager, eventManager, eventRepository);
+        event = eventAndUsername.getKey();
+        String username = eventAndUsername.getValue();
+        List<Integer> categoryIds = ticketCategoryRepository.findAllTicketCategories(event.getId()).stream()
+            .map(TicketCategory::getId)
+            .collect(Collectors.toList());
+
+        var reservationLatencies = new ConcurrentLinkedQueue<Long>();
+        var confirmationLatencies = new ConcurrentLinkedQueue<Long>();
+        var soldOut = ConcurrentHashMap.<Integer>newKeySet();
+        var notEnoughTickets = new AtomicInteger();
+        var errors = new AtomicInteger();
+        var lockSampler = new LockSampler();
+
+        Callable<Void> buyer = () -> {
+            var random = ThreadLocalRandom.current();
+            while(soldOut.size() < categoryIds.size()) {
+                int categoryId = categoryIds.get(random.nextInt(categoryIds.size()));
+                if(soldOut.contains(categoryId)) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                String reservationId;
+                try {
+                    reservationId = reserveTickets(ticketReservationManager, event, categoryId, ticketsPerReservation);
+                    reservationLatencies.add(System.nanoTime() - start);
+                } catch (TicketReservationManager.NotEnoughTicketsException e) {
+                    notEnoughTickets.incrementAndGet();
+                    if(ticketRepository.countFreeTickets(event.getId(), categoryId) < ticketsPerReservation) {
+                        soldOut.add(categoryId);
+                    }
+                    continue;
+                } catch (RuntimeException e) {
+                    log.warn("error while reserving tickets", e);
+                    errors.incrementAndGet();
+                    continue;
+                }
+                if(confirm) {
+                    start = System.nanoTime();
+                    if(confirm(reservationId, username)) {
+                        confirmationLatencies.add(System.nanoTime() - start);
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+            }
+            return null;
+        };
+
+        lockSampler.start();
+        double elapsedSeconds = runConcurrently(threads, buyer);
+        lockSampler.stop();
+
+        int reserved = seats - categoryIds.stream().mapToInt(id -> ticketRepository.countFreeTickets(event.getId(), id)).sum();
+
+        var report = new LinkedHashMap<String, Object>();
+        report.put("timestamp", ZonedDateTime.now().toString());
+        report.put("categories", sizes);
+        report.put("threads", threads);
+        report.put("ticketsPerReservation", ticketsPerReservation);
+        report.put("confirm", confirm);
+        report.put("elapsedSeconds", elapsedSeconds);
+        report.put("reservations", reservationLatencies.size());
+        report.put("reservationsPerSecond", reservationLatencies.size() / elapsedSeconds);
+        report.put("reservationLatencyMs", latencyStats(reservationLatencies));
+        report.put("confirmations", confirmationLatencies.size());
+        report.put("confirmationLatencyMs", latencyStats(confirmationLatencies));
+        report.put("notEnoughTickets", notEnoughTickets.get());
+        report.put("errors", errors.get());
+        report.put("lockWaits", lockSampler.getResult());
+        String json = Json.toJson(report);
+        log.info("flash sale benchmark result: {}", json);
+        writeReport(json);
+
+        assertEquals(0, errors.get());
+        assertEquals(reservationLatencies.size() * ticketsPerReservation, reserved);
+    }
+
+    private boolean confirm(String reservationId, String username) {
+        TotalPrice totalPrice = ticketReservationManager.totalReservationCostWithVAT(reservationId);
+        PaymentSpecification specification = new PaymentSpecification(reservationId, null, totalPrice.getPriceWithVAT(),
+            event, "email@example.com", new CustomerName("full name", "full", "name", event.mustUseFirstAndLastName()),
+            "billing address", null, Locale.ENGLISH, true, false, null, "IT", "123456", PriceContainer.VatStatus.INCLUDED, true, false);
+        PaymentResult result = ticketReservationManager.performPayment(specification, totalPrice, Optional.of(PaymentProxy.OFFLINE));
+        if(!result.isSuccessful()) {
+            return false;
+        }
+        try {
+            ticketReservationManager.validateAndConfirmOfflinePayment(reservationId, event, MonetaryUtil.centsToUnit(totalPrice.getPriceWithVAT(), totalPrice.getCurrencyCode()), username);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("error while confirming reservation " + reservationId, e);
+            return false;
+        }
+    }
+
+    private static Map<String, Object> latencyStats(Collection<Long> latencies) {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        var result = new LinkedHashMap<String, Object>();
+        if(sorted.length == 0) {
+            return result;
+        }
+        result.put("p50", percentile(sorted, 0.5));
+        result.put("p99", percentile(sorted, 0.99));
+        result.put("max", sorted[sorted.length - 1] / 1_000_000.0);
+        return result;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1);
+        return sorted[index] / 1_000_000.0;
+    }
+
+    private static void writeReport(String json) throws IOException {
+        Path path = Paths.get(System.getProperty("alfio.benchmark.report", DEFAULT_REPORT));
+        if(path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+        log.info("report written to {}", path.toAbsolutePath());
+    }
+
+    /**
+     * Samples the number of sessions waiting for a lock, using a dedicated connection in order not to
+     * steal connections from the pool.
+     */
+    private class LockSampler {
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        private Connection connection;
+        private long deadlocksBefore;
+        private int samples;
+        private int samplesWithWaiters;
+        private long totalWaiters;
+        private int maxWaiters;
+
+        private void start() throws SQLException {
+            if(postgres == null) {
+                log.warn("embedded database not available. Lock waits will not be sampled.");
+                return;
+            }
+            connection = postgres.getPostgresDatabase().getConnection();
+            deadlocksBefore = countDeadlocks();
+            scheduler.scheduleWithFixedDelay(this::sample, 0, LOCK_SAMPLING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("select count(*) from pg_locks where not granted")) {
+                rs.next();
+                int waiters = rs.getInt(1);
+                samples++;
+                totalWaiters += waiters;
+                maxWaiters = Math.max(maxWaiters, waiters);
+                if(waiters > 0) {
+                    samplesWithWaiters++;
+                }
+            } catch (SQLException e) {
+                log.warn("cannot sample locks", e);
+            }
+        }
+
+        private void stop() throws SQLException, InterruptedException {
+            scheduler.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        }
+
+        private Map<String, Object> getResult() throws SQLException {
+            var result = new LinkedHashMap<String, Object>();
+            if(connection == null) {
+                return result;
+            }
+            try {
+                result.put("samplingIntervalMs", LOCK_SAMPLING_INTERVAL_MS);
+                result.put("samples", samples);
+                result.put("samplesWithWaiters", samplesWithWaiters);
+                result.put("averageWaiters", samples == 0 ? 0 : (double) totalWaiters / samples);
+                result.put("maxWaiters", maxWaiters);
+                result.put("deadlocks", countDeadlocks() - deadlocksBefore);
+            } finally {
+                connection.close();
+            }
+            return result;
+        }
+
+        private long countDeadlocks() throws SQLException {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("select deadlocks from pg_stat_database where datname = current_database()")) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+}
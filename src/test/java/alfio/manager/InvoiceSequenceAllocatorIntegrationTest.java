@@ -0,0 +1,131 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.user.UserManager;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.test.util.IntegrationTestUtil;
+import lombok.extern.log4j.Log4j2;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static alfio.model.system.ConfigurationKeys.INVOICE_NUMBER_BLOCK_SIZE;
+import static alfio.model.system.ConfigurationKeys.INVOICE_NUMBER_STRICT_GAPLESS;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the throughput of the invoice number assignment, in both modes, while several payment confirmations of
+ * the same organization are in progress.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@Log4j2
+public class InvoiceSequenceAllocatorIntegrationTest {
+
+    // the connection pool used for the tests has 5 connections
+    private static final int PARALLELISM = 4;
+    private static final int CONFIRMATIONS_PER_THREAD = 50;
+    // simulates the work done by the confirmation after the invoice number has been assigned
+    private static final long CONFIRMATION_DURATION_MS = 5;
+
+    @Autowired
+    private InvoiceSequenceAllocator invoiceSequenceAllocator;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        IntegrationTestUtil.ensureMinimalConfiguration(configurationRepository);
+    }
+
+    @Test
+    public void compareStrictAndBlockAllocation() throws Exception {
+        int strictOrganizationId = createOrganization(true);
+        var strictNumbers = new ArrayList<Integer>();
+        double strict = measureThroughput(strictOrganizationId, strictNumbers);
+        int total = PARALLELISM * CONFIRMATIONS_PER_THREAD;
+        // strict mode: no gaps
+        assertEquals(IntStream.rangeClosed(1, total).boxed().collect(Collectors.toList()), strictNumbers);
+
+        int blockOrganizationId = createOrganization(false);
+        var blockNumbers = new ArrayList<Integer>();
+        double block = measureThroughput(blockOrganizationId, blockNumbers);
+        assertEquals(total, new HashSet<>(blockNumbers).size());
+
+        log.info("invoice numbers/s - strict gapless: {}, block: {} ({}x)", String.format("%.1f", strict),
+            String.format("%.1f", block), String.format("%.2f", block / strict));
+    }
+
+    private int createOrganization(boolean strict) {
+        int organizationId = userManager.createOrganization(UUID.randomUUID().toString(), "org", "email@example.com");
+        configurationRepository.insertOrganizationLevel(organizationId, INVOICE_NUMBER_STRICT_GAPLESS.name(), String.valueOf(strict), "");
+        configurationRepository.insertOrganizationLevel(organizationId, INVOICE_NUMBER_BLOCK_SIZE.name(), "10", "");
+        return organizationId;
+    }
+
+    private double measureThroughput(int organizationId, List<Integer> result) throws Exception {
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Integer> numbers = Collections.synchronizedList(new ArrayList<>());
+        List<Callable<Void>> calls = new ArrayList<>(PARALLELISM);
+        for (int i = 0; i < PARALLELISM; i++) {
+            calls.add(() -> {
+                for (int j = 0; j < CONFIRMATIONS_PER_THREAD; j++) {
+                    transactionTemplate.execute(status -> {
+                        numbers.add(invoiceSequenceAllocator.nextInvoiceSequence(organizationId));
+                        try {
+                            Thread.sleep(CONFIRMATION_DURATION_MS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    });
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+        long start = System.nanoTime();
+        for (Future<Void> future : executor.invokeAll(calls)) {
+            future.get();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        executor.shutdown();
+        numbers.sort(Comparator.naturalOrder());
+        result.addAll(numbers);
+        return numbers.size() / elapsedSeconds;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.repository.InvoiceSequencesRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static alfio.model.system.ConfigurationKeys.INVOICE_NUMBER_BLOCK_SIZE;
+import static alfio.model.system.ConfigurationKeys.INVOICE_NUMBER_STRICT_GAPLESS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Invoice sequence allocation")
+class InvoiceSequenceAllocatorTest {
+
+    private static final int ORGANIZATION_ID = 1;
+    private InvoiceSequencesRepository invoiceSequencesRepository;
+    private ConfigurationManager configurationManager;
+    private InvoiceSequenceAllocator allocator;
+    private final AtomicInteger sequence = new AtomicInteger(1);
+
+    @BeforeEach
+    void setUp() {
+        invoiceSequencesRepository = mock(InvoiceSequencesRepository.class);
+        configurationManager = mock(ConfigurationManager.class);
+        when(invoiceSequencesRepository.reserveBlock(eq(ORGANIZATION_ID), anyInt())).then(invocation -> sequence.addAndGet(invocation.getArgument(1)));
+        when(invoiceSequencesRepository.lockReservationForUpdate(ORGANIZATION_ID)).then(invocation -> sequence.get());
+        when(invoiceSequencesRepository.incrementSequenceFor(ORGANIZATION_ID)).then(invocation -> {
+            sequence.incrementAndGet();
+            return 1;
+        });
+        allocator = new InvoiceSequenceAllocator(invoiceSequencesRepository, invoiceSequencesRepository, configurationManager, mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void numbersAreHandedOutFromBlocks() {
+        configure("false", "5");
+        for (int i = 1; i <= 12; i++) {
+            assertEquals(i, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        }
+        verify(invoiceSequencesRepository, times(3)).reserveBlock(ORGANIZATION_ID, 5);
+        verify(invoiceSequencesRepository, never()).lockReservationForUpdate(anyInt());
+        assertEquals(16, sequence.get());
+    }
+
+    @Test
+    void defaultBlockSize() {
+        configure("false", null);
+        assertEquals(1, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        verify(invoiceSequencesRepository).reserveBlock(ORGANIZATION_ID, InvoiceSequenceAllocator.DEFAULT_BLOCK_SIZE);
+    }
+
+    @Test
+    void strictGaplessUsesTheSequenceDirectly() {
+        configure("true", "5");
+        assertEquals(1, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        assertEquals(2, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        verify(invoiceSequencesRepository, times(2)).lockReservationForUpdate(ORGANIZATION_ID);
+        verify(invoiceSequencesRepository, times(2)).incrementSequenceFor(ORGANIZATION_ID);
+        verify(invoiceSequencesRepository, never()).reserveBlock(anyInt(), anyInt());
+        assertEquals(3, sequence.get());
+    }
+
+    @Test
+    void strictGaplessIsTheDefault() {
+        configure(null, "5");
+        assertEquals(1, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        assertEquals(2, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        verify(invoiceSequencesRepository, times(2)).lockReservationForUpdate(ORGANIZATION_ID);
+        verify(invoiceSequencesRepository, never()).reserveBlock(anyInt(), anyInt());
+    }
+
+    @Test
+    void switchingModeNeverReusesNumbers() {
+        configure("false", "5");
+        assertEquals(1, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        configure("true", "5");
+        assertEquals(6, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        configure("false", "5");
+        assertEquals(2, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+    }
+
+    @Test
+    void concurrentAllocationsAreUnique() throws Exception {
+        configure("false", "7");
+        int threads = 8;
+        int allocationsPerThread = 500;
+        var executor = Executors.newFixedThreadPool(threads);
+        Set<Integer> numbers = ConcurrentHashMap.newKeySet();
+        List<Callable<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            calls.add(() -> {
+                for (int j = 0; j < allocationsPerThread; j++) {
+                    numbers.add(allocator.nextInvoiceSequence(ORGANIZATION_ID));
+                }
+                return null;
+            });
+        }
+        for (Future<Void> result : executor.invokeAll(calls)) {
+            result.get();
+        }
+        executor.shutdown();
+        int total = threads * allocationsPerThread;
+        assertEquals(total, numbers.size());
+        // the last block has been partially used
+        assertEquals(total, numbers.stream().mapToInt(Integer::intValue).max().orElseThrow());
+        verify(invoiceSequencesRepository, times((total + 6) / 7)).reserveBlock(ORGANIZATION_ID, 7);
+    }
+
+    @Test
+    void blocksAreReservedOutsideTheCallerTransaction() {
+        configure("false", "5");
+        var unpooled = mock(InvoiceSequencesRepository.class);
+        when(unpooled.reserveBlock(ORGANIZATION_ID, 5)).thenReturn(6);
+        var unpooledTransactionManager = mock(PlatformTransactionManager.class);
+        allocator = new InvoiceSequenceAllocator(invoiceSequencesRepository, unpooled, configurationManager, unpooledTransactionManager);
+        assertEquals(1, allocator.nextInvoiceSequence(ORGANIZATION_ID));
+        verify(unpooledTransactionManager).getTransaction(argThat(d -> d.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(invoiceSequencesRepository, never()).reserveBlock(anyInt(), anyInt());
+    }
+
+    private void configure(String strict, String blockSize) {
+        when(configurationManager.getFor(anyCollection(), any())).thenReturn(Map.of(
+            INVOICE_NUMBER_STRICT_GAPLESS, strict == null ? new ConfigurationManager.MaybeConfiguration(INVOICE_NUMBER_STRICT_GAPLESS)
+                : new ConfigurationManager.MaybeConfiguration(INVOICE_NUMBER_STRICT_GAPLESS, new ConfigurationKeyValuePathLevel(INVOICE_NUMBER_STRICT_GAPLESS.name(), strict, null)),
+            INVOICE_NUMBER_BLOCK_SIZE, blockSize == null ? new ConfigurationManager.MaybeConfiguration(INVOICE_NUMBER_BLOCK_SIZE)
+                : new ConfigurationManager.MaybeConfiguration(INVOICE_NUMBER_BLOCK_SIZE, new ConfigurationKeyValuePathLevel(INVOICE_NUMBER_BLOCK_SIZE.name(), blockSize, null))
+        ));
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.manager.ReservationAdmissionManager.Admission;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static alfio.model.system.ConfigurationKeys.RESERVATION_MAX_CONCURRENT_REQUESTS;
+import static alfio.model.system.ConfigurationKeys.RESERVATION_MAX_QUEUE_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("Reservation admission control")
+class ReservationAdmissionManagerTest {
+
+    private ReservationAdmissionManager manager;
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        ConfigurationManager configurationManager = mock(ConfigurationManager.class);
+        event = mock(Event.class);
+        when(event.getId()).thenReturn(1);
+        when(configurationManager.getFor(anyCollection(), any())).thenReturn(Map.of(
+            RESERVATION_MAX_CONCURRENT_REQUESTS, new ConfigurationManager.MaybeConfiguration(RESERVATION_MAX_CONCURRENT_REQUESTS, new ConfigurationKeyValuePathLevel(RESERVATION_MAX_CONCURRENT_REQUESTS.name(), "2", null)),
+            RESERVATION_MAX_QUEUE_SIZE, new ConfigurationManager.MaybeConfiguration(RESERVATION_MAX_QUEUE_SIZE, new ConfigurationKeyValuePathLevel(RESERVATION_MAX_QUEUE_SIZE.name(), "2", null))
+        ));
+        manager = new ReservationAdmissionManager(configurationManager);
+    }
+
+    @Test
+    void requestsAreQueuedAndAdmittedInOrder() {
+        var first = manager.tryAdmit(event, null, 0);
+        var second = manager.tryAdmit(event, null, 0);
+        assertTrue(first.isAdmitted());
+        assertTrue(second.isAdmitted());
+
+        var queued1 = manager.tryAdmit(event, null, 0);
+        var queued2 = manager.tryAdmit(event, null, 0);
+        assertEquals(Admission.Status.QUEUED, queued1.getStatus());
+        assertEquals(0, queued1.getPosition());
+        assertEquals(Admission.Status.QUEUED, queued2.getStatus());
+        assertEquals(1, queued2.getPosition());
+
+        var rejected = manager.tryAdmit(event, null, 0);
+        assertEquals(Admission.Status.REJECTED, rejected.getStatus());
+        assertTrue(rejected.getRetryAfterSeconds() > 0);
+
+        first.close();
+        // only the head of the queue can proceed
+        assertEquals(Admission.Status.QUEUED, manager.tryAdmit(event, queued2.getToken(), 1).getStatus());
+        assertEquals(Admission.Status.REJECTED, manager.tryAdmit(event, null, 1).getStatus());
+        assertTrue(manager.tryAdmit(event, queued1.getToken(), 1).isAdmitted());
+    }
+
+    @Test
+    void permitIsReleasedOnlyOnce() {
+        var first = manager.tryAdmit(event, null, 0);
+        var second = manager.tryAdmit(event, null, 0);
+        first.close();
+        first.close();
+        assertTrue(manager.tryAdmit(event, null, 0).isAdmitted());
+        assertFalse(manager.tryAdmit(event, null, 0).isAdmitted());
+        second.close();
+    }
+
+    @Test
+    void abandonedTokensAreRemoved() {
+        manager.tryAdmit(event, null, 0);
+        manager.tryAdmit(event, null, 0);
+        var abandoned = manager.tryAdmit(event, null, 0);
+        var active = manager.tryAdmit(event, null, 0);
+        assertEquals(1, active.getPosition());
+        var refreshed = manager.tryAdmit(event, active.getToken(), ReservationAdmissionManager.TOKEN_TTL_MS - 1);
+        assertEquals(1, refreshed.getPosition());
+        var afterExpiration = manager.tryAdmit(event, active.getToken(), ReservationAdmissionManager.TOKEN_TTL_MS);
+        assertEquals(0, afterExpiration.getPosition());
+        // an expired token goes back to the end of the queue
+        var requeued = manager.tryAdmit(event, abandoned.getToken(), ReservationAdmissionManager.TOKEN_TTL_MS);
+        assertEquals(Admission.Status.QUEUED, requeued.getStatus());
+        assertEquals(1, requeued.getPosition());
+        assertNotEquals(abandoned.getToken(), requeued.getToken());
+    }
+
+    @Test
+    void queuesAreKeptPerEvent() {
+        var other = mock(Event.class);
+        when(other.getId()).thenReturn(2);
+        manager.tryAdmit(event, null, 0);
+        manager.tryAdmit(event, null, 0);
+        var queued = manager.tryAdmit(event, null, 0);
+        assertEquals(Admission.Status.QUEUED, queued.getStatus());
+        assertTrue(manager.tryAdmit(other, null, 0).isAdmitted());
+        // a token is valid only for the event which issued it
+        assertTrue(manager.getQueuePosition(event, queued.getToken(), 0).isPresent());
+        assertTrue(manager.getQueuePosition(other, queued.getToken(), 0).isEmpty());
+    }
+}
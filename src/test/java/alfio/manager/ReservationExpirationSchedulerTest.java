@@ -0,0 +1,60 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static alfio.manager.ReservationExpirationScheduler.GRACE_PERIOD_MS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Reservation expiration scheduler")
+class ReservationExpirationSchedulerTest {
+
+    private final ReservationExpirationScheduler scheduler = new ReservationExpirationScheduler();
+
+    @Test
+    void reservationsAreReturnedAfterTheGracePeriod() {
+        long expiration = 1_000_000L;
+        scheduler.schedule("first", new Date(expiration));
+        scheduler.schedule("second", new Date(expiration + 5_000));
+        assertTrue(scheduler.pollExpired(new Date(expiration), 10).isEmpty());
+        assertTrue(scheduler.pollExpired(new Date(expiration + GRACE_PERIOD_MS - 1), 10).isEmpty());
+        assertEquals(List.of("first"), scheduler.pollExpired(new Date(expiration + GRACE_PERIOD_MS + 1_000), 10));
+        assertEquals(List.of("second"), scheduler.pollExpired(new Date(expiration + GRACE_PERIOD_MS + 6_000), 10));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    void batchSizeIsRespected() {
+        long expiration = 1_000_000L;
+        for (int i = 0; i < 5; i++) {
+            scheduler.schedule("r" + i, new Date(expiration + i));
+        }
+        scheduler.schedule("r0", new Date(expiration));
+        assertEquals(5, scheduler.size());
+        Date now = new Date(expiration + GRACE_PERIOD_MS + 2_000);
+        assertEquals(2, scheduler.pollExpired(now, 2).size());
+        assertEquals(2, scheduler.pollExpired(now, 2).size());
+        assertEquals(1, scheduler.pollExpired(now, 2).size());
+        assertTrue(scheduler.pollExpired(now, 2).isEmpty());
+    }
+}
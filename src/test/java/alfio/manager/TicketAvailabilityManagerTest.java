@@ -0,0 +1,112 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.model.Event;
+import alfio.model.FreeTicketsByCategory;
+import alfio.model.TicketCategory;
+import alfio.repository.TicketRepository;
+import alfio.repository.TicketStatusCountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Ticket availability")
+class TicketAvailabilityManagerTest {
+
+    private static final int EVENT_ID = 1;
+    private TicketRepository ticketRepository;
+    private TicketStatusCountRepository ticketStatusCountRepository;
+    private Event event;
+    private TicketCategory bounded;
+    private TicketCategory unbounded;
+    private TicketAvailabilityManager manager;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        ticketStatusCountRepository = mock(TicketStatusCountRepository.class);
+        event = mock(Event.class);
+        when(event.getId()).thenReturn(EVENT_ID);
+        bounded = mock(TicketCategory.class);
+        when(bounded.isBounded()).thenReturn(true);
+        when(bounded.getId()).thenReturn(2);
+        unbounded = mock(TicketCategory.class);
+        when(unbounded.getId()).thenReturn(3);
+        when(ticketRepository.countFreeTicketsByCategory(EVENT_ID))
+            .thenReturn(List.of(new FreeTicketsByCategory(2, 10), new FreeTicketsByCategory(null, 5)));
+        manager = new TicketAvailabilityManager(ticketRepository, ticketStatusCountRepository);
+    }
+
+    @Test
+    void availabilityIsLoadedOnce() {
+        assertEquals(10, manager.getAvailableTickets(event, bounded));
+        assertEquals(5, manager.getAvailableTickets(event, unbounded));
+        assertEquals(10, manager.getAvailableTickets(event, bounded));
+        verify(ticketRepository, times(1)).countFreeTicketsByCategory(EVENT_ID);
+    }
+
+    @Test
+    void availabilityForAllCategories() {
+        var result = manager.getAvailableTickets(event, List.of(bounded, unbounded));
+        assertEquals(2, result.size());
+        assertEquals(10, (int) result.get(2));
+        assertEquals(5, (int) result.get(3));
+        verify(ticketRepository, times(1)).countFreeTicketsByCategory(EVENT_ID);
+    }
+
+    @Test
+    void eventIsReloadedAfterChange() throws Exception {
+        manager.getAvailableTickets(event, bounded);
+        when(ticketStatusCountRepository.getTransactionHorizon()).thenReturn(100L, 101L, 105L);
+        manager.processChanges(); // starts tracking the changes
+        Thread.sleep(TicketAvailabilityManager.MIN_REFRESH_INTERVAL_MS);
+        manager.getAvailableTickets(event, bounded);
+        verify(ticketRepository, times(2)).countFreeTicketsByCategory(EVENT_ID);
+
+        // no changes, no reload
+        when(ticketStatusCountRepository.findEventIdsModifiedSince(100L)).thenReturn(List.of());
+        manager.processChanges();
+        Thread.sleep(TicketAvailabilityManager.MIN_REFRESH_INTERVAL_MS);
+        manager.getAvailableTickets(event, bounded);
+        verify(ticketRepository, times(2)).countFreeTicketsByCategory(EVENT_ID);
+
+        when(ticketStatusCountRepository.findEventIdsModifiedSince(101L)).thenReturn(List.of(EVENT_ID));
+        when(ticketRepository.countFreeTicketsByCategory(EVENT_ID)).thenReturn(List.of(new FreeTicketsByCategory(2, 9)));
+        manager.processChanges();
+        Thread.sleep(TicketAvailabilityManager.MIN_REFRESH_INTERVAL_MS);
+        assertEquals(9, manager.getAvailableTickets(event, bounded));
+        assertEquals(0, manager.getAvailableTickets(event, unbounded));
+        verify(ticketRepository, times(3)).countFreeTicketsByCategory(EVENT_ID);
+    }
+
+    @Test
+    void fallbackToTimeBasedRefreshIfPollFails() throws Exception {
+        manager.getAvailableTickets(event, bounded);
+        when(ticketStatusCountRepository.getTransactionHorizon()).thenThrow(new IllegalStateException("connection refused"));
+        manager.processChanges();
+        Thread.sleep(TicketAvailabilityManager.MIN_REFRESH_INTERVAL_MS);
+        manager.getAvailableTickets(event, bounded);
+        verify(ticketRepository, times(1)).countFreeTicketsByCategory(EVENT_ID);
+        verify(ticketStatusCountRepository, never()).findEventIdsModifiedSince(anyLong());
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager;
+
+import alfio.TestConfiguration;
+import alfio.config.DataSourceConfiguration;
+import alfio.config.Initializer;
+import alfio.manager.user.UserManager;
+import alfio.model.Event;
+import alfio.model.TicketCategory;
+import alfio.repository.EventRepository;
+import alfio.repository.TicketCategoryRepository;
+import alfio.repository.TicketRepository;
+import alfio.repository.system.ConfigurationRepository;
+import alfio.repository.user.AuthorityRepository;
+import alfio.repository.user.OrganizationRepository;
+import alfio.repository.user.UserRepository;
+import lombok.extern.log4j.Log4j2;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static alfio.model.system.ConfigurationKeys.TICKET_POOL_STRIPES;
+import static alfio.test.util.IntegrationTestUtil.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the reservation throughput of a category with and without striped ticket pools.
+ * <p>
+ * This is a manual benchmark: the gain depends on the hardware and on the database, therefore it only verifies that
+ * every seat has been sold exactly once, and logs the ratio between the two runs.
+ * Since it takes a while, it runs only if the system property "alfio.benchmark" is set to true:
+ * <pre>./gradlew test --tests alfio.manager.TicketPoolStripesBenchmarkIntegrationTest -Dalfio.benchmark=true</pre>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {DataSourceConfiguration.class, TestConfiguration.class})
+@ActiveProfiles({Initializer.PROFILE_DEV, Initializer.PROFILE_DISABLE_JOBS, Initializer.PROFILE_INTEGRATION_TEST})
+@Log4j2
+public class TicketPoolStripesBenchmarkIntegrationTest {
+
+    private static final int SEATS = 2000;
+    // the connection pool used for the tests has 5 connections
+    private static final int PARALLELISM = 4;
+    private static final int STRIPES = 8;
+
+    @Autowired
+    private EventManager eventManager;
+    @Autowired
+    private OrganizationRepository organizationRepository;
+    @Autowired
+    private UserManager userManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AuthorityRepository authorityRepository;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private TicketCategoryRepository ticketCategoryRepository;
+    @Autowired
+    private TicketReservationManager ticketReservationManager;
+    @Autowired
+    private ConfigurationRepository configurationRepository;
+
+    private final List<Event> events = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(isBenchmarkEnabled());
+        ensureMinimalConfiguration(configurationRepository);
+        initAdminUser(userRepository, authorityRepository);
+    }
+
+    @After
+    public void tearDown() {
+        if(!isBenchmarkEnabled()) {
+            return;
+        }
+        events.forEach(e -> eventManager.deleteEvent(e.getId(), UserManager.ADMIN_USERNAME));
+        removeAdminUser(userRepository, authorityRepository);
+    }
+
+    @Test
+    public void compareStripedAndNotStripedCategories() throws Exception {
+        double notStriped = measureThroughput(1);
+        double striped = measureThroughput(STRIPES);
+        log.info("reservations/s - not striped: {}, {} stripes: {} ({}x)", String.format("%.1f", notStriped), STRIPES,
+            String.format("%.1f", striped), String.format("%.2f", striped / notStriped));
+    }
+
+    private double measureThroughput(int stripes) throws Exception {
+        Event event = initBenchmarkEvent(List.of(SEATS), organizationRepository, userManager, eventManager, eventRepository).getKey();
+        events.add(event);
+        TicketCategory category = ticketCategoryRepository.findAllTicketCategories(event.getId()).get(0);
+        if(stripes > 1) {
+            configurationRepository.insertTicketCategoryLevel(event.getOrganizationId(), event.getId(), category.getId(), TICKET_POOL_STRIPES.name(), String.valueOf(stripes), "");
+        }
+
+        var reservationIds = new ConcurrentLinkedQueue<String>();
+        var soldOut = new AtomicBoolean();
+        AtomicInteger failed = new AtomicInteger();
+        double elapsedSeconds = runConcurrently(PARALLELISM, () -> {
+            while(!soldOut.get()) {
+                try {
+                    reservationIds.add(reserveTickets(ticketReservationManager, event, category.getId(), 1));
+                } catch (TicketReservationManager.NotEnoughTicketsException e) {
+                    // the remaining tickets might be locked by a concurrent reservation, so we retry until the category is sold out
+                    failed.incrementAndGet();
+                    if(ticketRepository.countFreeTickets(event.getId(), category.getId()) == 0) {
+                        soldOut.set(true);
+                    }
+                }
+            }
+            return null;
+        });
+
+        // all the seats have been sold, each one exactly once
+        assertEquals(0, ticketRepository.countFreeTickets(event.getId(), category.getId()).intValue());
+        assertEquals(SEATS, reservationIds.size());
+        List<Integer> ticketIds = reservationIds.stream()
+            .flatMap(id -> ticketRepository.findTicketIdsInReservation(id).stream())
+            .collect(Collectors.toList());
+        assertEquals(SEATS, ticketIds.size());
+        assertEquals(SEATS, new HashSet<>(ticketIds).size());
+
+        log.info("{} stripe(s): {} reservations in {}s, {} failed attempts", stripes, reservationIds.size(), String.format("%.2f", elapsedSeconds), failed.get());
+        return reservationIds.size() / elapsedSeconds;
+    }
+}
@@ -92,6 +92,8 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
     @Autowired
     private AdditionalServiceRepository additionalServiceRepository;
     @Autowired
+    private AdditionalServiceItemRepository additionalServiceItemRepository;
+    @Autowired
     private SpecialPriceTokenGenerator specialPriceTokenGenerator;
     @Autowired
     private WaitingQueueSubscriptionProcessor waitingQueueSubscriptionProcessor;
@@ -460,6 +462,45 @@ public class TicketReservationManagerIntegrationTest extends BaseIntegrationTest
         Assert.assertEquals("10.00", asRows.get(0).getSubTotal());
     }
 
+    @Test
+    public void testAdditionalServiceItemsAreInsertedForEachUnit() {
+        List<TicketCategoryModification> categories = Collections.singletonList(
+            new TicketCategoryModification(null, "default", AVAILABLE_SEATS,
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                new DateTimeModification(LocalDate.now(), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", false, null, null, null, null, null, 0));
+        Event event = initEvent(categories, organizationRepository, userManager, eventManager, eventRepository).getKey();
+
+        var mandatoryAsKey = additionalServiceRepository.insert(event.getId(), 1000, true, 1, 100, 1, ZonedDateTime.now().minusHours(1), ZonedDateTime.now().plusHours(1), BigDecimal.TEN, AdditionalService.VatType.INHERITED, AdditionalService.AdditionalServiceType.SUPPLEMENT, AdditionalService.SupplementPolicy.MANDATORY_ONE_FOR_TICKET);
+        var optionalAsKey = additionalServiceRepository.insert(event.getId(), 500, true, 2, 100, 5, ZonedDateTime.now().minusHours(1), ZonedDateTime.now().plusHours(1), BigDecimal.TEN, AdditionalService.VatType.INHERITED, AdditionalService.AdditionalServiceType.SUPPLEMENT, AdditionalService.SupplementPolicy.OPTIONAL_UNLIMITED_AMOUNT);
+
+        TicketCategory unbounded = ticketCategoryRepository.findAllTicketCategories(event.getId()).stream().filter(t -> !t.isBounded()).findFirst().orElseThrow(IllegalStateException::new);
+
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setAmount(3);
+        tr.setTicketCategoryId(unbounded.getId());
+        TicketReservationWithOptionalCodeModification mod = new TicketReservationWithOptionalCodeModification(tr, Optional.empty());
+
+        var optionalAsModification = new AdditionalServiceReservationModification();
+        optionalAsModification.setAdditionalServiceId(optionalAsKey.getKey());
+        optionalAsModification.setQuantity(2);
+
+        String reservationId = ticketReservationManager.createTicketReservation(event, Collections.singletonList(mod), Collections.singletonList(new ASReservationWithOptionalCodeModification(optionalAsModification, Optional.empty())), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false);
+
+        List<AdditionalServiceItem> items = additionalServiceItemRepository.findByReservationUuid(reservationId);
+        assertEquals(5, items.size());
+        assertEquals(5, items.stream().map(AdditionalServiceItem::getUuid).distinct().count());
+        assertTrue(items.stream().allMatch(i -> i.getStatus() == AdditionalServiceItem.AdditionalServiceItemStatus.PENDING && i.getEventId() == event.getId() && i.getUtcCreation() != null));
+
+        Map<Integer, List<AdditionalServiceItem>> byService = items.stream().collect(Collectors.groupingBy(AdditionalServiceItem::getAdditionalServiceId));
+        assertEquals(3, byService.get(mandatoryAsKey.getKey()).size());
+        assertTrue(byService.get(mandatoryAsKey.getKey()).stream().allMatch(i -> i.getSrcPriceCts() == 1000));
+        assertEquals(2, byService.get(optionalAsKey.getKey()).size());
+        assertTrue(byService.get(optionalAsKey.getKey()).stream().allMatch(i -> i.getSrcPriceCts() == 500));
+
+        assertEquals(7000, ticketReservationManager.totalReservationCostWithVAT(reservationId).getPriceWithVAT());// 3 tickets + 3 mandatory AS + 2 optional AS
+    }
+
     @Test(expected = TicketReservationManager.NotEnoughTicketsException.class)
     public void testTicketSelectionNotEnoughTicketsAvailable() {
         List<TicketCategoryModification> categories = Collections.singletonList(
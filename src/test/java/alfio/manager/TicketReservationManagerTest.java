@@ -27,13 +27,17 @@ import alfio.manager.support.PaymentResult;
 import alfio.manager.support.TextTemplateGenerator;
 import alfio.manager.system.ConfigurationLevel;
 import alfio.manager.system.ConfigurationManager;
+import alfio.manager.system.EventConfigurationSnapshot;
 import alfio.model.*;
 import alfio.model.Ticket.TicketStatus;
 import alfio.model.TicketReservation.TicketReservationStatus;
+import alfio.model.modification.TicketReservationModification;
 import alfio.model.modification.TicketReservationWithOptionalCodeModification;
 import alfio.model.system.Configuration;
 import alfio.model.system.ConfigurationKeyValuePathLevel;
 import alfio.model.system.ConfigurationKeys;
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.model.system.EventConfigurationValue;
 import alfio.model.transaction.PaymentContext;
 import alfio.model.transaction.PaymentMethod;
 import alfio.model.transaction.PaymentProxy;
@@ -116,6 +120,9 @@ class TicketReservationManagerTest {
     private WaitingQueueManager waitingQueueManager;
     private Event event;
     private SpecialPrice specialPrice;
+    private ReservationExpirationScheduler reservationExpirationScheduler;
+    private EventVersionTracker eventVersionTracker;
+    private TicketPdfCache ticketPdfCache;
     private TicketCategory ticketCategory;
     private Ticket ticket;
     private TicketReservationWithOptionalCodeModification reservationModification;
@@ -155,10 +162,13 @@ class TicketReservationManagerTest {
         AdditionalServiceRepository additionalServiceRepository = mock(AdditionalServiceRepository.class);
         AdditionalServiceTextRepository additionalServiceTextRepository = mock(AdditionalServiceTextRepository.class);
         AdditionalServiceItemRepository additionalServiceItemRepository = mock(AdditionalServiceItemRepository.class);
-        InvoiceSequencesRepository invoiceSequencesRepository = mock(InvoiceSequencesRepository.class);
+        InvoiceSequenceAllocator invoiceSequenceAllocator = mock(InvoiceSequenceAllocator.class);
         AuditingRepository auditingRepository = mock(AuditingRepository.class);
         event = mock(Event.class);
         specialPrice = mock(SpecialPrice.class);
+        reservationExpirationScheduler = mock(ReservationExpirationScheduler.class);
+        eventVersionTracker = new EventVersionTracker(mock(PublicDataVersionRepository.class));
+        ticketPdfCache = mock(TicketPdfCache.class);
         ticketCategory = mock(TicketCategory.class);
         ticket = mock(Ticket.class);
         when(ticket.getCurrencyCode()).thenReturn("CHF");
@@ -187,6 +197,8 @@ class TicketReservationManagerTest {
         when(ticketCategory.getName()).thenReturn("Category Name");
         when(ticketCategory.getCurrencyCode()).thenReturn(CATEGORY_CURRENCY);
         when(configurationManager.getFor(eq(VAT_NR), any())).thenReturn(new ConfigurationManager.MaybeConfiguration(VAT_NR));
+        var emptyEventConfiguration = EventConfigurationSnapshot.from(event, 0, List.of());
+        when(configurationManager.getEventConfiguration(any())).thenReturn(emptyEventConfiguration);
 
         when(messageSourceManager.getMessageSourceForEvent(any())).thenReturn(messageSource);
         when(messageSourceManager.getRootMessageSource()).thenReturn(messageSource);
@@ -215,7 +227,7 @@ class TicketReservationManagerTest {
             additionalServiceRepository,
             additionalServiceItemRepository,
             additionalServiceTextRepository,
-            invoiceSequencesRepository,
+            invoiceSequenceAllocator,
             auditingRepository,
             userRepository,
             extensionManager,
@@ -223,7 +235,10 @@ class TicketReservationManagerTest {
             groupManager,
             billingDocumentRepository,
             jdbcTemplate,
-            json);
+            json,
+            reservationExpirationScheduler,
+            eventVersionTracker,
+            ticketPdfCache);
 
         when(event.getId()).thenReturn(EVENT_ID);
         when(event.getOrganizationId()).thenReturn(ORGANIZATION_ID);
@@ -279,6 +294,7 @@ class TicketReservationManagerTest {
         when(ticketReservationRepository.findOptionalReservationById(eq(ticketReservationId))).thenReturn(Optional.of(reservation));
         UserDetails userDetails = new User("user", "password", singletonList(new SimpleGrantedAuthority(Role.ADMIN.getRoleName())));
         trm.updateTicketOwner(original, Locale.ENGLISH, event, form, (a) -> null,(b) -> null, Optional.of(userDetails));
+        verify(ticketPdfCache).removeForTickets(anyList());
         verify(messageSource, never()).getMessage(eq("ticket-has-changed-owner-subject"), eq(new Object[] {"short-name"}), eq(Locale.ITALIAN));
     }
 
@@ -552,12 +568,12 @@ class TicketReservationManagerTest {
             new SpecialPrice(2, "BBBB", 0, TICKET_CATEGORY_ID, SpecialPrice.Status.FREE.name(), null, null, null, accessCodeId)
         ));
         when(ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eq(EVENT_ID), eq(2), eq(List.of("FREE")))).thenReturn(List.of(TICKET_ID,2));
-        when(ticketRepository.findById(eq(TICKET_ID), eq(TICKET_CATEGORY_ID))).thenReturn(ticket);
         String query = "batch-reserve-tickets";
         when(ticketRepository.batchReserveTicket()).thenReturn(query);
         trm.reserveTicketsForCategory(event, RESERVATION_ID, reservationModification, Locale.ENGLISH, false, discount);
         verify(jdbcTemplate).batchUpdate(eq(query), any(SqlParameterSource[].class));
         verify(specialPriceRepository).batchUpdateStatus(eq(List.of(1,2)), eq(SpecialPrice.Status.PENDING), eq(accessCodeId));
+        verify(ticketRepository, never()).findById(anyInt(), anyInt());
     }
 
     @Test
@@ -593,48 +609,74 @@ class TicketReservationManagerTest {
     void reserveTicketsForBoundedCategories() {
         when(ticketCategory.isBounded()).thenReturn(true);
         List<Integer> ids = singletonList(1);
-        when(ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())))).thenReturn(ids);
+        when(ticketRepository.reserveAndPriceTicketsInCategory(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())), eq(1), eq(0), eq("trid"), eq(Locale.ENGLISH.getLanguage()), eq(0), eq(0), eq(0), eq(0), eq(CATEGORY_CURRENCY))).thenReturn(ids);
         when(reservationModification.getAmount()).thenReturn(1);
         when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
-        when(ticketRepository.findById(1, TICKET_CATEGORY_ID)).thenReturn(ticket);
         trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, false, null);
-        verify(ticketRepository).reserveTickets("trid", ids, TICKET_CATEGORY_ID, Locale.ENGLISH.getLanguage(), 0, CATEGORY_CURRENCY);
+        verify(ticketRepository).reserveAndPriceTicketsInCategory(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())), eq(1), eq(0), eq("trid"), eq(Locale.ENGLISH.getLanguage()), eq(0), eq(0), eq(0), eq(0), eq(CATEGORY_CURRENCY));
+        verify(ticketRepository, never()).findById(anyInt(), anyInt());
     }
 
     @Test
     void reserveTicketsForBoundedCategoriesWaitingQueue() {
         when(ticketCategory.isBounded()).thenReturn(true);
         List<Integer> ids = singletonList(1);
-        when(ticketRepository.selectTicketInCategoryForUpdateSkipLocked(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name())))).thenReturn(ids);
+        when(ticketRepository.reserveAndPriceTicketsInCategory(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name())), eq(1), eq(0), eq("trid"), eq(Locale.ENGLISH.getLanguage()), eq(0), eq(0), eq(0), eq(0), eq(CATEGORY_CURRENCY))).thenReturn(ids);
         when(reservationModification.getAmount()).thenReturn(1);
         when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
-        when(ticketRepository.findById(1, TICKET_CATEGORY_ID)).thenReturn(ticket);
         trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, true, null);
-        verify(ticketRepository).reserveTickets("trid", ids, TICKET_CATEGORY_ID, Locale.ENGLISH.getLanguage(), 0, CATEGORY_CURRENCY);
+        verify(ticketRepository).reserveAndPriceTicketsInCategory(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name())), eq(1), eq(0), eq("trid"), eq(Locale.ENGLISH.getLanguage()), eq(0), eq(0), eq(0), eq(0), eq(CATEGORY_CURRENCY));
+        verify(ticketRepository, never()).findById(anyInt(), anyInt());
     }
 
     @Test
     void reserveTicketsForUnboundedCategories() {
         when(ticketCategory.isBounded()).thenReturn(false);
         List<Integer> ids = singletonList(1);
-        when(ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eq(EVENT_ID), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())))).thenReturn(ids);
+        when(ticketRepository.reserveAndPriceNotAllocatedTickets(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())), eq(1), eq(0), eq("trid"), eq(Locale.ENGLISH.getLanguage()), eq(0), eq(0), eq(0), eq(0), eq(CATEGORY_CURRENCY))).thenReturn(ids);
         when(reservationModification.getAmount()).thenReturn(1);
         when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
-        when(ticketRepository.findById(1, TICKET_CATEGORY_ID)).thenReturn(ticket);
         trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, false, null);
-        verify(ticketRepository).reserveTickets("trid", ids, TICKET_CATEGORY_ID, Locale.ENGLISH.getLanguage(), 0, CATEGORY_CURRENCY);
+        verify(ticketRepository).reserveAndPriceNotAllocatedTickets(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(singletonList(Ticket.TicketStatus.FREE.name())), eq(1), eq(0), eq("trid"), eq(Locale.ENGLISH.getLanguage()), eq(0), eq(0), eq(0), eq(0), eq(CATEGORY_CURRENCY));
+        verify(ticketRepository, never()).findById(anyInt(), anyInt());
     }
 
     @Test
     void reserveTicketsForUnboundedCategoriesWaitingQueue() {
         when(ticketCategory.isBounded()).thenReturn(false);
         List<Integer> ids = singletonList(1);
-        when(ticketRepository.selectNotAllocatedTicketsForUpdateSkipLocked(eq(EVENT_ID), eq(1), eq(asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name())))).thenReturn(ids);
+        when(ticketRepository.reserveAndPriceNotAllocatedTickets(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name())), eq(1), eq(0), eq("trid"), eq(Locale.ENGLISH.getLanguage()), eq(0), eq(0), eq(0), eq(0), eq(CATEGORY_CURRENCY))).thenReturn(ids);
         when(reservationModification.getAmount()).thenReturn(1);
         when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
-        when(ticketRepository.findById(1, TICKET_CATEGORY_ID)).thenReturn(ticket);
         trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, true, null);
-        verify(ticketRepository).reserveTickets("trid", ids, TICKET_CATEGORY_ID, Locale.ENGLISH.getLanguage(), 0, CATEGORY_CURRENCY);
+        verify(ticketRepository).reserveAndPriceNotAllocatedTickets(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(asList(TicketStatus.RELEASED.name(), TicketStatus.PRE_RESERVED.name())), eq(1), eq(0), eq("trid"), eq(Locale.ENGLISH.getLanguage()), eq(0), eq(0), eq(0), eq(0), eq(CATEGORY_CURRENCY));
+        verify(ticketRepository, never()).findById(anyInt(), anyInt());
+    }
+
+    @Test
+    void reserveTicketsForStripedCategory() {
+        when(ticketCategory.isBounded()).thenReturn(true);
+        var eventConfiguration = EventConfigurationSnapshot.from(event, 0,
+            List.of(new EventConfigurationValue(TICKET_CATEGORY_ID, TICKET_POOL_STRIPES.name(), "4", ConfigurationPathLevel.TICKET_CATEGORY)));
+        when(configurationManager.getEventConfiguration(any())).thenReturn(eventConfiguration);
+        int ownStripe = Math.floorMod("trid".hashCode(), 4);
+        int nextStripe = (ownStripe + 1) % 4;
+        var statuses = singletonList(Ticket.TicketStatus.FREE.name());
+        when(ticketRepository.reserveAndPriceTicketsInCategory(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(2), eq(statuses), eq(4), eq(ownStripe), eq("trid"), anyString(), anyInt(), anyInt(), anyInt(), anyInt(), any())).thenReturn(singletonList(1));
+        when(ticketRepository.reserveAndPriceTicketsInCategory(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(1), eq(statuses), eq(4), eq(nextStripe), eq("trid"), anyString(), anyInt(), anyInt(), anyInt(), anyInt(), any())).thenReturn(singletonList(2));
+        when(reservationModification.getAmount()).thenReturn(2);
+        when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
+        trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, false, null);
+        verify(ticketRepository, times(2)).reserveAndPriceTicketsInCategory(anyInt(), anyInt(), anyInt(), any(), anyInt(), anyInt(), any(), any(), anyInt(), anyInt(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void reserveTicketsForCategoryNotEnoughTickets() {
+        when(ticketCategory.isBounded()).thenReturn(true);
+        when(ticketRepository.reserveAndPriceTicketsInCategory(eq(EVENT_ID), eq(TICKET_CATEGORY_ID), eq(2), eq(singletonList(Ticket.TicketStatus.FREE.name())), eq(1), eq(0), eq("trid"), anyString(), anyInt(), anyInt(), anyInt(), anyInt(), any())).thenReturn(singletonList(1));
+        when(reservationModification.getAmount()).thenReturn(2);
+        when(reservationModification.getTicketCategoryId()).thenReturn(TICKET_CATEGORY_ID);
+        assertThrows(TicketReservationManager.NotEnoughTicketsException.class, () -> trm.reserveTicketsForCategory(event, "trid", reservationModification, Locale.ENGLISH, false, null));
     }
 
     //cleanup expired reservations
@@ -687,9 +729,9 @@ class TicketReservationManagerTest {
         when(event.getOrganizationId()).thenReturn(ORGANIZATION_ID);
         when(ticket.getCategoryId()).thenReturn(TICKET_CATEGORY_ID);
         when(ticket.getFinalPriceCts()).thenReturn(0);
-        var mockExistingConfig = mock(ConfigurationManager.MaybeConfiguration.class);
-        when(mockExistingConfig.getValueAsBooleanOrDefault(anyBoolean())).thenReturn(true);
-        when(configurationManager.getFor(eq(ALLOW_FREE_TICKETS_CANCELLATION), any())).thenReturn(mockExistingConfig);
+        var eventConfiguration = EventConfigurationSnapshot.from(event, 0,
+            List.of(new EventConfigurationValue(TICKET_CATEGORY_ID, ALLOW_FREE_TICKETS_CANCELLATION.name(), "true", ConfigurationPathLevel.TICKET_CATEGORY)));
+        when(configurationManager.getEventConfiguration(any())).thenReturn(eventConfiguration);
         when(ticketReservation.getId()).thenReturn(RESERVATION_ID);
         when(ticketCategoryRepository.getByIdAndActive(eq(TICKET_CATEGORY_ID), eq(EVENT_ID))).thenReturn(ticketCategory);
         when(organizationRepository.getById(eq(ORGANIZATION_ID))).thenReturn(organization);
@@ -707,6 +749,7 @@ class TicketReservationManagerTest {
         when(transactionRepository.loadOptionalByReservationId(anyString())).thenReturn(Optional.empty());
         trm.releaseTicket(event, ticketReservation, ticket);
         verify(ticketRepository).releaseTicket(eq(RESERVATION_ID), anyString(), eq(EVENT_ID), eq(TICKET_ID));
+        verify(ticketPdfCache).removeForTickets(eq(singletonList(TICKET_ID)));
         verify(notificationManager).sendSimpleEmail(eq(event), eq(RESERVATION_ID), eq(RESERVATION_EMAIL), any(), any(TextTemplateGenerator.class));
         verify(notificationManager).sendSimpleEmail(eq(event), isNull(), eq(ORG_EMAIL), any(), any(TextTemplateGenerator.class));
         verify(organizationRepository).getById(eq(ORGANIZATION_ID));
@@ -1056,6 +1099,80 @@ class TicketReservationManagerTest {
             reservation.getCurrencyCode());
     }
 
+    @Test
+    void returnExistingReservationForIdempotencyKey() {
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(ticketReservationRepository.findActiveIdempotencyKey(EVENT_ID, "key")).thenReturn(Optional.of(new ReservationIdempotencyKey(RESERVATION_ID, "hash")));
+        String reservationId = trm.createTicketReservation(event, List.of(), List.of(), new Date(), Optional.empty(), Locale.ENGLISH, false, "key", "hash");
+        assertEquals(RESERVATION_ID, reservationId);
+        verify(ticketReservationRepository, never()).createNewReservation(anyString(), any(), any(), any(), anyString(), anyInt(), any(), any(), any());
+        verifyZeroInteractions(ticketRepository);
+    }
+
+    @Test
+    void rejectIdempotencyKeyUsedForDifferentPayload() {
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(ticketReservationRepository.findActiveIdempotencyKey(EVENT_ID, "key")).thenReturn(Optional.of(new ReservationIdempotencyKey(RESERVATION_ID, "hash")));
+        assertThrows(TicketReservationManager.IdempotencyKeyConflictException.class,
+            () -> trm.createTicketReservation(event, List.of(), List.of(), new Date(), Optional.empty(), Locale.ENGLISH, false, "key", "another-hash"));
+        verifyZeroInteractions(ticketRepository);
+    }
+
+    @Test
+    void doNotReserveTicketsIfIdempotencyKeyIsInUse() {
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(event.getZoneId()).thenReturn(ZoneId.systemDefault());
+        when(ticketReservationRepository.findActiveIdempotencyKey(EVENT_ID, "key")).thenReturn(Optional.empty());
+        when(ticketReservationRepository.bindIdempotencyKey(eq(EVENT_ID), eq("key"), eq("hash"), anyString())).thenReturn(0);
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setAmount(1);
+        tr.setTicketCategoryId(TICKET_CATEGORY_ID);
+        assertThrows(TicketReservationManager.IdempotencyKeyConflictException.class,
+            () -> trm.createTicketReservation(event, List.of(new TicketReservationWithOptionalCodeModification(tr, Optional.empty())), List.of(), new Date(), Optional.empty(), Locale.ENGLISH, false, "key", "hash"));
+        verifyZeroInteractions(ticketRepository);
+    }
+
+    @Test
+    void reuseReservationPriceUntilVersionChanges() {
+        when(eventRepository.findByReservationId(RESERVATION_ID)).thenReturn(event);
+        when(ticketRepository.findTicketsInReservation(RESERVATION_ID)).thenReturn(List.of(ticket));
+        when(ticketReservationRepository.findPriceVersion(RESERVATION_ID)).thenReturn(Optional.of(new ReservationPriceVersion(EVENT_ID, 1L)));
+
+        TotalPrice first = trm.totalReservationCostWithVAT(ticketReservation);
+        assertSame(first, trm.totalReservationCostWithVAT(ticketReservation));
+        verify(ticketRepository, times(1)).findTicketsInReservation(RESERVATION_ID);
+
+        when(ticketReservationRepository.findPriceVersion(RESERVATION_ID)).thenReturn(Optional.of(new ReservationPriceVersion(EVENT_ID, 2L)));
+        assertNotSame(first, trm.totalReservationCostWithVAT(ticketReservation));
+        verify(ticketRepository, times(2)).findTicketsInReservation(RESERVATION_ID);
+    }
+
+    @Test
+    void recomputeReservationPriceAfterEventModification() {
+        when(eventRepository.findByReservationId(RESERVATION_ID)).thenReturn(event);
+        when(ticketRepository.findTicketsInReservation(RESERVATION_ID)).thenReturn(List.of(ticket));
+        when(ticketReservationRepository.findPriceVersion(RESERVATION_ID)).thenReturn(Optional.of(new ReservationPriceVersion(EVENT_ID, 1L)));
+
+        TotalPrice first = trm.totalReservationCostWithVAT(ticketReservation);
+        eventVersionTracker.eventModified(EVENT_ID + 1);
+        assertSame(first, trm.totalReservationCostWithVAT(ticketReservation));
+
+        eventVersionTracker.eventModified(EVENT_ID);
+        assertNotSame(first, trm.totalReservationCostWithVAT(ticketReservation));
+        verify(ticketRepository, times(2)).findTicketsInReservation(RESERVATION_ID);
+    }
+
+    @Test
+    void doNotReusePriceIfVersionNotAvailable() {
+        when(eventRepository.findByReservationId(RESERVATION_ID)).thenReturn(event);
+        when(ticketRepository.findTicketsInReservation(RESERVATION_ID)).thenReturn(List.of(ticket));
+        when(ticketReservationRepository.findPriceVersion(RESERVATION_ID)).thenReturn(Optional.empty());
+
+        trm.totalReservationCostWithVAT(ticketReservation);
+        trm.totalReservationCostWithVAT(ticketReservation);
+        verify(ticketRepository, times(2)).findTicketsInReservation(RESERVATION_ID);
+    }
+
     @Test
     void reservationURLGeneration() {
         String shortName = "shortName";
@@ -1213,4 +1330,12 @@ class TicketReservationManagerTest {
         assertEquals("Company\nFirst Last\nline1\nzip city\nSwitzerland", buildCompleteBillingAddress(customerName, "Company", "line1", null, "zip", "city", "CH", Locale.ENGLISH));
         assertEquals("Company\nFirst Last\nline1\nline2\nzip city\nSwitzerland", buildCompleteBillingAddress(customerName, "Company", "line1", "line2", "zip", "city", "CH", Locale.ENGLISH));
     }
-}
\ No newline at end of file
+
+    @Test
+    void updatingTheValidityReschedulesTheCleanup() {
+        Date validity = new Date();
+        trm.updateReservationValidity(RESERVATION_ID, validity);
+        verify(ticketReservationRepository).updateValidity(RESERVATION_ID, validity);
+        verify(reservationExpirationScheduler).schedule(RESERVATION_ID, validity);
+    }
+}
@@ -192,5 +192,31 @@ public class UploadedResourceIntegrationTest extends BaseIntegrationTest {
         Assert.assertArrayEquals(ONE_PIXEL_BLACK_GIF, baos1.toByteArray());
     }
 
+    @Test
+    public void testFindCascading() {
+        int orgId = event.getOrganizationId();
+        int eventId = event.getId();
+        Assert.assertTrue(uploadedResourceManager.findCascading(orgId, eventId, "template.ms").isEmpty());
+
+        UploadBase64FileModification toSave = new UploadBase64FileModification();
+        toSave.setFile(FILE);
+        toSave.setName("template.ms");
+        toSave.setType("text/plain");
+        uploadedResourceManager.saveResource(toSave);
+        Assert.assertArrayEquals(FILE, uploadedResourceManager.findCascading(orgId, eventId, "template.ms").orElseThrow());
+
+        toSave.setFile(new byte[] {5, 6});
+        uploadedResourceManager.saveResource(orgId, toSave);
+        Assert.assertArrayEquals(new byte[] {5, 6}, uploadedResourceManager.findCascading(orgId, eventId, "template.ms").orElseThrow());
+
+        toSave.setFile(new byte[] {7});
+        uploadedResourceManager.saveResource(orgId, eventId, toSave);
+        Assert.assertArrayEquals(new byte[] {7}, uploadedResourceManager.findCascading(orgId, eventId, "template.ms").orElseThrow());
+
+        uploadedResourceManager.deleteResource(orgId, eventId, "template.ms");
+        uploadedResourceManager.deleteResource(orgId, "template.ms");
+        Assert.assertArrayEquals(FILE, uploadedResourceManager.findCascading(orgId, eventId, "template.ms").orElseThrow());
+    }
+
 
 }
@@ -0,0 +1,92 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.i18n;
+
+import alfio.manager.system.ConfigurationLevel;
+import alfio.manager.system.ConfigurationManager;
+import alfio.model.Event;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.util.CustomResourceBundleMessageSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static alfio.model.system.ConfigurationKeys.TRANSLATION_OVERRIDE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MessageSourceManagerTest {
+
+    private ConfigurationManager configurationManager;
+    private MessageSourceManager messageSourceManager;
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        configurationManager = mock(ConfigurationManager.class);
+        var source = new CustomResourceBundleMessageSource();
+        source.setBasenames("alfio.i18n.public");
+        source.setFallbackToSystemLocale(false);
+        source.setAlwaysUseMessageFormat(true);
+        messageSourceManager = new MessageSourceManager(source, configurationManager);
+        event = mock(Event.class);
+        when(event.getId()).thenReturn(2);
+        when(event.getOrganizationId()).thenReturn(1);
+    }
+
+    @Test
+    void mostSpecificOverrideWins() {
+        when(configurationManager.getAllLevels(eq(TRANSLATION_OVERRIDE), any(ConfigurationLevel.class))).thenReturn(List.of(
+            override("{\"en\": {\"common.vat\": \"SYSTEM.vat\", \"common.cancel\": \"SYSTEM.cancel\"}}", ConfigurationPathLevel.SYSTEM),
+            override("{\"en\": {\"common.vat\": \"EVENT.vat {0}\"}}", ConfigurationPathLevel.EVENT)));
+        var source = messageSourceManager.getMessageSourceForEvent(event);
+        assertEquals("EVENT.vat 42", source.getMessage("common.vat", new Object[] {"42"}, Locale.ENGLISH));
+        assertEquals("SYSTEM.cancel", source.getMessage("common.cancel", null, Locale.ENGLISH));
+    }
+
+    @Test
+    void messageSourceIsRebuiltOnlyIfTheOverrideChanges() {
+        when(configurationManager.getAllLevels(eq(TRANSLATION_OVERRIDE), any(ConfigurationLevel.class)))
+            .thenReturn(List.of(override("{\"en\": {\"common.vat\": \"GST\"}}", ConfigurationPathLevel.SYSTEM)));
+        var first = messageSourceManager.getMessageSourceForEventAndOverride(event);
+        assertSame(first.getLeft(), messageSourceManager.getMessageSourceForEvent(event));
+        assertSame(first.getLeft(), messageSourceManager.getRootMessageSource());
+        assertEquals("GST", first.getRight().get("en").get("common.vat"));
+
+        when(configurationManager.getAllLevels(eq(TRANSLATION_OVERRIDE), any(ConfigurationLevel.class)))
+            .thenReturn(List.of(override("{\"en\": {\"common.vat\": \"IVA\"}}", ConfigurationPathLevel.SYSTEM)));
+        var source = messageSourceManager.getMessageSourceForEvent(event);
+        assertNotSame(first.getLeft(), source);
+        assertEquals("IVA", source.getMessage("common.vat", null, Locale.ENGLISH));
+    }
+
+    @Test
+    void noOverride() {
+        when(configurationManager.getAllLevels(eq(TRANSLATION_OVERRIDE), any(ConfigurationLevel.class))).thenReturn(List.of());
+        assertEquals("VAT", messageSourceManager.getRootMessageSource().getMessage("common.vat", null, Locale.ENGLISH));
+        assertTrue(messageSourceManager.getMessageSourceForEventAndOverride(event).getRight().isEmpty());
+    }
+
+    private static ConfigurationKeyValuePathLevel override(String value, ConfigurationPathLevel level) {
+        return new ConfigurationKeyValuePathLevel(TRANSLATION_OVERRIDE.name(), value, level);
+    }
+}
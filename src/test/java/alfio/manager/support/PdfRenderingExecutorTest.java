@@ -0,0 +1,105 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.support;
+
+import alfio.util.TemplateResource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfRenderingExecutorTest {
+
+    private final PdfRenderingExecutor executor = new PdfRenderingExecutor(1, 1, 2);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void rendersOnThePool() throws IOException {
+        var thread = new Thread[1];
+        byte[] result = executor.render(TemplateResource.TICKET_PDF, out -> {
+            thread[0] = Thread.currentThread();
+            out.write(new byte[] {1, 2, 3});
+        });
+        assertArrayEquals(new byte[] {1, 2, 3}, result);
+        assertTrue(thread[0].getName().startsWith("pdf-renderer-"));
+        var statistics = executor.getStatistics().getDocuments().get(TemplateResource.TICKET_PDF.name());
+        assertEquals(1, statistics.getRendered());
+        assertEquals(0, statistics.getFailed());
+    }
+
+    @Test
+    void propagatesErrors() {
+        assertThrows(IOException.class, () -> executor.render(TemplateResource.INVOICE_PDF, out -> {
+            throw new IOException("broken");
+        }));
+        assertEquals(1, executor.getStatistics().getDocuments().get(TemplateResource.INVOICE_PDF.name()).getFailed());
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var running = CompletableFuture.runAsync(() -> render(out -> {
+            started.countDown();
+            await(release);
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        var queued = CompletableFuture.runAsync(() -> render(out -> {}));
+        while(executor.getStatistics().getQueueDepth() == 0) {
+            Thread.sleep(10);
+        }
+        assertThrows(PdfRenderingExecutor.PdfRenderingRejectedException.class, () -> executor.render(TemplateResource.TICKET_PDF, out -> {}));
+        release.countDown();
+        running.get(1, TimeUnit.SECONDS);
+        queued.get(1, TimeUnit.SECONDS);
+        var statistics = executor.getStatistics().getDocuments().get(TemplateResource.TICKET_PDF.name());
+        assertEquals(2, statistics.getRendered());
+        assertEquals(1, statistics.getRejected());
+    }
+
+    @Test
+    void timeout() {
+        var release = new CountDownLatch(1);
+        assertThrows(PdfRenderingExecutor.PdfRenderingRejectedException.class, () -> executor.render(TemplateResource.RECEIPT_PDF, out -> await(release)));
+        assertEquals(1, executor.getStatistics().getDocuments().get(TemplateResource.RECEIPT_PDF.name()).getTimedOut());
+    }
+
+    private void render(PdfRenderingExecutor.RenderingTask task) {
+        try {
+            executor.render(TemplateResource.TICKET_PDF, task);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
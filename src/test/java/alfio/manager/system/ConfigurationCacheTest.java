@@ -0,0 +1,184 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.manager.EventVersionTracker;
+import alfio.model.Event;
+import alfio.model.system.ConfigurationKeyValuePathLevel;
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.model.system.EventConfigurationValue;
+import alfio.repository.PublicDataVersionRepository;
+import alfio.repository.system.ConfigurationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static alfio.model.system.ConfigurationKeys.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Configuration cache")
+class ConfigurationCacheTest {
+
+    private static final int ORGANIZATION_ID = 1;
+    private static final int EVENT_ID = 2;
+    private ConfigurationRepository configurationRepository;
+    private PGConnection pgConnection;
+    private DatabaseNotificationListener notificationListener;
+    private Event event;
+    private ConfigurationLevel eventLevel;
+    private ConfigurationCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        configurationRepository = mock(ConfigurationRepository.class);
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        pgConnection = mock(PGConnection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(mock(Statement.class));
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        event = mock(Event.class);
+        when(event.getId()).thenReturn(EVENT_ID);
+        when(event.getOrganizationId()).thenReturn(ORGANIZATION_ID);
+        eventLevel = ConfigurationLevel.event(event);
+        when(configurationRepository.findAllAtSystemLevel()).thenReturn(List.of(
+            value(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION.name(), "5", ConfigurationPathLevel.SYSTEM),
+            value(BASE_URL.name(), "http://localhost", ConfigurationPathLevel.SYSTEM),
+            value("UNKNOWN_KEY", "value", ConfigurationPathLevel.SYSTEM)));
+        when(configurationRepository.findAllAtOrganizationLevel(ORGANIZATION_ID)).thenReturn(List.of(
+            value(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION.name(), "6", ConfigurationPathLevel.ORGANIZATION)));
+        when(configurationRepository.findAllAtEventLevel(ORGANIZATION_ID, EVENT_ID)).thenReturn(List.of(
+            value(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION.name(), "7", ConfigurationPathLevel.EVENT)));
+        notificationListener = new DatabaseNotificationListener(new UnpooledConnections(dataSource));
+        cache = new ConfigurationCache(configurationRepository, notificationListener, new EventVersionTracker(mock(PublicDataVersionRepository.class)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void levelsAreLoadedOnce() {
+        var result = cache.find(Set.of(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, BASE_URL, VAT_NR), eventLevel);
+        assertEquals(4, result.size());
+        assertTrue(result.stream().anyMatch(c -> c.getConfigurationKey() == MAX_AMOUNT_OF_TICKETS_BY_RESERVATION && c.getValue().equals("7")));
+        assertTrue(result.stream().noneMatch(c -> c.getConfigurationKey() == VAT_NR));
+        cache.find(Set.of(BASE_URL), ConfigurationLevel.organization(ORGANIZATION_ID));
+        cache.find(Set.of(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), eventLevel);
+        verify(configurationRepository, times(1)).findAllAtSystemLevel();
+        verify(configurationRepository, times(1)).findAllAtOrganizationLevel(ORGANIZATION_ID);
+        verify(configurationRepository, times(1)).findAllAtEventLevel(ORGANIZATION_ID, EVENT_ID);
+        var statistics = cache.getStatistics();
+        assertEquals(8, statistics.getRequestCount());
+        assertEquals(5, statistics.getHitCount());
+        assertEquals(ConfigurationCache.FALLBACK_TTL_MS, statistics.getStalenessBoundMillis());
+    }
+
+    @Test
+    void notificationInvalidatesOnlyTheAffectedLevel() throws Exception {
+        cache.find(Set.of(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), eventLevel);
+        PGNotification notification = mock(PGNotification.class);
+        when(notification.getName()).thenReturn(ConfigurationCache.CHANNEL);
+        when(notification.getParameter()).thenReturn("EVENT:" + ORGANIZATION_ID + ":" + EVENT_ID);
+        when(pgConnection.getNotifications(anyInt())).thenReturn(null, new PGNotification[] { notification });
+        notificationListener.processNotifications(); // connect
+        cache.find(Set.of(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), eventLevel);
+        notificationListener.processNotifications();
+        assertTrue(cache.getStatistics().isNotificationsEnabled());
+        assertEquals(DatabaseNotificationListener.POLL_INTERVAL_MS, cache.getStatistics().getStalenessBoundMillis());
+        cache.find(Set.of(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), eventLevel);
+        // connecting invalidates everything, then only the event level is reloaded
+        verify(configurationRepository, times(2)).findAllAtSystemLevel();
+        verify(configurationRepository, times(3)).findAllAtEventLevel(ORGANIZATION_ID, EVENT_ID);
+    }
+
+    @Test
+    void readFromDatabaseUntilTheModifyingTransactionIsCompleted() {
+        cache.find(Set.of(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), eventLevel);
+        TransactionSynchronizationManager.initSynchronization();
+        cache.configurationModified();
+        int synchronizations = TransactionSynchronizationManager.getSynchronizations().size();
+        cache.configurationModified();
+        assertEquals(synchronizations, TransactionSynchronizationManager.getSynchronizations().size());
+        when(configurationRepository.findByEventAndKeys(eq(ORGANIZATION_ID), eq(EVENT_ID), anyCollection()))
+            .thenReturn(List.of(value(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION.name(), "8", ConfigurationPathLevel.EVENT)));
+        var result = cache.find(Set.of(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), eventLevel);
+        assertEquals("8", result.get(0).getValue());
+        assertEquals(1, cache.getStatistics().getBypassedCount());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+        cache.find(Set.of(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION), eventLevel);
+        verify(configurationRepository, times(2)).findAllAtEventLevel(ORGANIZATION_ID, EVENT_ID);
+        verify(configurationRepository, times(1)).findByEventAndKeys(eq(ORGANIZATION_ID), eq(EVENT_ID), anyCollection());
+    }
+
+    @Test
+    void eventSnapshotIsRebuiltOnlyIfTheConfigurationChanges() throws Exception {
+        when(configurationRepository.findAllForEvent(ORGANIZATION_ID, EVENT_ID)).thenReturn(List.of(
+            new EventConfigurationValue(null, RESERVATION_TIMEOUT.name(), "10", ConfigurationPathLevel.EVENT)));
+        var snapshot = cache.getEventConfiguration(event);
+        assertEquals(10, snapshot.getInt(RESERVATION_TIMEOUT, 25));
+        assertSame(snapshot, cache.getEventConfiguration(event));
+
+        PGNotification otherEvent = mock(PGNotification.class);
+        when(otherEvent.getName()).thenReturn(ConfigurationCache.CHANNEL);
+        when(otherEvent.getParameter()).thenReturn("EVENT:" + ORGANIZATION_ID + ":" + (EVENT_ID + 1));
+        PGNotification organization = mock(PGNotification.class);
+        when(organization.getName()).thenReturn(ConfigurationCache.CHANNEL);
+        when(organization.getParameter()).thenReturn("ORGANIZATION:" + ORGANIZATION_ID);
+        when(pgConnection.getNotifications(anyInt())).thenReturn(null, new PGNotification[] { otherEvent }, new PGNotification[] { organization });
+        notificationListener.processNotifications(); // connect
+        snapshot = cache.getEventConfiguration(event);
+        notificationListener.processNotifications();
+        assertSame(snapshot, cache.getEventConfiguration(event));
+        notificationListener.processNotifications();
+        assertNotSame(snapshot, cache.getEventConfiguration(event));
+        verify(configurationRepository, times(3)).findAllForEvent(ORGANIZATION_ID, EVENT_ID);
+    }
+
+    @Test
+    void parseNotificationPayload() {
+        assertEquals(Optional.of(ConfigurationCache.Scope.chain(ConfigurationLevel.system()).get(0)), ConfigurationCache.Scope.parse("SYSTEM"));
+        assertEquals(ConfigurationCache.Scope.chain(eventLevel).get(2), ConfigurationCache.Scope.parse("EVENT:1:2").orElseThrow());
+        assertTrue(ConfigurationCache.Scope.parse("EVENT:1").isEmpty());
+        assertTrue(ConfigurationCache.Scope.parse("UNKNOWN:1").isEmpty());
+        assertTrue(ConfigurationCache.Scope.parse(null).isEmpty());
+    }
+
+    private static ConfigurationKeyValuePathLevel value(String key, String value, ConfigurationPathLevel level) {
+        return new ConfigurationKeyValuePathLevel(key, value, level);
+    }
+}
@@ -24,7 +24,9 @@ import alfio.controller.support.TemplateProcessor;
 import alfio.manager.EventManager;
 import alfio.manager.ExtensionManager;
 import alfio.manager.FileUploadManager;
+import alfio.manager.TicketPdfCache;
 import alfio.manager.TicketReservationManager;
+import alfio.manager.support.PdfRenderingExecutor;
 import alfio.manager.user.UserManager;
 import alfio.model.*;
 import alfio.model.modification.*;
@@ -96,6 +98,10 @@ public class DataMigratorIntegrationTest extends BaseIntegrationTest {
     private TicketReservationRepository ticketReservationRepository;
     @Autowired
     private ExtensionManager extensionManager;
+    @Autowired
+    private PdfRenderingExecutor pdfRenderingExecutor;
+    @Autowired
+    private TicketPdfCache ticketPdfCache;
     @Value("${alfio.version}")
     private String currentVersion;
     @Value("${alfio.build-ts}")
@@ -299,7 +305,7 @@ public class DataMigratorIntegrationTest extends BaseIntegrationTest {
             second.setLastName("Name");
 	        TemplateProcessor.renderPDFTicket(Locale.ITALIAN, event, ticketReservationManager.findById(reservationId).get(),
                 tickets.get(0), ticketCategoryRepository.getByIdAndActive(tickets.get(0).getCategoryId(), event.getId()), organizationRepository.getById(event.getOrganizationId()),
-                templateManager, fileUploadManager, "", new ByteArrayOutputStream(), t -> Collections.emptyList(), extensionManager);
+                templateManager, fileUploadManager, "", new ByteArrayOutputStream(), t -> Collections.emptyList(), extensionManager, pdfRenderingExecutor, ticketPdfCache);
 	        ticketReservationManager.updateTicketOwner(tickets.get(0), Locale.ITALIAN, event, first, (t) -> "", (t) -> "", Optional.empty());
 	        ticketReservationManager.updateTicketOwner(tickets.get(1), Locale.ITALIAN, event, second, (t) -> "", (t) -> "", Optional.empty());
 	        //FIXME
@@ -0,0 +1,99 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Database notification listener")
+class DatabaseNotificationListenerTest {
+
+    private DataSource dataSource;
+    private Connection connection;
+    private Statement statement;
+    private PGConnection pgConnection;
+    private DatabaseNotificationListener listener;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = mock(DataSource.class);
+        connection = mock(Connection.class);
+        statement = mock(Statement.class);
+        pgConnection = mock(PGConnection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        listener = new DatabaseNotificationListener(new UnpooledConnections(dataSource));
+    }
+
+    @Test
+    void connectOnlyAfterStart() throws Exception {
+        listener.subscribe("first", mock(DatabaseNotificationListener.NotificationHandler.class));
+        listener.processNotifications();
+        assertFalse(listener.isListening());
+        verify(dataSource, never()).getConnection();
+    }
+
+    @Test
+    void allChannelsShareTheSameConnection() throws Exception {
+        var first = mock(DatabaseNotificationListener.NotificationHandler.class);
+        var second = mock(DatabaseNotificationListener.NotificationHandler.class);
+        listener.subscribe("first", first);
+        listener.subscribe("second", second);
+        var notification = mock(PGNotification.class);
+        when(notification.getName()).thenReturn("second");
+        when(notification.getParameter()).thenReturn("payload");
+        when(pgConnection.getNotifications(anyInt())).thenReturn(null, new PGNotification[] { notification });
+
+        listener.start();
+        listener.processNotifications();
+        listener.processNotifications();
+
+        assertTrue(listener.isListening());
+        verify(dataSource, times(1)).getConnection();
+        verify(statement).execute("LISTEN first");
+        verify(statement).execute("LISTEN second");
+        verify(first).onReset();
+        verify(second).onReset();
+        verify(second).onNotification("payload");
+        verify(first, never()).onNotification(anyString());
+    }
+
+    @Test
+    void subscribersAreResetWhenTheConnectionIsLost() throws Exception {
+        var handler = mock(DatabaseNotificationListener.NotificationHandler.class);
+        listener.subscribe("channel", handler);
+        when(pgConnection.getNotifications(anyInt())).thenReturn(null).thenThrow(new IllegalStateException("connection lost"));
+        listener.start();
+        listener.processNotifications();
+        listener.processNotifications();
+        assertFalse(listener.isListening());
+        verify(connection).close();
+        verify(handler, times(2)).onReset();
+    }
+}
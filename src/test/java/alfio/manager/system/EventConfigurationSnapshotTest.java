@@ -0,0 +1,92 @@
+/**
+ * This file is part of alf.io.
+ *
+ * alf.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * alf.io is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with alf.io.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package alfio.manager.system;
+
+import alfio.model.Event;
+import alfio.model.system.ConfigurationPathLevel;
+import alfio.model.system.EventConfigurationValue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static alfio.model.system.ConfigurationKeys.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("Event configuration snapshot")
+class EventConfigurationSnapshotTest {
+
+    private static final int CATEGORY_ID = 3;
+    private EventConfigurationSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        Event event = mock(Event.class);
+        when(event.getId()).thenReturn(2);
+        when(event.getOrganizationId()).thenReturn(1);
+        snapshot = EventConfigurationSnapshot.from(event, 42, List.of(
+            value(null, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION.name(), "7", ConfigurationPathLevel.EVENT),
+            value(null, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION.name(), "5", ConfigurationPathLevel.SYSTEM),
+            value(null, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION.name(), "6", ConfigurationPathLevel.ORGANIZATION),
+            value(null, ENABLE_PASS.name(), "true", ConfigurationPathLevel.ORGANIZATION),
+            value(null, BASE_URL.name(), "http://localhost", ConfigurationPathLevel.SYSTEM),
+            value(null, "UNKNOWN_KEY", "value", ConfigurationPathLevel.SYSTEM),
+            value(CATEGORY_ID, MAX_AMOUNT_OF_TICKETS_BY_RESERVATION.name(), "8", ConfigurationPathLevel.TICKET_CATEGORY)));
+    }
+
+    @Test
+    void mostSpecificValueWins() {
+        assertEquals(7, snapshot.getInt(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, 5));
+        assertEquals(ConfigurationPathLevel.EVENT, snapshot.get(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION).getConfigurationPathLevelOrDefault(null));
+        assertTrue(snapshot.getBoolean(ENABLE_PASS, false));
+        assertEquals("http://localhost", snapshot.getString(BASE_URL, null));
+        assertEquals(42, snapshot.getVersion());
+    }
+
+    @Test
+    void categoryOverridesEventValue() {
+        assertEquals(8, snapshot.getInt(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, CATEGORY_ID, 5));
+        assertEquals(7, snapshot.getInt(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, CATEGORY_ID + 1, 5));
+        assertEquals(7, snapshot.getInt(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, null, 5));
+        assertTrue(snapshot.getBoolean(ENABLE_PASS, CATEGORY_ID, false));
+    }
+
+    @Test
+    void resolveForAllCategories() {
+        var values = snapshot.getForCategories(MAX_AMOUNT_OF_TICKETS_BY_RESERVATION, List.of(CATEGORY_ID, CATEGORY_ID + 1));
+        assertEquals(2, values.size());
+        assertEquals(8, values.get(CATEGORY_ID).getValueAsIntOrDefault(5));
+        assertEquals(7, values.get(CATEGORY_ID + 1).getValueAsIntOrDefault(5));
+    }
+
+    @Test
+    void missingKeys() {
+        var values = snapshot.getAll(List.of(VAT_NR, BASE_URL));
+        assertEquals(2, values.size());
+        assertFalse(values.get(VAT_NR).isPresent());
+        assertTrue(values.get(BASE_URL).isPresent());
+        assertEquals(25, snapshot.getInt(RESERVATION_TIMEOUT, 25));
+        assertFalse(snapshot.getBoolean(ALLOW_FREE_TICKETS_CANCELLATION, CATEGORY_ID, false));
+    }
+
+    private static EventConfigurationValue value(Integer categoryId, String key, String value, ConfigurationPathLevel level) {
+        return new EventConfigurationValue(categoryId, key, value, level);
+    }
+}
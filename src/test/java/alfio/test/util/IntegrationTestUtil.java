@@ -17,11 +17,14 @@
 package alfio.test.util;
 
 import alfio.manager.EventManager;
+import alfio.manager.TicketReservationManager;
 import alfio.manager.user.UserManager;
 import alfio.model.Event;
 import alfio.model.modification.DateTimeModification;
 import alfio.model.modification.EventModification;
 import alfio.model.modification.TicketCategoryModification;
+import alfio.model.modification.TicketReservationModification;
+import alfio.model.modification.TicketReservationWithOptionalCodeModification;
 import alfio.model.modification.support.LocationDescriptor;
 import alfio.model.system.ConfigurationKeys;
 import alfio.model.transaction.PaymentProxy;
@@ -33,6 +36,7 @@ import alfio.repository.system.ConfigurationRepository;
 import alfio.repository.user.AuthorityRepository;
 import alfio.repository.user.OrganizationRepository;
 import alfio.repository.user.UserRepository;
+import org.apache.commons.lang3.time.DateUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Assert;
 
@@ -42,10 +46,15 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class IntegrationTestUtil {
 
     public static final int AVAILABLE_SEATS = 20;
+    public static final String BENCHMARK_PROPERTY = "alfio.benchmark";
 
 
     public static final Map<String, Map<String, String>> DB_CONF = new HashMap<>();
@@ -92,6 +101,16 @@ public class IntegrationTestUtil {
                                                 EventManager eventManager,
                                                 EventRepository eventRepository,
                                                 List<EventModification.AdditionalService> additionalServices) {
+        return initEvent(categories, organizationRepository, userManager, eventManager, eventRepository, additionalServices, AVAILABLE_SEATS);
+    }
+
+    public static Pair<Event, String> initEvent(List<TicketCategoryModification> categories,
+                                                OrganizationRepository organizationRepository,
+                                                UserManager userManager,
+                                                EventManager eventManager,
+                                                EventRepository eventRepository,
+                                                List<EventModification.AdditionalService> additionalServices,
+                                                int availableSeats) {
 
         String organizationName = UUID.randomUUID().toString();
         String username = UUID.randomUUID().toString();
@@ -114,13 +133,63 @@ public class IntegrationTestUtil {
                 "muh location", "0.0", "0.0", ZoneId.systemDefault().getId(), desc,
                 new DateTimeModification(LocalDate.now().plusDays(5), LocalTime.now()),
                 new DateTimeModification(expiration.toLocalDate(), expiration.toLocalTime()),
-                BigDecimal.TEN, "CHF", AVAILABLE_SEATS, BigDecimal.ONE, true, Collections.singletonList(PaymentProxy.OFFLINE), categories, false, new LocationDescriptor("","","",""), 7, null, additionalServices);
+                BigDecimal.TEN, "CHF", availableSeats, BigDecimal.ONE, true, Collections.singletonList(PaymentProxy.OFFLINE), categories, false, new LocationDescriptor("","","",""), 7, null, additionalServices);
         eventManager.createEvent(em);
         Event event = eventManager.getSingleEvent(eventName, username);
-        Assert.assertEquals(AVAILABLE_SEATS, eventRepository.countExistingTickets(event.getId()).intValue());
+        Assert.assertEquals(availableSeats, eventRepository.countExistingTickets(event.getId()).intValue());
         return Pair.of(event, username);
     }
 
+    /**
+     * Creates an event whose categories are already on sale, one for each of the given sizes.
+     * Used by the benchmarks, which run only if the system property {@value #BENCHMARK_PROPERTY} is set to true.
+     */
+    public static Pair<Event, String> initBenchmarkEvent(List<Integer> categorySizes,
+                                                         OrganizationRepository organizationRepository,
+                                                         UserManager userManager,
+                                                         EventManager eventManager,
+                                                         EventRepository eventRepository) {
+        List<TicketCategoryModification> categories = new ArrayList<>(categorySizes.size());
+        for (int i = 0; i < categorySizes.size(); i++) {
+            categories.add(new TicketCategoryModification(null, "category-" + i, categorySizes.get(i),
+                new DateTimeModification(LocalDate.now().minusDays(1), LocalTime.now()),
+                new DateTimeModification(LocalDate.now().plusDays(1), LocalTime.now()),
+                DESCRIPTION, BigDecimal.TEN, false, "", true, null, null, null, null, null, 0));
+        }
+        int seats = categorySizes.stream().mapToInt(Integer::intValue).sum();
+        return initEvent(categories, organizationRepository, userManager, eventManager, eventRepository, null, seats);
+    }
+
+    public static boolean isBenchmarkEnabled() {
+        return Boolean.getBoolean(BENCHMARK_PROPERTY);
+    }
+
+    /**
+     * Runs the given task on the given number of threads and waits until all of them are completed.
+     *
+     * @return the elapsed time, in seconds
+     */
+    public static double runConcurrently(int threads, Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            for (Future<Void> result : executor.invokeAll(Collections.nCopies(threads, task))) {
+                result.get();
+            }
+            return (System.nanoTime() - start) / 1_000_000_000.0;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static String reserveTickets(TicketReservationManager ticketReservationManager, Event event, int categoryId, int amount) {
+        TicketReservationModification tr = new TicketReservationModification();
+        tr.setAmount(amount);
+        tr.setTicketCategoryId(categoryId);
+        return ticketReservationManager.createTicketReservation(event, List.of(new TicketReservationWithOptionalCodeModification(tr, Optional.empty())),
+            Collections.emptyList(), DateUtils.addDays(new Date(), 1), Optional.empty(), Locale.ENGLISH, false);
+    }
+
     public static void initAdminUser(UserRepository userRepository, AuthorityRepository authorityRepository) {
         userRepository.create(UserManager.ADMIN_USERNAME, "", "The", "Administrator", "admin@localhost", true, User.Type.INTERNAL, null, null);
         authorityRepository.create(UserManager.ADMIN_USERNAME, Role.ADMIN.getRoleName());
@@ -27,6 +27,7 @@ import java.util.Locale;
 
 import static alfio.util.MustacheCustomTag.ADDITIONAL_FIELD_VALUE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.*;
 
 public class MustacheCustomTagTest {
@@ -75,4 +76,12 @@ public class MustacheCustomTagTest {
         ADDITIONAL_FIELD_VALUE.apply(Collections.singletonMap("existing", "existing value")).execute(fragment, out);
         verify(out).write("prefix! existing value suffix-");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void renderCommonmark() {
+        var html = MustacheCustomTag.renderToHtmlCommonmarkEscaped("# title\n<b>text</b>");
+        assertEquals("<h1>title</h1>\n<p>&lt;b&gt;text&lt;/b&gt;</p>\n", html);
+        assertSame(html, MustacheCustomTag.renderToHtmlCommonmarkEscaped("# title\n<b>text</b>"));
+        assertEquals("title\ntext", MustacheCustomTag.renderToTextCommonmark("# title\ntext"));
+    }
+}
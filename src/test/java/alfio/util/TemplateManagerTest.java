@@ -17,11 +17,19 @@
 package alfio.util;
 
 
+import alfio.manager.UploadedResourceManager;
+import alfio.manager.i18n.MessageSourceManager;
+import alfio.model.EventAndOrganizationId;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.springframework.context.support.StaticMessageSource;
 
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 
 public class TemplateManagerTest {
 
@@ -81,4 +89,37 @@ public class TemplateManagerTest {
     public void simpleParams() {
         Assert.assertEquals("3-2-1", TemplateManager.translate("{{#i18n}}parameter [1] [2] [3]{{/i18n}}", Locale.ENGLISH, messageSource));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compiledTemplatesAreReused() {
+        var templateManager = new TemplateManager(Mockito.mock(MessageSourceManager.class), Mockito.mock(UploadedResourceManager.class));
+        Assert.assertEquals("hello world", templateManager.renderString(null, "hello {{name}}", Map.of("name", "world"), Locale.ENGLISH, TemplateManager.TemplateOutput.TEXT));
+        Assert.assertEquals("hello alf.io", templateManager.renderString(null, "hello {{name}}", Map.of("name", "alf.io"), Locale.ENGLISH, TemplateManager.TemplateOutput.TEXT));
+        Assert.assertEquals("hello &lt;b&gt;", templateManager.renderString(null, "hello {{name}}", Map.of("name", "<b>"), Locale.ENGLISH, TemplateManager.TemplateOutput.HTML));
+        var statistics = templateManager.getStatistics();
+        // same source, but different output type
+        Assert.assertEquals(2, statistics.getCompilations());
+        Assert.assertEquals(3, statistics.getExecutions());
+        Assert.assertEquals(2, statistics.getSize());
+    }
+
+    @Test
+    public void renderTemplateToWriter() {
+        var event = Mockito.mock(EventAndOrganizationId.class);
+        Mockito.when(event.getOrganizationId()).thenReturn(1);
+        Mockito.when(event.getId()).thenReturn(2);
+        var eventMessageSource = new StaticMessageSource();
+        eventMessageSource.addMessage("common.vat", Locale.ENGLISH, "VAT");
+        eventMessageSource.addMessage("locale", Locale.ENGLISH, "en");
+        var messageSourceManager = Mockito.mock(MessageSourceManager.class);
+        Mockito.when(messageSourceManager.getMessageSourceForEvent(event)).thenReturn(eventMessageSource);
+        var uploadedResourceManager = Mockito.mock(UploadedResourceManager.class);
+        Mockito.when(uploadedResourceManager.findCascading(1, 2, TemplateResource.TICKET_PDF.getSavedName(Locale.ENGLISH)))
+            .thenReturn(Optional.of("<p>{{name}} {{#i18n}}locale{{/i18n}}</p>".getBytes(StandardCharsets.UTF_8)));
+        var templateManager = new TemplateManager(messageSourceManager, uploadedResourceManager);
+        var out = new StringWriter();
+        templateManager.renderTemplate(event, TemplateResource.TICKET_PDF, Map.of("name", "è"), Locale.ENGLISH, out);
+        Assert.assertEquals("<p>è en</p>", out.toString());
+        Assert.assertEquals(out.toString(), templateManager.renderTemplate(event, TemplateResource.TICKET_PDF, Map.of("name", "è"), Locale.ENGLISH));
+    }
+}